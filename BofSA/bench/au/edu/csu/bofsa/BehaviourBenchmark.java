@@ -0,0 +1,152 @@
+/**
+ *   The MIT License
+ *
+ *  Copyright 2011 Andrew James <ephphatha@thelettereph.com>.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package au.edu.csu.bofsa;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import org.newdawn.slick.geom.Vector2f;
+
+import au.edu.csu.bofsa.Behaviours.Behaviour;
+import au.edu.csu.bofsa.Behaviours.BroadphaseBehaviour;
+import au.edu.csu.bofsa.Behaviours.HealthBehaviour;
+import au.edu.csu.bofsa.Behaviours.MoveBehaviour;
+import au.edu.csu.bofsa.Behaviours.SeparationBehaviour;
+import au.edu.csu.bofsa.Behaviours.VelocityBehaviour;
+import au.edu.csu.bofsa.Behaviours.WaypointBehaviour;
+import au.edu.csu.bofsa.Events.Event;
+import au.edu.csu.bofsa.Events.EventSink;
+import au.edu.csu.bofsa.Events.Stream;
+import au.edu.csu.bofsa.Signals.Signal;
+
+/**
+ * Behaviour.call() for each behaviour that runs without a display, with and
+ * without the ballast loop every call pays.
+ * 
+ * @author ephphatha
+ *
+ */
+public class BehaviourBenchmark extends Benchmark {
+  
+  private static final String[] TYPES = {
+    "MoveBehaviour",
+    "VelocityBehaviour",
+    "WaypointBehaviour",
+    "HealthBehaviour",
+    "BroadphaseBehaviour"
+  };
+  
+  private static final int BROADPHASE_CREEPS = 256;
+  
+  protected static class NullSink implements EventSink, Comparable<Object> {
+    @Override
+    public void handleEvent(Event event) {
+    }
+    
+    @Override
+    public int compareTo(Object o) {
+      return this.hashCode() - o.hashCode();
+    }
+  }
+  
+  protected final String type;
+  protected final boolean ballast;
+  
+  protected Behaviour<?> behaviour;
+  
+  public static void addAll(List<Benchmark> benchmarks) {
+    for (String t : BehaviourBenchmark.TYPES) {
+      benchmarks.add(new BehaviourBenchmark(t, true));
+      benchmarks.add(new BehaviourBenchmark(t, false));
+    }
+  }
+  
+  public BehaviourBenchmark(String type, boolean ballast) {
+    super("Behaviour.call", "type=" + type + " ballast=" + ballast, 1);
+    
+    this.type = type;
+    this.ballast = ballast;
+  }
+  
+  @Override
+  public void setUp() {
+    Behaviour.setBallast(this.ballast);
+    
+    Stream creepStream = new Stream();
+    
+    List<CheckPoint> checkpoints = new LinkedList<CheckPoint>();
+    checkpoints.add(new CheckPoint(0, new Vector2f(0, 0)));
+    checkpoints.add(new CheckPoint(1, new Vector2f(10, 10)));
+    Route route = new Route(checkpoints);
+    
+    Signal<CopyableVector2f> position = new Signal<CopyableVector2f>(new CopyableVector2f(1, 1));
+    Signal<CopyableVector2f> velocity = new Signal<CopyableVector2f>(new CopyableVector2f(0.5f, 0.5f));
+    
+    if (this.type.equals("MoveBehaviour")) {
+      this.behaviour = new MoveBehaviour(position, velocity, creepStream);
+    } else if (this.type.equals("VelocityBehaviour")) {
+      Signal<CopyableInteger> waypoint = new Signal<CopyableInteger>(new CopyableInteger(1));
+      Signal<CopyableFloat> speed = new Signal<CopyableFloat>(new CopyableFloat(1.0f));
+      
+      this.behaviour = new VelocityBehaviour(velocity, position, waypoint, route, speed, creepStream);
+    } else if (this.type.equals("WaypointBehaviour")) {
+      this.behaviour = new WaypointBehaviour(new Signal<CopyableInteger>(new CopyableInteger(0)), route, creepStream);
+    } else if (this.type.equals("HealthBehaviour")) {
+      this.behaviour = new HealthBehaviour(new Signal<CopyableFloat>(new CopyableFloat(10.0f)), creepStream, new NullSink());
+    } else if (this.type.equals("BroadphaseBehaviour")) {
+      CopyableList<Pipe<CopyableVector2f>> creeps = new CopyableList<Pipe<CopyableVector2f>>();
+      
+      for (int i = 0; i < BehaviourBenchmark.BROADPHASE_CREEPS; ++i) {
+        Signal<CopyableVector2f> p = new Signal<CopyableVector2f>(new CopyableVector2f(i % 16, i / 16));
+        creeps.add(new Pipe<CopyableVector2f>(p, null));
+      }
+      
+      this.behaviour = new BroadphaseBehaviour(
+          new Signal<SpatialGrid>(SpatialGrid.build(new CopyableList<Pipe<CopyableVector2f>>(), SeparationBehaviour.SEPARATION_RADIUS)),
+          new Signal<CopyableList<Pipe<CopyableVector2f>>>(creeps));
+    } else {
+      throw new IllegalArgumentException("Unknown behaviour " + this.type);
+    }
+  }
+  
+  @Override
+  public void tearDown() {
+    Behaviour.setBallast(true);
+    
+    this.behaviour = null;
+  }
+  
+  @Override
+  public long run(int thread, int ops) {
+    long result = 0;
+    
+    for (int i = 0; i < ops; ++i) {
+      if (this.behaviour.call()) {
+        ++result;
+      }
+    }
+    
+    return result + this.behaviour.fibresult;
+  }
+}
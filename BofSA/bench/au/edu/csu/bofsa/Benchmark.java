@@ -0,0 +1,89 @@
+/**
+ *   The MIT License
+ *
+ *  Copyright 2011 Andrew James <ephphatha@thelettereph.com>.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package au.edu.csu.bofsa;
+
+/**
+ * One timed operation for the BenchmarkRunner, along the lines of a JMH
+ * benchmark method. Each parameter combination is its own instance.
+ * 
+ * @author ephphatha
+ *
+ */
+public abstract class Benchmark {
+  protected final String name;
+  protected final String params;
+  protected final int threads;
+  
+  /**
+   * @param params description of the parameters, written alongside the
+   *               results.
+   * @param threads number of threads calling run() at once.
+   */
+  protected Benchmark(String name, String params, int threads) {
+    this.name = name;
+    this.params = params;
+    this.threads = Math.max(threads, 1);
+  }
+  
+  public String getName() {
+    return this.name;
+  }
+  
+  public String getParams() {
+    return this.params;
+  }
+  
+  public int getThreads() {
+    return this.threads;
+  }
+  
+  /**
+   * @return false for threads that only provide contention, their time is
+   *         left out of the results.
+   */
+  public boolean isMeasured(int thread) {
+    return true;
+  }
+  
+  /**
+   * Called once before any iterations are run.
+   */
+  public void setUp() {
+  }
+  
+  /**
+   * Called once after the last iteration.
+   */
+  public void tearDown() {
+  }
+  
+  /**
+   * Performs the operation being timed ops times.
+   * 
+   * @param thread index of the calling thread, from 0 to threads - 1.
+   * @return anything depending on the results so the work can't be
+   *         optimised away.
+   */
+  public abstract long run(int thread, int ops);
+}
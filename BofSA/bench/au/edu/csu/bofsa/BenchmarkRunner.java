@@ -0,0 +1,329 @@
+/**
+ *   The MIT License
+ *
+ *  Copyright 2011 Andrew James <ephphatha@thelettereph.com>.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package au.edu.csu.bofsa;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Runs the microbenchmarks headless and reports the average time per
+ * operation, in the manner of JMH's AverageTime mode. Each benchmark is
+ * warmed up then timed over a number of fixed length iterations, threaded
+ * benchmarks time every thread and report the mean per operation per thread.
+ * Everything runs in the one JVM, so compare runs of the same selection.
+ * 
+ * Usage: BenchmarkRunner [-w<warmup iterations>] [-i<iterations>]
+ *                        [-m<milliseconds per iteration>] [-o<file.csv>]
+ *                        [name filter...]
+ * 
+ * @author ephphatha
+ *
+ */
+public class BenchmarkRunner {
+  
+  public static final int DEFAULT_WARMUP_ITERATIONS = 5;
+  public static final int DEFAULT_ITERATIONS = 10;
+  public static final long DEFAULT_ITERATION_MILLIS = 500;
+  
+  /**
+   * Operations are run in batches long enough that reading the clock
+   * doesn't show up in the results.
+   */
+  private static final long TARGET_BATCH_NANOS = 100000;
+  
+  private static volatile long sink;
+  
+  protected int warmupIterations;
+  protected int iterations;
+  protected long iterationNanos;
+  
+  public static void main(String[] args) {
+    int warmup = BenchmarkRunner.DEFAULT_WARMUP_ITERATIONS;
+    int iterations = BenchmarkRunner.DEFAULT_ITERATIONS;
+    long millis = BenchmarkRunner.DEFAULT_ITERATION_MILLIS;
+    String output = null;
+    List<String> filters = new LinkedList<String>();
+    
+    for (String s : args) {
+      if (s.startsWith("-w")) {
+        try {
+          warmup = Integer.parseInt(s.substring(2));
+        } catch (NumberFormatException e) {
+          //Goggles
+        }
+      } else if (s.startsWith("-i")) {
+        try {
+          iterations = Integer.parseInt(s.substring(2));
+        } catch (NumberFormatException e) {
+          //Goggles
+        }
+      } else if (s.startsWith("-m")) {
+        try {
+          millis = Long.parseLong(s.substring(2));
+        } catch (NumberFormatException e) {
+          //Goggles
+        }
+      } else if (s.startsWith("-o")) {
+        output = s.substring(2);
+      } else {
+        filters.add(s);
+      }
+    }
+    
+    List<Benchmark> benchmarks = new LinkedList<Benchmark>();
+    
+    SignalBenchmark.addAll(benchmarks);
+    StreamBenchmark.addAll(benchmarks);
+    BehaviourBenchmark.addAll(benchmarks);
+    SchedulerBenchmark.addAll(benchmarks);
+    CopyableListBenchmark.addAll(benchmarks);
+    LoggerBenchmark.addAll(benchmarks);
+    
+    BenchmarkRunner runner = new BenchmarkRunner(warmup, iterations, millis);
+    
+    FileWriter file = null;
+    
+    try {
+      if (output != null) {
+        file = new FileWriter(output);
+        file.write(
+            "Benchmark," +
+            "Parameters," +
+            "Threads," +
+            "Iterations," +
+            "Average time (ns/op)," +
+            "Standard Deviation," +
+            "Min (ns/op)," +
+            "Max (ns/op)" +
+            "\n");
+      }
+      
+      for (Benchmark b : benchmarks) {
+        if (!BenchmarkRunner.matches(b, filters)) {
+          continue;
+        }
+        
+        double[] scores = runner.run(b);
+        String result = BenchmarkRunner.summarise(b, scores);
+        
+        System.out.println(result);
+        
+        if (file != null) {
+          file.write(result + "\n");
+          file.flush();
+        }
+      }
+    } catch (IOException e) {
+      System.out.println("Couldn't write results: " + e.getMessage());
+    } finally {
+      if (file != null) {
+        try {
+          file.close();
+        } catch (IOException e) {
+          //Goggles
+        }
+      }
+    }
+    
+    if (BenchmarkRunner.sink == 42) {
+      System.out.println();
+    }
+  }
+  
+  public BenchmarkRunner(int warmupIterations, int iterations, long iterationMillis) {
+    this.warmupIterations = Math.max(warmupIterations, 0);
+    this.iterations = Math.max(iterations, 1);
+    this.iterationNanos = iterationMillis * 1000000L;
+  }
+  
+  protected static boolean matches(Benchmark b, List<String> filters) {
+    if (filters.isEmpty()) {
+      return true;
+    }
+    
+    for (String f : filters) {
+      if (b.getName().contains(f)) {
+        return true;
+      }
+    }
+    
+    return false;
+  }
+  
+  /**
+   * @return the average time per operation for each measured iteration.
+   */
+  public double[] run(Benchmark b) {
+    b.setUp();
+    
+    try {
+      int batch = this.calibrate(b);
+      
+      for (int i = 0; i < this.warmupIterations; ++i) {
+        this.iterate(b, batch);
+      }
+      
+      double[] scores = new double[this.iterations];
+      
+      for (int i = 0; i < this.iterations; ++i) {
+        scores[i] = this.iterate(b, batch);
+      }
+      
+      return scores;
+    } finally {
+      b.tearDown();
+    }
+  }
+  
+  /**
+   * Finds how many operations make up a batch of about TARGET_BATCH_NANOS.
+   * Going by the last thread, which is always measured.
+   */
+  protected int calibrate(Benchmark b) {
+    int ops = 1;
+    
+    while (ops < (1 << 30)) {
+      long start = System.nanoTime();
+      BenchmarkRunner.sink += b.run(b.getThreads() - 1, ops);
+      long elapsed = System.nanoTime() - start;
+      
+      if (elapsed >= BenchmarkRunner.TARGET_BATCH_NANOS) {
+        break;
+      }
+      
+      ops *= 2;
+    }
+    
+    return ops;
+  }
+  
+  /**
+   * Runs batches on every thread until the iteration time is up.
+   * 
+   * @return the average time per operation per measured thread.
+   */
+  protected double iterate(final Benchmark b, final int batch) {
+    final int n = b.getThreads();
+    final long[] elapsed = new long[n];
+    final long[] ops = new long[n];
+    final CountDownLatch ready = new CountDownLatch(n);
+    final CountDownLatch go = new CountDownLatch(1);
+    
+    Thread[] threads = new Thread[n];
+    
+    for (int i = 0; i < n; ++i) {
+      final int index = i;
+      
+      threads[i] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          ready.countDown();
+          
+          try {
+            go.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+          
+          long start = System.nanoTime();
+          long deadline = start + BenchmarkRunner.this.iterationNanos;
+          long now = start;
+          long done = 0;
+          long result = 0;
+          
+          while (now < deadline) {
+            result += b.run(index, batch);
+            done += batch;
+            now = System.nanoTime();
+          }
+          
+          elapsed[index] = now - start;
+          ops[index] = done;
+          
+          BenchmarkRunner.sink += result;
+        }
+      });
+      
+      threads[i].start();
+    }
+    
+    try {
+      ready.await();
+      go.countDown();
+      
+      for (Thread t : threads) {
+        t.join();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    
+    long totalElapsed = 0;
+    long totalOps = 0;
+    
+    for (int i = 0; i < n; ++i) {
+      if (b.isMeasured(i)) {
+        totalElapsed += elapsed[i];
+        totalOps += ops[i];
+      }
+    }
+    
+    return totalOps > 0 ? (double) totalElapsed / totalOps : 0;
+  }
+  
+  protected static String summarise(Benchmark b, double[] scores) {
+    double mean = 0;
+    double min = Double.MAX_VALUE;
+    double max = 0;
+    
+    for (double s : scores) {
+      mean += s;
+      min = Math.min(min, s);
+      max = Math.max(max, s);
+    }
+    
+    mean /= scores.length;
+    
+    double sumSquares = 0;
+    
+    for (double s : scores) {
+      sumSquares += (s - mean) * (s - mean);
+    }
+    
+    double stdev = scores.length > 1 ? Math.sqrt(sumSquares / (scores.length - 1)) : 0;
+    
+    return
+        b.getName() + "," +
+        b.getParams() + "," +
+        b.getThreads() + "," +
+        scores.length + "," +
+        String.format("%.3f", mean) + "," +
+        String.format("%.3f", stdev) + "," +
+        String.format("%.3f", min) + "," +
+        String.format("%.3f", max);
+  }
+}
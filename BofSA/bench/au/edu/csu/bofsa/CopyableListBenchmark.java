@@ -0,0 +1,78 @@
+/**
+ *   The MIT License
+ *
+ *  Copyright 2011 Andrew James <ephphatha@thelettereph.com>.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package au.edu.csu.bofsa;
+
+import java.util.List;
+
+/**
+ * Copying a CopyableList of boxed integers at a range of sizes.
+ * 
+ * @author ephphatha
+ *
+ */
+public class CopyableListBenchmark extends Benchmark {
+  
+  private static final int[] SIZES = {10, 100, 1000, 10000, 100000};
+  
+  protected final int size;
+  
+  protected CopyableList<Integer> list;
+  
+  public static void addAll(List<Benchmark> benchmarks) {
+    for (int s : CopyableListBenchmark.SIZES) {
+      benchmarks.add(new CopyableListBenchmark(s));
+    }
+  }
+  
+  public CopyableListBenchmark(int size) {
+    super("CopyableList.copy", "size=" + size, 1);
+    
+    this.size = size;
+  }
+  
+  @Override
+  public void setUp() {
+    this.list = new CopyableList<Integer>();
+    
+    for (int i = 0; i < this.size; ++i) {
+      this.list.add(Integer.valueOf(i));
+    }
+  }
+  
+  @Override
+  public void tearDown() {
+    this.list = null;
+  }
+  
+  @Override
+  public long run(int thread, int ops) {
+    long result = 0;
+    
+    for (int i = 0; i < ops; ++i) {
+      result += this.list.copy().size();
+    }
+    
+    return result;
+  }
+}
@@ -0,0 +1,75 @@
+/**
+ *   The MIT License
+ *
+ *  Copyright 2011 Andrew James <ephphatha@thelettereph.com>.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package au.edu.csu.bofsa;
+
+import java.util.List;
+
+/**
+ * Logging a task run in each logging mode, the per run cost every worker
+ * pays.
+ * 
+ * @author ephphatha
+ *
+ */
+public class LoggerBenchmark extends Benchmark {
+  
+  private static final int TYPES = 16;
+  
+  protected final Logger.Mode mode;
+  
+  protected Logger logger;
+  protected int[] ids;
+  
+  public static void addAll(List<Benchmark> benchmarks) {
+    benchmarks.add(new LoggerBenchmark(Logger.Mode.BASIC));
+    benchmarks.add(new LoggerBenchmark(Logger.Mode.SAMPLE));
+  }
+  
+  public LoggerBenchmark(Logger.Mode mode) {
+    super("Logger.taskRun", "mode=" + mode.name(), 1);
+    
+    this.mode = mode;
+  }
+  
+  @Override
+  public void setUp() {
+    this.logger = new Logger();
+    this.logger.setLogMode(this.mode);
+    
+    this.ids = new int[LoggerBenchmark.TYPES];
+    
+    for (int i = 0; i < LoggerBenchmark.TYPES; ++i) {
+      this.ids[i] = Logger.getTypeId("LoggerBenchmark" + i);
+    }
+  }
+  
+  @Override
+  public long run(int thread, int ops) {
+    for (int i = 0; i < ops; ++i) {
+      this.logger.taskRun(this.ids[i % LoggerBenchmark.TYPES], 1000 + (i & 1023));
+    }
+    
+    return this.logger.peekTaskStats(this.ids[0]).executionCount;
+  }
+}
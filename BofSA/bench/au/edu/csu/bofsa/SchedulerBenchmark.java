@@ -0,0 +1,107 @@
+/**
+ *   The MIT License
+ *
+ *  Copyright 2011 Andrew James <ephphatha@thelettereph.com>.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package au.edu.csu.bofsa;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import au.edu.csu.bofsa.Behaviours.Behaviour;
+import au.edu.csu.bofsa.Signals.Signal;
+
+/**
+ * Queueing a ready behaviour with Scheduler.call() and taking it back off
+ * with getNextTask() in each scheduling mode, on a single thread with no
+ * workers running.
+ * 
+ * @author ephphatha
+ *
+ */
+public class SchedulerBenchmark extends Benchmark {
+  
+  private static final int TASKS = 64;
+  
+  protected static class IdleBehaviour extends Behaviour<CopyableInteger> {
+    public IdleBehaviour() {
+      super(IdleBehaviour.class.getSimpleName(), new Signal<CopyableInteger>(new CopyableInteger(0)));
+    }
+    
+    @Override
+    protected boolean doRun() {
+      return true;
+    }
+  }
+  
+  protected final Scheduler.Mode mode;
+  
+  protected Scheduler scheduler;
+  protected IdleBehaviour[] behaviours;
+  
+  public static void addAll(List<Benchmark> benchmarks) {
+    for (Scheduler.Mode m : Scheduler.Mode.values()) {
+      benchmarks.add(new SchedulerBenchmark(m));
+    }
+  }
+  
+  public SchedulerBenchmark(Scheduler.Mode mode) {
+    super("Scheduler.call+getNextTask", "mode=" + mode.name(), 1);
+    
+    this.mode = mode;
+  }
+  
+  @Override
+  public void setUp() {
+    this.scheduler = new Scheduler();
+    this.scheduler.mode = this.mode;
+    this.scheduler.state = Scheduler.State.RUNNING;
+    
+    this.behaviours = new IdleBehaviour[SchedulerBenchmark.TASKS];
+    
+    for (int i = 0; i < SchedulerBenchmark.TASKS; ++i) {
+      this.behaviours[i] = new IdleBehaviour();
+    }
+  }
+  
+  @Override
+  public void tearDown() {
+    this.scheduler.stop();
+    this.scheduler = null;
+  }
+  
+  @Override
+  public long run(int thread, int ops) {
+    long result = 0;
+    
+    for (int i = 0; i < ops; ++i) {
+      this.scheduler.call(this.behaviours[i % SchedulerBenchmark.TASKS]);
+      
+      Callable<Boolean> c = this.scheduler.getNextTask();
+      
+      if (c != null) {
+        ++result;
+      }
+    }
+    
+    return result;
+  }
+}
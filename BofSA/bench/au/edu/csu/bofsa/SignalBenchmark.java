@@ -0,0 +1,97 @@
+/**
+ *   The MIT License
+ *
+ *  Copyright 2011 Andrew James <ephphatha@thelettereph.com>.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package au.edu.csu.bofsa;
+
+import java.util.List;
+
+import au.edu.csu.bofsa.Signals.Signal;
+
+/**
+ * Signal writes and reads with several threads on the one signal. Either
+ * every thread writes, or the rest read while the first thread writes
+ * without being timed. A single reader has no writer.
+ * 
+ * @author ephphatha
+ *
+ */
+public class SignalBenchmark extends Benchmark {
+  
+  private static final int[] THREADS = {1, 2, 4, 8};
+  
+  protected final boolean allWrite;
+  
+  protected Signal<CopyableVector2f> signal;
+  
+  public static void addAll(List<Benchmark> benchmarks) {
+    for (int t : SignalBenchmark.THREADS) {
+      benchmarks.add(new SignalBenchmark(true, t));
+    }
+    
+    benchmarks.add(new SignalBenchmark(false, 1));
+    
+    for (int t : SignalBenchmark.THREADS) {
+      if (t > 1) {
+        benchmarks.add(new SignalBenchmark(false, t + 1));
+      }
+    }
+  }
+  
+  public SignalBenchmark(boolean allWrite, int threads) {
+    super(allWrite ? "Signal.write" : "Signal.read", allWrite ? "writers=all" : ("writers=" + (threads > 1 ? 1 : 0)), threads);
+    
+    this.allWrite = allWrite;
+  }
+  
+  @Override
+  public boolean isMeasured(int thread) {
+    return this.allWrite || this.threads == 1 || thread > 0;
+  }
+  
+  @Override
+  public void setUp() {
+    this.signal = new Signal<CopyableVector2f>(new CopyableVector2f(0, 0));
+  }
+  
+  @Override
+  public long run(int thread, int ops) {
+    long result = 0;
+    
+    if (this.allWrite || (thread == 0 && this.threads > 1)) {
+      CopyableVector2f value = new CopyableVector2f(thread, 0);
+      
+      for (int i = 0; i < ops; ++i) {
+        value.y = i;
+        this.signal.write(value);
+      }
+      
+      result = this.signal.getTimeStamp();
+    } else {
+      for (int i = 0; i < ops; ++i) {
+        result += (long) this.signal.read().y + this.signal.getTimeStamp();
+      }
+    }
+    
+    return result;
+  }
+}
@@ -0,0 +1,96 @@
+/**
+ *   The MIT License
+ *
+ *  Copyright 2011 Andrew James <ephphatha@thelettereph.com>.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package au.edu.csu.bofsa;
+
+import java.util.List;
+
+import au.edu.csu.bofsa.Events.Event;
+import au.edu.csu.bofsa.Events.EventSink;
+import au.edu.csu.bofsa.Events.GenericEvent;
+import au.edu.csu.bofsa.Events.Stream;
+
+/**
+ * Broadcasting one event to a stream with varying numbers of sinks.
+ * 
+ * @author ephphatha
+ *
+ */
+public class StreamBenchmark extends Benchmark {
+  
+  private static final int[] SINKS = {1, 2, 4, 8, 16, 32, 64};
+  
+  protected static class CountingSink implements EventSink, Comparable<Object> {
+    public long count;
+    
+    @Override
+    public void handleEvent(Event event) {
+      ++this.count;
+    }
+    
+    @Override
+    public int compareTo(Object o) {
+      return this.hashCode() - o.hashCode();
+    }
+  }
+  
+  protected final int numSinks;
+  
+  protected Stream stream;
+  protected CountingSink[] sinks;
+  protected Event event;
+  
+  public static void addAll(List<Benchmark> benchmarks) {
+    for (int s : StreamBenchmark.SINKS) {
+      benchmarks.add(new StreamBenchmark(s));
+    }
+  }
+  
+  public StreamBenchmark(int sinks) {
+    super("Stream.notifySinks", "sinks=" + sinks, 1);
+    
+    this.numSinks = sinks;
+  }
+  
+  @Override
+  public void setUp() {
+    this.stream = new Stream();
+    this.sinks = new CountingSink[this.numSinks];
+    
+    for (int i = 0; i < this.numSinks; ++i) {
+      this.sinks[i] = new CountingSink();
+      this.stream.addSink(this.sinks[i]);
+    }
+    
+    this.event = new GenericEvent(this.stream, GenericEvent.Message.NEW_BEHAVIOUR, Event.Type.BROADCAST, System.nanoTime());
+  }
+  
+  @Override
+  public long run(int thread, int ops) {
+    for (int i = 0; i < ops; ++i) {
+      this.stream.notifySinks(this.event);
+    }
+    
+    return this.sinks[0].count;
+  }
+}
@@ -0,0 +1,173 @@
+/**
+ *   The MIT License
+ *
+ *  Copyright 2011 Andrew James <ephphatha@thelettereph.com>.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package au.edu.csu.bofsa;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Creep archetypes read from data/creeps.xml. Each archetype's id is its
+ * position in the file, if nothing can be read a single default archetype
+ * with the original creep stats is used instead.
+ * 
+ * @author ephphatha
+ *
+ */
+public class ArchetypeRegistry {
+  public static final String DEFAULT_PATH = "data/creeps.xml";
+  
+  private static ArchetypeRegistry instance;
+  
+  protected List<CreepArchetype> archetypes;
+  protected Map<String, CreepArchetype> byName;
+  
+  /**
+   * @return the registry loaded from DEFAULT_PATH, loading it on first use.
+   */
+  public static synchronized ArchetypeRegistry getDefault() {
+    if (ArchetypeRegistry.instance == null) {
+      ArchetypeRegistry.instance = new ArchetypeRegistry(ArchetypeRegistry.DEFAULT_PATH);
+    }
+    
+    return ArchetypeRegistry.instance;
+  }
+  
+  public ArchetypeRegistry(String path) {
+    this.archetypes = new ArrayList<CreepArchetype>();
+    this.byName = new HashMap<String, CreepArchetype>();
+    
+    Sprite.SequencePoint[][] animations = ArchetypeRegistry.buildAnimations();
+    
+    try {
+      InputStream in = ArchetypeRegistry.class.getResourceAsStream("/" + path);
+      
+      if (in == null) {
+        in = new FileInputStream(path);
+      }
+      
+      try {
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(in);
+        
+        NodeList creeps = doc.getElementsByTagName("creep");
+        
+        for (int i = 0; i < creeps.getLength(); ++i) {
+          Element e = (Element) creeps.item(i);
+          
+          String name = e.getAttribute("type");
+          
+          if (name.length() == 0 || this.byName.containsKey(name.toLowerCase())) {
+            continue;
+          }
+          
+          try {
+            this.add(new CreepArchetype(
+                this.archetypes.size(),
+                name,
+                ArchetypeRegistry.parseFloat(e, "speed", 1.0f),
+                ArchetypeRegistry.parseFloat(e, "basehp", 64.0f),
+                ArchetypeRegistry.parseFloat(e, "damage", 0.0f),
+                animations));
+          } catch (NumberFormatException n) {
+            System.out.println("Skipping creep type " + name + ": " + n.getMessage());
+          }
+        }
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      System.out.println("Couldn't read " + path + ": " + e.getMessage());
+    } catch (SAXException e) {
+      System.out.println("Couldn't parse " + path + ": " + e.getMessage());
+    } catch (ParserConfigurationException e) {
+      System.out.println("Couldn't parse " + path + ": " + e.getMessage());
+    }
+    
+    if (this.archetypes.isEmpty()) {
+      this.add(new CreepArchetype(0, "Default", 1.0f, 64.0f, 0.0f, animations));
+    }
+  }
+  
+  public int size() {
+    return this.archetypes.size();
+  }
+  
+  /**
+   * @return the archetype with the given id, or the first archetype if there
+   *         isn't one.
+   */
+  public CreepArchetype get(int id) {
+    if (id < 0 || id >= this.archetypes.size()) {
+      return this.archetypes.get(0);
+    }
+    
+    return this.archetypes.get(id);
+  }
+  
+  /**
+   * @return the id of the named archetype (ignoring case), or 0 if there
+   *         isn't one.
+   */
+  public int getId(String name) {
+    CreepArchetype a = name != null ? this.byName.get(name.toLowerCase()) : null;
+    
+    return a != null ? a.id : 0;
+  }
+  
+  private void add(CreepArchetype a) {
+    this.archetypes.add(a);
+    this.byName.put(a.name.toLowerCase(), a);
+  }
+  
+  private static float parseFloat(Element e, String attribute, float fallback) {
+    String value = e.getAttribute(attribute);
+    
+    return value.length() > 0 ? Float.parseFloat(value) : fallback;
+  }
+  
+  private static Sprite.SequencePoint[][] buildAnimations() {
+    Sprite.SequencePoint[][] a = new Sprite.SequencePoint[4][];
+
+    for (int i = 0; i < 4; ++i) {
+      a[i] = new Sprite.SequencePoint[4];
+      for (int j = 0; j < 4; ++j) {
+        a[i][j] = new Sprite.SequencePoint((i * 4) + j, 0.25f);
+      }
+    }
+    
+    return a;
+  }
+}
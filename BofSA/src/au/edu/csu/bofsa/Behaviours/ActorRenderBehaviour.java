@@ -60,6 +60,10 @@ public class ActorRenderBehaviour extends RenderBehaviour{
   protected Sprite.SequencePoint[][] sequences;
   
   protected Direction currentDir;
+  
+  protected boolean interpolated;
+  
+  protected volatile Sample previous;
 
   public static enum Direction {
     SOUTH,
@@ -68,6 +72,22 @@ public class ActorRenderBehaviour extends RenderBehaviour{
     EAST
   }
   
+  /**
+   * Where the creep was and when, published as one object so draw() never
+   * pairs a position with another tick's time stamp.
+   */
+  protected static class Sample {
+    public final float x;
+    public final float y;
+    public final long time;
+    
+    public Sample(float x, float y, long time) {
+      this.x = x;
+      this.y = y;
+      this.time = time;
+    }
+  }
+  
   public static class SolidFill implements ShapeFill {
     private Color colour;
 
@@ -115,15 +135,47 @@ public class ActorRenderBehaviour extends RenderBehaviour{
     
     this.setAnimationSequence(Direction.NORTH);
     
+    this.interpolated = false;
+    this.previous = null;
+    
     creepStream.addSink(this);
   }
 
+  /**
+   * Only worth turning on when this runs once per tick just before the creep
+   * moves, as it does in the tick based modes. In the task based mode draw()
+   * runs far more often than MoveBehaviour and the creep is simply drawn
+   * where it is.
+   */
+  public void setInterpolated(boolean interpolated) {
+    this.interpolated = interpolated;
+    
+    if (!interpolated) {
+      this.previous = null;
+    }
+  }
+
+  @Override
+  public void reset() {
+    super.reset();
+    
+    this.previous = null;
+  }
+
   @Override
   protected boolean doRun() {
     if (super.doRun() == false) {
       return false;
     }
     
+    if (this.interpolated) {
+      // Remember where the creep was before it moves this tick so draw() can
+      // blend between the last two positions.
+      CopyableVector2f pos = this.position.read();
+      
+      this.previous = new Sample(pos.x, pos.y, this.position.getTimeStamp());
+    }
+    
     Vector2f vel = this.velocity.read();
     
     if (Math.abs(vel.x) > Math.abs(vel.y)) {
@@ -149,8 +201,24 @@ public class ActorRenderBehaviour extends RenderBehaviour{
   @Override
   public void draw(Graphics g) {
     CopyableVector2f pos = this.position.read();
+    long time = this.position.getTimeStamp();
+    
+    float x = pos.x;
+    float y = pos.y;
+    
+    Sample prev = this.previous;
+    
+    if (prev != null && time > prev.time) {
+      // Drawn one tick behind, moving from the previous position to the
+      // current one over the time the last move took.
+      float alpha = Math.min(1.0f, (float) (this.clock.nanoTime() - time) / (float) (time - prev.time));
+      
+      x = prev.x + (pos.x - prev.x) * alpha;
+      y = prev.y + (pos.y - prev.y) * alpha;
+    }
+    
     Dimension tile = this.tileSize.read();
-    Rectangle r = new Rectangle(pos.x * tile.width - tile.width / 4.0f, pos.y * tile.height - tile.height / 4.0f, tile.width / 2.0f, tile.height / 2.0f);
+    Rectangle r = new Rectangle(x * tile.width - tile.width / 4.0f, y * tile.height - tile.height / 4.0f, tile.width / 2.0f, tile.height / 2.0f);
     this.sprite.draw(g, r);
     
     r.setHeight(r.getHeight() * 0.1f);
@@ -167,7 +235,10 @@ public class ActorRenderBehaviour extends RenderBehaviour{
   private void setAnimationSequence(Direction dir) {
     if (this.currentDir != dir) {
       this.currentDir = dir;
-      this.sprite.setFrameSequence(this.sequences[this.currentDir.ordinal()]);
+      
+      if (this.sprite != null) {
+        this.sprite.setFrameSequence(this.sequences[this.currentDir.ordinal()]);
+      }
     }
   }
 }
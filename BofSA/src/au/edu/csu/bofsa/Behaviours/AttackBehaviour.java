@@ -62,14 +62,24 @@ public class AttackBehaviour extends Behaviour<CopyableBoolean> {
     this.damage = damage;
     this.range = range;
     
-    this.signal.write(new CopyableBoolean(false), System.nanoTime() - (long) ((1.0f / this.fireRate.read().getValue()) * 1.0E9f));
+    this.signal.write(new CopyableBoolean(false), this.clock.nanoTime() - (long) ((1.0f / this.fireRate.read().getValue()) * 1.0E9f));
+  }
+
+  /**
+   * Ready to fire straight away, same as a new tower.
+   */
+  @Override
+  public void reset() {
+    super.reset();
+    
+    this.signal.write(new CopyableBoolean(false), this.clock.nanoTime() - (long) ((1.0f / this.fireRate.read().getValue()) * 1.0E9f));
   }
 
   @Override
   protected boolean doRun() {
     List<Pipe<CopyableVector2f>> l = this.targets.read();
     
-    long current = System.nanoTime();
+    long current = this.clock.nanoTime();
     
     long nanosPerShot = (long) ((1.0f / this.fireRate.read().getValue()) * 1.0E9f);
     
@@ -85,7 +95,7 @@ public class AttackBehaviour extends Behaviour<CopyableBoolean> {
                   this,
                   Float.valueOf(this.damage.read().getValue()),
                   Event.Type.TARGETTED,
-                  System.nanoTime()));
+                  this.clock.nanoTime()));
           
           fired = true;
           break;
@@ -95,6 +105,9 @@ public class AttackBehaviour extends Behaviour<CopyableBoolean> {
     
     if (!fired) {
       this.signal.write(new CopyableBoolean(true), current - nanosPerShot);
+    } else {
+      // Reloading, nothing to do until the next shot is due.
+      this.sleepUntil(this.signal.getTimeStamp() + nanosPerShot);
     }
     
     return true;
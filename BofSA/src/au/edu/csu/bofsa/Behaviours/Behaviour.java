@@ -28,8 +28,13 @@ import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import au.edu.csu.bofsa.Caller;
 import au.edu.csu.bofsa.Copyable;
+import au.edu.csu.bofsa.Logger;
+import au.edu.csu.bofsa.SimClock;
+import au.edu.csu.bofsa.SpanProfiler;
 import au.edu.csu.bofsa.Events.Event;
 import au.edu.csu.bofsa.Events.EventSink;
 import au.edu.csu.bofsa.Signals.InputSignal;
@@ -42,30 +47,56 @@ import au.edu.csu.bofsa.Signals.Signal;
 public abstract class Behaviour<T extends Copyable<T>> implements Callable<Boolean>, EventSink, Comparable<Object> {
   
   private static final int BALLASTITERATIONS = 1000;
+  private static final int RUN_SPAN = Logger.getTypeId("Run");
+  private static final int BALLAST_SPAN = Logger.getTypeId("Ballast");
+  private static int ballastIterations = Behaviour.BALLASTITERATIONS;
   protected long lastStartTime;
   protected long lastEndTime;
+  protected long wakeTime;
+  protected long enqueueTime;
+  
+  protected final SimClock clock;
   
   protected Signal<T> signal;
+  protected T initialValue;
   protected List<InputSignal<?>> inputs;
   protected Queue<Event> events;
   
+  protected final AtomicBoolean dormant;
+  protected volatile Caller<Boolean> waker;
+  
   protected long deltaThreshold;
   protected final String name;
+  protected final int typeId;
 
   public long fibresult;
   
   public Behaviour(String name, Signal<T> signal) {
     this.name = name;
+    this.typeId = Logger.getTypeId(name);
+    this.clock = SimClock.getDefault();
     this.lastStartTime = System.nanoTime();
     this.lastEndTime = System.nanoTime();
     this.signal = signal;
+    this.initialValue = signal.read().copy();
     
     this.inputs = new LinkedList<InputSignal<?>>();
     this.events = new ConcurrentLinkedQueue<Event>();
     
+    this.dormant = new AtomicBoolean(false);
+    this.waker = null;
+    
     this.deltaThreshold = 100000;
   }
   
+  /**
+   * Set before any behaviours start running, the benchmarks turn the ballast
+   * off to time the behaviours on their own.
+   */
+  public static void setBallast(boolean enabled) {
+    Behaviour.ballastIterations = enabled ? Behaviour.BALLASTITERATIONS : 0;
+  }
+  
   protected void addInput(InputSignal<?> input) {
     this.inputs.add(input);
   }
@@ -86,29 +117,137 @@ public abstract class Behaviour<T extends Copyable<T>> implements Callable<Boole
   
   @Override
   public Boolean call() {
-    this.lastStartTime = System.nanoTime();
+    SpanProfiler.enter(this.typeId);
     
-    boolean retVal = this.doRun();
+    try {
+      this.lastStartTime = System.nanoTime();
+      this.wakeTime = 0;
+      
+      boolean retVal;
+      
+      SpanProfiler.enter(Behaviour.RUN_SPAN);
+      try {
+        retVal = this.doRun();
+      } finally {
+        SpanProfiler.exit();
+      }
+      
+      SpanProfiler.enter(Behaviour.BALLAST_SPAN);
+      
+      long a = 1;
+      long b = 1;
+      
+      for (int i = 0; i < Behaviour.ballastIterations; ++i) {
+        long temp = a;
+        a += b;
+        b = temp;
+      }
+      
+      this.fibresult = a;
+      
+      SpanProfiler.exit();
+      
+      this.lastEndTime = System.nanoTime();
+      
+      return retVal;
+    } finally {
+      SpanProfiler.exit();
+    }
+  }
+
+  @Override
+  public void handleEvent(Event event) {
+    this.events.offer(event);
+    
+    // The event is queued before the flag is checked, so either this sees the
+    // behaviour dormant and wakes it, or sleepUntilEvent() sees the event.
+    if (this.dormant.get() && this.dormant.compareAndSet(true, false)) {
+      this.waker.call(this);
+    }
+  }
+  
+  /**
+   * @return true if the behaviour only ever has work to do when an event
+   *         arrives, letting the scheduler drop it from the queue until then.
+   */
+  public boolean waitsForEvents() {
+    return false;
+  }
+  
+  /**
+   * Marks the behaviour dormant so the next event hands it back to waker.
+   * 
+   * @return false if an event got in first and the caller should queue the
+   *         behaviour itself.
+   */
+  public boolean sleepUntilEvent(Caller<Boolean> waker) {
+    if (!this.events.isEmpty()) {
+      return false;
+    }
     
-    long a = 1;
-    long b = 1;
+    this.waker = waker;
+    this.dormant.set(true);
     
-    for (int i = 0; i < Behaviour.BALLASTITERATIONS; ++i) {
-      long temp = a;
-      a += b;
-      b = temp;
+    if (!this.events.isEmpty() && this.dormant.compareAndSet(true, false)) {
+      return false;
     }
     
-    this.fibresult = a;
+    // Either still dormant, or an event arrived and handleEvent() already
+    // passed it back to the waker.
+    return true;
+  }
+  
+  /**
+   * Drops any pending events and puts the output back to the value it had
+   * when the behaviour was made, so a recycled entity can run it again.
+   */
+  public void reset() {
+    this.events.clear();
+    this.dormant.set(false);
     
-    this.lastEndTime = System.nanoTime();
+    this.signal.write(this.initialValue);
     
-    return retVal;
+    this.lastStartTime = System.nanoTime();
+    this.lastEndTime = this.lastStartTime;
+    this.wakeTime = 0;
+    this.enqueueTime = 0;
   }
-
-  @Override
-  public void handleEvent(Event event) {
-    this.events.offer(event);
+  
+  /**
+   * Called from doRun() before returning true when there's nothing to do
+   * until a known time, the scheduler holds the behaviour back until then
+   * instead of running it again straight away.
+   * 
+   * @param time clock time at which the behaviour should run next.
+   */
+  protected void sleepUntil(long time) {
+    this.wakeTime = time;
+  }
+  
+  /**
+   * @return when the last run asked to be woken, 0 if it didn't.
+   */
+  public long getWakeTime() {
+    return this.wakeTime;
+  }
+  
+  /**
+   * Called by the scheduler as the behaviour goes onto a run queue.
+   */
+  public void markQueued() {
+    this.enqueueTime = System.nanoTime();
+  }
+  
+  /**
+   * @return how long the last run spent queued before it started, or -1 if
+   *         it wasn't queued by a scheduler.
+   */
+  public long getLastQueueDelay() {
+    if (this.enqueueTime == 0) {
+      return -1;
+    }
+    
+    return this.lastStartTime - this.enqueueTime;
   }
   
   abstract protected boolean doRun();
@@ -142,4 +281,11 @@ public abstract class Behaviour<T extends Copyable<T>> implements Callable<Boole
   public String getName() {
     return this.name;
   }
+  
+  /**
+   * @return the logger's id for this behaviour's name.
+   */
+  public int getTypeId() {
+    return this.typeId;
+  }
 }
@@ -0,0 +1,71 @@
+/**
+ *   The MIT License
+ *
+ *  Copyright 2011 Andrew James <ephphatha@thelettereph.com>.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package au.edu.csu.bofsa.Behaviours;
+
+import au.edu.csu.bofsa.CopyableList;
+import au.edu.csu.bofsa.CopyableVector2f;
+import au.edu.csu.bofsa.Pipe;
+import au.edu.csu.bofsa.SpatialGrid;
+import au.edu.csu.bofsa.Signals.InputSignal;
+import au.edu.csu.bofsa.Signals.Signal;
+
+/**
+ * Rebuilds the creep broadphase from the current creep positions, no more
+ * often than REBUILD_PERIOD. The creep list only changes on spawns and
+ * deaths so there's no signal that says creeps have moved, and rebuilding
+ * back to back would just churn through grids nobody reads.
+ * 
+ * @author ephphatha
+ *
+ */
+public class BroadphaseBehaviour extends Behaviour<SpatialGrid> {
+  
+  /**
+   * The same rate the tick based modes rebuild theirs at.
+   */
+  public static final long REBUILD_PERIOD = 1000000000L / 30;
+  
+  protected InputSignal<CopyableList<Pipe<CopyableVector2f>>> creeps;
+  
+  public BroadphaseBehaviour(
+      Signal<SpatialGrid> broadphase,
+      InputSignal<CopyableList<Pipe<CopyableVector2f>>> creeps) {
+    super(BroadphaseBehaviour.class.getSimpleName(), broadphase);
+    
+    this.creeps = creeps;
+  }
+
+  @Override
+  protected boolean doRun() {
+    CopyableList<Pipe<CopyableVector2f>> l = this.creeps.read();
+    
+    if (!l.isEmpty() || this.signal.read().size() > 0) {
+      this.signal.write(SpatialGrid.build(l, SeparationBehaviour.SEPARATION_RADIUS));
+    }
+    
+    this.sleepUntil(this.clock.nanoTime() + BroadphaseBehaviour.REBUILD_PERIOD);
+    
+    return true;
+  }
+}
@@ -23,10 +23,11 @@
  */
 package au.edu.csu.bofsa.Behaviours;
 
-import au.edu.csu.bofsa.CheckPoint;
 import au.edu.csu.bofsa.CopyableBoolean;
 import au.edu.csu.bofsa.CopyableFloat;
+import au.edu.csu.bofsa.CopyableInteger;
 import au.edu.csu.bofsa.CopyableVector2f;
+import au.edu.csu.bofsa.Route;
 import au.edu.csu.bofsa.Events.CollisionEvent;
 import au.edu.csu.bofsa.Events.Event;
 import au.edu.csu.bofsa.Events.EventSink;
@@ -44,7 +45,8 @@ public class CollisionBehaviour extends Behaviour<CopyableBoolean> implements Ev
 
   protected InputSignal<CopyableVector2f> object;
   protected InputSignal<CopyableFloat> radius;
-  protected InputSignal<CheckPoint> collider;
+  protected InputSignal<CopyableInteger> waypoint;
+  protected Route route;
   
   protected EventSink creepStream;
   
@@ -52,7 +54,8 @@ public class CollisionBehaviour extends Behaviour<CopyableBoolean> implements Ev
       Signal<CopyableBoolean> signal,
       InputSignal<CopyableVector2f> object,
       InputSignal<CopyableFloat> radius,
-      InputSignal<CheckPoint> collider,
+      InputSignal<CopyableInteger> waypoint,
+      Route route,
       Stream creepStream) {
     super(CollisionBehaviour.class.getSimpleName(), signal);
 
@@ -60,13 +63,18 @@ public class CollisionBehaviour extends Behaviour<CopyableBoolean> implements Ev
     
     this.object = object;
     this.radius = radius;
-    this.collider = collider;
+    this.waypoint = waypoint;
+    this.route = route;
     
     this.addSink(creepStream);
     
     creepStream.addSink(this);
   }
 
+  public void setRoute(Route route) {
+    this.route = route;
+  }
+
   @Override
   protected boolean doRun() {
     while (!this.events.isEmpty()) {
@@ -80,16 +88,17 @@ public class CollisionBehaviour extends Behaviour<CopyableBoolean> implements Ev
     }
     
     CopyableVector2f objPos = this.object.read();
-    CheckPoint colPos = this.collider.read();
+    CopyableInteger waypoint = this.waypoint.read();
+    float radius = this.radius.read().getValue();
     
-    if (objPos.distanceSquared(colPos.position) <= Math.pow(this.radius.read().getValue(), 2)) {
+    if (this.route.distanceSquared(waypoint.getValue(), objPos.x, objPos.y) <= radius * radius) {
       if (this.signal.read().getValue() == false) {
         this.notifySinks(
             new CollisionEvent(
                 this,
-                this.collider.read(),
+                waypoint,
                 Event.Type.TARGETTED,
-                System.nanoTime()));
+                this.clock.nanoTime()));
         
         this.signal.write(new CopyableBoolean(true));
       }
@@ -23,19 +23,27 @@
  */
 package au.edu.csu.bofsa.Behaviours;
 
-import java.util.Queue;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
 
 import org.newdawn.slick.Image;
 import org.newdawn.slick.ImageBuffer;
 import org.newdawn.slick.SlickException;
 
-import au.edu.csu.bofsa.CheckPoint;
+import au.edu.csu.bofsa.ArchetypeRegistry;
 import au.edu.csu.bofsa.CopyableBoolean;
 import au.edu.csu.bofsa.CopyableDimension;
 import au.edu.csu.bofsa.CopyableFloat;
+import au.edu.csu.bofsa.CopyableInteger;
 import au.edu.csu.bofsa.CopyableList;
 import au.edu.csu.bofsa.CopyableVector2f;
+import au.edu.csu.bofsa.CreepArchetype;
+import au.edu.csu.bofsa.PathPlanner;
 import au.edu.csu.bofsa.Pipe;
+import au.edu.csu.bofsa.Route;
+import au.edu.csu.bofsa.SimClock;
+import au.edu.csu.bofsa.SpatialGrid;
 import au.edu.csu.bofsa.Sprite;
 import au.edu.csu.bofsa.Events.CreepSpawnEvent;
 import au.edu.csu.bofsa.Events.Event;
@@ -61,19 +69,51 @@ public class CreepFactoryBehaviour extends Behaviour<CopyableList<Pipe<CopyableV
 
   protected EventSink drawWatcher;
   
+  protected InputSignal<SpatialGrid> broadphase;
+  
+  private Set<Object> deadStreams;
+  
+  protected boolean fuse;
+  
   public CreepFactoryBehaviour(Signal<CopyableList<Pipe<CopyableVector2f>>> signal, InputSignal<CopyableDimension> tileSize, EventSink behaviourWatcher, EventSink drawWatcher) {
+    this(signal, tileSize, null, behaviourWatcher, drawWatcher);
+  }
+  
+  /**
+   * @param broadphase may be null, in which case creeps don't keep apart from
+   *                   each other.
+   */
+  public CreepFactoryBehaviour(Signal<CopyableList<Pipe<CopyableVector2f>>> signal, InputSignal<CopyableDimension> tileSize, InputSignal<SpatialGrid> broadphase, EventSink behaviourWatcher, EventSink drawWatcher) {
     super(CreepFactoryBehaviour.class.getSimpleName(), signal);
     
     super.addInput(tileSize);
     
     this.tileSize = tileSize;
     
+    this.broadphase = broadphase;
+    
+    this.deadStreams = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+    
     this.behaviourWatcher = behaviourWatcher;
     this.drawWatcher = drawWatcher;
+    
+    this.fuse = false;
+  }
+  
+  /**
+   * @param fuse whether each new creep's behaviours are scheduled as a single
+   *             FusedBehaviour rather than as separate tasks.
+   */
+  public void setFusion(boolean fuse) {
+    this.fuse = fuse;
   }
 
   
   public static void loadResources() {
+    if (Sprite.isHeadless()) {
+      return;
+    }
+    
     CreepFactoryBehaviour.getErrorImage();
     CreepFactoryBehaviour.getSpriteSheet();
   }
@@ -115,7 +155,14 @@ public class CreepFactoryBehaviour extends Behaviour<CopyableList<Pipe<CopyableV
     return CreepFactoryBehaviour.spriteSheet;
   }
 
+  /**
+   * @return null when running headless.
+   */
   public static Sprite getSprite() {
+    if (Sprite.isHeadless()) {
+      return null;
+    }
+    
     Sprite s;
     Image i = CreepFactoryBehaviour.getSpriteSheet();
     try {
@@ -128,29 +175,23 @@ public class CreepFactoryBehaviour extends Behaviour<CopyableList<Pipe<CopyableV
   }
   
   public static void spawnCreep(
+      CreepArchetype archetype,
       final CopyableVector2f pos,
-      final Queue<CheckPoint> cps,
+      final Route route,
+      PathPlanner planner,
+      InputSignal<SpatialGrid> broadphase,
       EventSink controller,
       EventSink behaviourWatcher,
       InputSignal<CopyableDimension> tileSize,
       EventSink drawWatcher,
       Signal<CopyableList<Pipe<CopyableVector2f>>> signal) {
-    Sprite.SequencePoint[][] a = new Sprite.SequencePoint[4][];
-
-    for (int i = 0; i < 4; ++i) {
-      a[i] = new Sprite.SequencePoint[4];
-      for (int j = 0; j < 4; ++j) {
-        a[i][j] = new Sprite.SequencePoint((i * 4) + j, 0.25f);
-      }
-    }
-    
-    long birthTime = System.nanoTime();
+    long birthTime = SimClock.now();
     
     Stream creepStream = new Stream();
     
     creepStream.addSink(controller);
     
-    Signal<CopyableFloat> health = new Signal<CopyableFloat>(new CopyableFloat(64.0f));
+    Signal<CopyableFloat> health = new Signal<CopyableFloat>(new CopyableFloat(archetype.maxHealth));
     
     HealthBehaviour h = new HealthBehaviour(
         health,
@@ -180,11 +221,11 @@ public class CreepFactoryBehaviour extends Behaviour<CopyableList<Pipe<CopyableV
             Event.Type.TARGETTED,
             birthTime));
     
-    Signal<CheckPoint> cp = new Signal<CheckPoint>(cps.peek());
+    Signal<CopyableInteger> waypoint = new Signal<CopyableInteger>(new CopyableInteger(0));
     
     WaypointBehaviour w = new WaypointBehaviour(
-        cp,
-        cps,
+        waypoint,
+        route,
         creepStream);
 
     behaviourWatcher.handleEvent(
@@ -194,13 +235,35 @@ public class CreepFactoryBehaviour extends Behaviour<CopyableList<Pipe<CopyableV
             Event.Type.TARGETTED,
             birthTime));
     
-    Signal<CopyableFloat> speed = new Signal<CopyableFloat>(new CopyableFloat(1.0f));
+    Signal<CopyableFloat> speed = new Signal<CopyableFloat>(new CopyableFloat(archetype.speed));
+    
+    Signal<CopyableVector2f> separation = null;
+    
+    if (broadphase != null) {
+      separation = new Signal<CopyableVector2f>(new CopyableVector2f(0, 0));
+      
+      SeparationBehaviour s = new SeparationBehaviour(
+          separation,
+          position,
+          broadphase,
+          creepStream);
+      
+      behaviourWatcher.handleEvent(
+          new GenericEvent(
+              s,
+              GenericEvent.Message.NEW_BEHAVIOUR,
+              Event.Type.TARGETTED,
+              birthTime));
+    }
     
     VelocityBehaviour v = new VelocityBehaviour(
         velocity,
         position,
-        cp,
+        waypoint,
+        route,
         speed,
+        planner,
+        separation,
         creepStream);
 
     behaviourWatcher.handleEvent(
@@ -214,7 +277,8 @@ public class CreepFactoryBehaviour extends Behaviour<CopyableList<Pipe<CopyableV
         new Signal<CopyableBoolean>(new CopyableBoolean(true)),
         position,
         new Signal<CopyableFloat>(new CopyableFloat(0.25f)),
-        cp,
+        waypoint,
+        route,
         creepStream);
 
     behaviourWatcher.handleEvent(
@@ -232,7 +296,7 @@ public class CreepFactoryBehaviour extends Behaviour<CopyableList<Pipe<CopyableV
         new Signal<CopyableFloat>(health.read()),
         tileSize,
         CreepFactoryBehaviour.getSprite(),
-        a,
+        archetype.getAnimations(),
         creepStream,
         drawWatcher);
 
@@ -260,15 +324,7 @@ public class CreepFactoryBehaviour extends Behaviour<CopyableList<Pipe<CopyableV
         continue;
       } else if (e instanceof GenericEvent) {
         if (e.value == GenericEvent.Message.DEATH && e.getSource() instanceof Stream) {
-          CopyableList<Pipe<CopyableVector2f>> temp = this.signal.read().copy();
-          
-          for (int i = temp.size() - 1; i >= 0; --i) {
-            if (temp.get(i).sink.equals(e.getSource())) {
-              temp.remove(i);
-            }
-          }
-          
-          this.signal.write(temp);
+          this.deadStreams.add(e.getSource());
         } else if (e.value == GenericEvent.Message.FORGET_ALL) {
           CopyableList<Pipe<CopyableVector2f>> c = this.signal.read().copy();
           c.clear();
@@ -277,20 +333,55 @@ public class CreepFactoryBehaviour extends Behaviour<CopyableList<Pipe<CopyableV
       } else if (e instanceof CreepSpawnEvent) {
         CreepSpawnEvent.SpawnEventParameters params = (SpawnEventParameters) e.value;
         
+        FusedBehaviour.Collector collector = null;
+        EventSink watcher = this.behaviourWatcher;
+        
+        if (this.fuse) {
+          collector = new FusedBehaviour.Collector("Creep", this.behaviourWatcher);
+          watcher = collector;
+        }
+        
         CreepFactoryBehaviour.spawnCreep(
+            ArchetypeRegistry.getDefault().get(params.archetype),
             new CopyableVector2f(params.position),
-            params.waypoints,
+            params.route,
+            params.planner,
+            this.broadphase,
             this,
-            this.behaviourWatcher,
+            watcher,
             this.tileSize,
             this.drawWatcher,
             this.signal);
+        
+        if (collector != null) {
+          collector.flush();
+        }
       }
     }
+    
+    if (!this.deadStreams.isEmpty()) {
+      // Everything that died since the last run comes out in a single pass.
+      CopyableList<Pipe<CopyableVector2f>> temp = new CopyableList<Pipe<CopyableVector2f>>();
+      
+      for (Pipe<CopyableVector2f> p : this.signal.read()) {
+        if (!this.deadStreams.contains(p.sink)) {
+          temp.add(p);
+        }
+      }
+      
+      this.signal.write(temp);
+      this.deadStreams.clear();
+    }
+    
     return true;
   }
   
   public boolean isReady() {
     return !this.events.isEmpty();
   }
+  
+  @Override
+  public boolean waitsForEvents() {
+    return true;
+  }
 }
@@ -0,0 +1,229 @@
+/**
+ *   The MIT License
+ *
+ *  Copyright 2011 Andrew James <ephphatha@thelettereph.com>.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package au.edu.csu.bofsa.Behaviours;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import au.edu.csu.bofsa.CopyableBoolean;
+import au.edu.csu.bofsa.Events.Event;
+import au.edu.csu.bofsa.Events.EventSink;
+import au.edu.csu.bofsa.Events.GenericEvent;
+import au.edu.csu.bofsa.Signals.InputSignal;
+import au.edu.csu.bofsa.Signals.Signal;
+
+/**
+ * Runs the behaviours of one entity back to back as a single task, the way
+ * Creep.call() does for the single threaded states. Members are ordered so
+ * that a behaviour runs after the members producing the signals it reads.
+ * 
+ * @author ephphatha
+ *
+ */
+public class FusedBehaviour extends Behaviour<CopyableBoolean> {
+  
+  /**
+   * Stands in for the behaviour watcher while an entity is built, holding on
+   * to its NEW_BEHAVIOUR events until flush() hands them on as one task.
+   * Anything else goes straight through.
+   */
+  public static class Collector implements EventSink, Comparable<Object> {
+    protected final String name;
+    protected final EventSink behaviourWatcher;
+    protected final List<Behaviour<?>> members;
+    protected long birthTime;
+    
+    public Collector(String name, EventSink behaviourWatcher) {
+      this.name = name;
+      this.behaviourWatcher = behaviourWatcher;
+      this.members = new ArrayList<Behaviour<?>>();
+    }
+    
+    @Override
+    public void handleEvent(Event event) {
+      if (event instanceof GenericEvent
+          && event.value == GenericEvent.Message.NEW_BEHAVIOUR
+          && event.getSource() instanceof Behaviour<?>) {
+        this.members.add((Behaviour<?>) event.getSource());
+        this.birthTime = event.time;
+      } else {
+        this.behaviourWatcher.handleEvent(event);
+      }
+    }
+    
+    public void flush() {
+      if (this.members.isEmpty()) {
+        return;
+      }
+      
+      Behaviour<?> b;
+      
+      if (this.members.size() == 1) {
+        b = this.members.get(0);
+      } else {
+        b = new FusedBehaviour(this.name, FusedBehaviour.order(this.members));
+      }
+      
+      this.members.clear();
+      
+      this.behaviourWatcher.handleEvent(new GenericEvent(b, GenericEvent.Message.NEW_BEHAVIOUR, Event.Type.TARGETTED, this.birthTime));
+    }
+    
+    @Override
+    public int compareTo(Object o) {
+      return this.hashCode() - o.hashCode();
+    }
+  }
+  
+  protected List<Behaviour<?>> members;
+  
+  public FusedBehaviour(String name, List<Behaviour<?>> members) {
+    super(name, new Signal<CopyableBoolean>(new CopyableBoolean(true)));
+    
+    this.members = new ArrayList<Behaviour<?>>(members);
+    
+    // Only inputs coming from outside the group matter for isReady().
+    Map<InputSignal<?>, Boolean> produced = new IdentityHashMap<InputSignal<?>, Boolean>();
+    
+    for (Behaviour<?> b : this.members) {
+      produced.put(b.getSignal(), Boolean.TRUE);
+    }
+    
+    for (Behaviour<?> b : this.members) {
+      for (InputSignal<?> i : b.inputs) {
+        if (!produced.containsKey(i)) {
+          this.addInput(i);
+        }
+      }
+    }
+  }
+  
+  /**
+   * Sorts members so producers come before the members reading their
+   * signals. Ties keep the order the members were given in, and a cycle is
+   * broken at its earliest member, which then reads last tick's values.
+   */
+  protected static List<Behaviour<?>> order(List<Behaviour<?>> members) {
+    int n = members.size();
+    
+    Map<InputSignal<?>, Integer> producer = new IdentityHashMap<InputSignal<?>, Integer>();
+    
+    for (int i = 0; i < n; ++i) {
+      producer.put(members.get(i).getSignal(), Integer.valueOf(i));
+    }
+    
+    boolean[][] dependsOn = new boolean[n][n];
+    
+    for (int i = 0; i < n; ++i) {
+      for (InputSignal<?> s : members.get(i).inputs) {
+        Integer p = producer.get(s);
+        
+        if (p != null && p.intValue() != i) {
+          dependsOn[i][p.intValue()] = true;
+        }
+      }
+    }
+    
+    List<Behaviour<?>> ordered = new ArrayList<Behaviour<?>>(n);
+    boolean[] placed = new boolean[n];
+    
+    while (ordered.size() < n) {
+      int next = -1;
+      
+      for (int i = 0; i < n && next < 0; ++i) {
+        if (!placed[i]) {
+          boolean ready = true;
+          
+          for (int j = 0; j < n && ready; ++j) {
+            ready = !(dependsOn[i][j] && !placed[j]);
+          }
+          
+          if (ready) {
+            next = i;
+          }
+        }
+      }
+      
+      if (next < 0) {
+        for (int i = 0; i < n && next < 0; ++i) {
+          if (!placed[i]) {
+            next = i;
+          }
+        }
+      }
+      
+      placed[next] = true;
+      ordered.add(members.get(next));
+    }
+    
+    return ordered;
+  }
+  
+  @Override
+  public void reset() {
+    super.reset();
+    
+    for (Behaviour<?> b : this.members) {
+      b.reset();
+    }
+  }
+
+  /**
+   * Runs each member once, members that finish are dropped and the group
+   * finishes with the last of them. If every member asked to sleep the group
+   * sleeps until the earliest of them is due.
+   */
+  @Override
+  protected boolean doRun() {
+    long wake = Long.MAX_VALUE;
+    
+    for (int i = 0; i < this.members.size(); ) {
+      Behaviour<?> b = this.members.get(i);
+      
+      if (b.call()) {
+        long t = b.getWakeTime();
+        
+        wake = (t == 0) ? 0 : Math.min(wake, t);
+        
+        ++i;
+      } else {
+        this.members.remove(i);
+      }
+    }
+    
+    if (this.members.isEmpty()) {
+      return false;
+    }
+    
+    if (wake != 0 && wake != Long.MAX_VALUE) {
+      this.sleepUntil(wake);
+    }
+    
+    this.signal.write(this.signal.read());
+    
+    return true;
+  }
+}
@@ -59,7 +59,7 @@ public class HealthBehaviour extends Behaviour<CopyableFloat> {
       if (e != null) {
         if (e instanceof GenericEvent) {
           if (e.value == GenericEvent.Message.DEATH) {
-            this.controller.handleEvent(new GenericEvent(this.creepStream, GenericEvent.Message.DEATH, Event.Type.TARGETTED, System.nanoTime()));
+            this.controller.handleEvent(new GenericEvent(this.creepStream, GenericEvent.Message.DEATH, Event.Type.TARGETTED, this.clock.nanoTime()));
             return false;
           }
         } else if (e instanceof DamageEvent) {
@@ -88,4 +88,9 @@ public class HealthBehaviour extends Behaviour<CopyableFloat> {
   public boolean isReady() {
     return !this.events.isEmpty();
   }
+  
+  @Override
+  public boolean waitsForEvents() {
+    return true;
+  }
 }
@@ -31,6 +31,7 @@ import org.newdawn.slick.InputListener;
 import au.edu.csu.bofsa.CopyableBoolean;
 import au.edu.csu.bofsa.CopyableDimension;
 import au.edu.csu.bofsa.CopyablePoint;
+import au.edu.csu.bofsa.ReplayRecorder;
 import au.edu.csu.bofsa.Events.Event;
 import au.edu.csu.bofsa.Events.EventSink;
 import au.edu.csu.bofsa.Events.TowerSpawnEvent;
@@ -69,15 +70,22 @@ public class InputPollingBehaviour extends Behaviour<CopyableBoolean> implements
     if (this.input != null) {
       if (this.input.isMousePressed(Input.MOUSE_LEFT_BUTTON)) {
         Dimension d = this.tileSize.read();
+        CopyablePoint tile = new CopyablePoint(this.input.getMouseX() / d.width,
+            this.input.getMouseY() / d.height);
+        
+        ReplayRecorder.record(tile);
+        
         this.broadcastStream.handleEvent(
             new TowerSpawnEvent(
                 this,
-                new CopyablePoint(this.input.getMouseX() / d.width,
-                    this.input.getMouseY() / d.height),
+                tile,
                 Event.Type.BROADCAST,
-                System.nanoTime()));
+                this.clock.nanoTime()));
       }
     }
+    
+    ReplayRecorder.tick();
+    
     return true;
   }
 
@@ -39,6 +39,8 @@ public class MoveBehaviour extends Behaviour<CopyableVector2f> {
   
   protected InputSignal<CopyableVector2f> vel;
   
+  protected float step;
+  
   public MoveBehaviour(
       Signal<CopyableVector2f> position,
       InputSignal<CopyableVector2f> velocity,
@@ -51,6 +53,16 @@ public class MoveBehaviour extends Behaviour<CopyableVector2f> {
 
     creepStream.addSink(this);
   }
+  
+  /**
+   * @param seconds how far each run moves the creep. 0 moves it by however
+   *                much clock time has passed since it last moved, which is
+   *                what the task based mode wants. The tick based modes
+   *                give the tick length so movement keeps step with spawning.
+   */
+  public void setStep(float seconds) {
+    this.step = seconds;
+  }
 
   @Override
   protected boolean doRun() {
@@ -67,8 +79,8 @@ public class MoveBehaviour extends Behaviour<CopyableVector2f> {
     CopyableVector2f vel = this.vel.read();
     CopyableVector2f pos = this.signal.read();
     
-    long current = System.nanoTime();
-    float delta = (float) (current - this.signal.getTimeStamp()) / (1.0E9f);
+    long current = this.clock.nanoTime();
+    float delta = this.step > 0 ? this.step : (float) (current - this.signal.getTimeStamp()) / (1.0E9f);
     vel.scale(delta);
     
     pos.add(vel);
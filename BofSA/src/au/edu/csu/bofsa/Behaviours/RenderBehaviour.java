@@ -84,14 +84,14 @@ public class RenderBehaviour extends Behaviour<CopyableBoolean> implements
     
     this.addSink(drawWatcher);
     
-    this.previous = System.nanoTime();
+    this.previous = this.clock.nanoTime();
     
     this.handleEvent(
         new GenericEvent(
             this,
             GenericEvent.Message.ADD_DRAWABLE,
             Event.Type.TARGETTED,
-            System.nanoTime()));
+            this.clock.nanoTime()));
   }
 
   /**
@@ -128,7 +128,7 @@ public class RenderBehaviour extends Behaviour<CopyableBoolean> implements
 
   @Override
   protected boolean doRun() {
-    long current = System.nanoTime();
+    long current = this.clock.nanoTime();
     
     while (!this.events.isEmpty()) {
       Event e = this.events.poll();
@@ -153,7 +153,9 @@ public class RenderBehaviour extends Behaviour<CopyableBoolean> implements
       }
     }
 
-    this.sprite.update((float) (current - this.signal.getTimeStamp()) / 1.0E9f);
+    if (this.sprite != null) {
+      this.sprite.update((float) (current - this.signal.getTimeStamp()) / 1.0E9f);
+    }
     
     this.signal.write(new CopyableBoolean(true), current);
     
@@ -0,0 +1,93 @@
+/**
+ *   The MIT License
+ *
+ *  Copyright 2011 Andrew James <ephphatha@thelettereph.com>.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package au.edu.csu.bofsa.Behaviours;
+
+import au.edu.csu.bofsa.CopyableVector2f;
+import au.edu.csu.bofsa.SpatialGrid;
+import au.edu.csu.bofsa.Events.Event;
+import au.edu.csu.bofsa.Events.GenericEvent;
+import au.edu.csu.bofsa.Events.Stream;
+import au.edu.csu.bofsa.Signals.InputSignal;
+import au.edu.csu.bofsa.Signals.Signal;
+
+/**
+ * Pushes a creep away from any others it overlaps. If the grid has already
+ * had its separation worked out the result is looked up, otherwise the
+ * neighbours are queried directly.
+ * 
+ * @author ephphatha
+ *
+ */
+public class SeparationBehaviour extends Behaviour<CopyableVector2f> {
+  
+  public static final float SEPARATION_RADIUS = 0.5f;
+  
+  protected InputSignal<CopyableVector2f> position;
+  protected InputSignal<SpatialGrid> broadphase;
+  
+  public SeparationBehaviour(
+      Signal<CopyableVector2f> separation,
+      InputSignal<CopyableVector2f> position,
+      InputSignal<SpatialGrid> broadphase,
+      Stream creepStream) {
+    super(SeparationBehaviour.class.getSimpleName(), separation);
+    
+    this.addInput(position);
+    
+    this.position = position;
+    this.broadphase = broadphase;
+    
+    creepStream.addSink(this);
+  }
+
+  @Override
+  protected boolean doRun() {
+    while (!this.events.isEmpty()) {
+      Event e = this.events.poll();
+      
+      if (e instanceof GenericEvent) {
+        if ((GenericEvent.Message) e.value == GenericEvent.Message.DEATH) {
+          return false;
+        }
+      }
+    }
+    
+    SpatialGrid grid = this.broadphase.read();
+    CopyableVector2f pos = this.position.read();
+    
+    CopyableVector2f separation = new CopyableVector2f(0, 0);
+    
+    int i = grid.isResolved() ? grid.indexOf(this.position, pos.x, pos.y) : -1;
+    
+    if (i >= 0) {
+      separation.set(grid.getSeparationX(i), grid.getSeparationY(i));
+    } else {
+      grid.getSeparation(pos.x, pos.y, this.position, separation);
+    }
+    
+    this.signal.write(separation);
+    
+    return true;
+  }
+}
@@ -23,11 +23,11 @@
  */
 package au.edu.csu.bofsa.Behaviours;
 
-import au.edu.csu.bofsa.CheckPoint;
 import au.edu.csu.bofsa.CopyableFloat;
-import au.edu.csu.bofsa.CopyableList;
 import au.edu.csu.bofsa.CopyableLong;
 import au.edu.csu.bofsa.CopyableVector2f;
+import au.edu.csu.bofsa.PathPlanner;
+import au.edu.csu.bofsa.Route;
 import au.edu.csu.bofsa.Events.CreepSpawnEvent;
 import au.edu.csu.bofsa.Events.Event;
 import au.edu.csu.bofsa.Events.EventSink;
@@ -41,7 +41,8 @@ import au.edu.csu.bofsa.Signals.Signal;
  */
 public class SpawnBehaviour extends Behaviour<CopyableLong> {
   protected InputSignal<CopyableVector2f> position;
-  protected InputSignal<CopyableList<CheckPoint>> checkpoints;
+  protected Route route;
+  protected int archetype;
   
   protected InputSignal<CopyableFloat> spawnDuration,
                                        spawnInterval,
@@ -49,6 +50,8 @@ public class SpawnBehaviour extends Behaviour<CopyableLong> {
   
   protected EventSink creepBuilder;
   
+  protected PathPlanner planner;
+  
   private State state;
   
   protected enum State {
@@ -59,15 +62,18 @@ public class SpawnBehaviour extends Behaviour<CopyableLong> {
   public SpawnBehaviour(
       Signal<CopyableLong> lastStateChange,
       InputSignal<CopyableVector2f> position,
-      InputSignal<CopyableList<CheckPoint>> checkpoints,
+      Route route,
+      int archetype,
       InputSignal<CopyableFloat> spawnDuration,
       InputSignal<CopyableFloat> spawnInterval,
       InputSignal<CopyableFloat> lullDuration,
+      PathPlanner planner,
       EventSink creepBuilder) {
     super(SpawnBehaviour.class.getSimpleName(), lastStateChange);
     
     this.position = position;
-    this.checkpoints = checkpoints;
+    this.route = route;
+    this.archetype = archetype;
     
     this.spawnDuration = spawnDuration;
     this.spawnInterval = spawnInterval;
@@ -75,7 +81,9 @@ public class SpawnBehaviour extends Behaviour<CopyableLong> {
     
     this.state = State.SPAWNING;
     
-    this.signal.write(new CopyableLong(System.nanoTime()));
+    this.signal.write(new CopyableLong(this.clock.nanoTime()));
+
+    this.planner = planner;
 
     this.creepBuilder = creepBuilder;
   }
@@ -84,7 +92,7 @@ public class SpawnBehaviour extends Behaviour<CopyableLong> {
     boolean repeat = false;
   
     do {
-      long current = System.nanoTime();
+      long current = this.clock.nanoTime();
       
       long stateChangeDelta = current - this.signal.read().getValue();
       
@@ -113,8 +121,10 @@ public class SpawnBehaviour extends Behaviour<CopyableLong> {
               new CreepSpawnEvent(
                   this,
                   new CreepSpawnEvent.SpawnEventParameters(
+                      this.archetype,
                       this.position.read(),
-                      this.checkpoints.read()),
+                      this.route,
+                      this.planner),
                   Event.Type.BROADCAST,
                   this.signal.getTimeStamp()));
           
@@ -136,6 +146,19 @@ public class SpawnBehaviour extends Behaviour<CopyableLong> {
       }
     } while (repeat);
     
+    switch (this.state) {
+    case IDLE:
+      this.sleepUntil(this.signal.read().getValue() + (long) (this.lullDuration.read().getValue() * 1.0E9f));
+      break;
+      
+    case SPAWNING:
+      long nextSpawn = this.signal.getTimeStamp() + (long) (this.spawnInterval.read().getValue() * 1.0E9F);
+      long stateChange = this.signal.read().getValue() + (long) (this.spawnDuration.read().getValue() * 1.0E9F);
+      
+      this.sleepUntil(Math.min(nextSpawn, stateChange));
+      break;
+    }
+    
     return true;
   }
 }
@@ -27,6 +27,7 @@ import org.newdawn.slick.Image;
 import org.newdawn.slick.ImageBuffer;
 import org.newdawn.slick.SlickException;
 
+import au.edu.csu.bofsa.ConnectivityIndex;
 import au.edu.csu.bofsa.CopyableBoolean;
 import au.edu.csu.bofsa.CopyableDimension;
 import au.edu.csu.bofsa.CopyableFloat;
@@ -34,11 +35,13 @@ import au.edu.csu.bofsa.CopyableList;
 import au.edu.csu.bofsa.CopyablePoint;
 import au.edu.csu.bofsa.CopyableVector2f;
 import au.edu.csu.bofsa.Pipe;
+import au.edu.csu.bofsa.SimClock;
 import au.edu.csu.bofsa.Sprite;
 import au.edu.csu.bofsa.Events.BuildAreaModEvent;
 import au.edu.csu.bofsa.Events.Event;
 import au.edu.csu.bofsa.Events.EventSink;
 import au.edu.csu.bofsa.Events.GenericEvent;
+import au.edu.csu.bofsa.Events.PathModEvent;
 import au.edu.csu.bofsa.Events.TowerSpawnEvent;
 import au.edu.csu.bofsa.Signals.InputSignal;
 import au.edu.csu.bofsa.Signals.Signal;
@@ -59,6 +62,12 @@ public class TowerFactoryBehaviour extends Behaviour<CopyableList<CopyablePoint>
 
   protected EventSink behaviourWatcher;
   
+  protected volatile ConnectivityIndex connectivity;
+  
+  protected boolean fuse;
+  
+  protected volatile int towerCount;
+  
   public static class Attributes {
     public int maxTargets;
     
@@ -98,9 +107,38 @@ public class TowerFactoryBehaviour extends Behaviour<CopyableList<CopyablePoint>
     this.drawWatcher = drawWatcher;
     
     this.behaviourWatcher = behaviourWatcher;
+    
+    this.fuse = false;
+  }
+  
+  /**
+   * @param fuse whether each new tower's behaviours are scheduled as a single
+   *             FusedBehaviour rather than as separate tasks.
+   */
+  public void setFusion(boolean fuse) {
+    this.fuse = fuse;
+  }
+  
+  /**
+   * @return towers built since the factory was last told to forget them.
+   */
+  public int getTowerCount() {
+    return this.towerCount;
+  }
+
+  /**
+   * Towers that would cut a spawn off from its goal are refused while a
+   * connectivity index is set.
+   */
+  public void setConnectivity(ConnectivityIndex connectivity) {
+    this.connectivity = connectivity;
   }
 
   public static void loadResources() {
+    if (Sprite.isHeadless()) {
+      return;
+    }
+    
     TowerFactoryBehaviour.getErrorImage();
     TowerFactoryBehaviour.getSpriteSheet();
   }
@@ -142,7 +180,14 @@ public class TowerFactoryBehaviour extends Behaviour<CopyableList<CopyablePoint>
     return TowerFactoryBehaviour.spriteSheet;
   }
 
+  /**
+   * @return null when running headless.
+   */
   public static Sprite getSprite() {
+    if (Sprite.isHeadless()) {
+      return null;
+    }
+    
     Sprite s;
     Image i = TowerFactoryBehaviour.getSpriteSheet();
     try {
@@ -167,11 +212,21 @@ public class TowerFactoryBehaviour extends Behaviour<CopyableList<CopyablePoint>
       EventSink controller,
       InputSignal<CopyableDimension> tileSize,
       EventSink drawWatcher) {
+    TowerFactoryBehaviour.createTower(new Signal<CopyableVector2f>(new CopyableVector2f(value.x, value.y)), creeps, controller, tileSize, drawWatcher);
+  }
+  
+  /**
+   * @param position owned by the controller so it can move the tower later.
+   */
+  public static void createTower(
+      Signal<CopyableVector2f> position,
+      InputSignal<CopyableList<Pipe<CopyableVector2f>>> creeps,
+      EventSink controller,
+      InputSignal<CopyableDimension> tileSize,
+      EventSink drawWatcher) {
     Sprite s = TowerFactoryBehaviour.getSprite();
     
-    long birthTime = System.nanoTime();
-    
-    Signal<CopyableVector2f> position = new Signal<CopyableVector2f>(new CopyableVector2f(value.x, value.y));
+    long birthTime = SimClock.now();
     
     AttackBehaviour ab = new AttackBehaviour(new Signal<CopyableBoolean>(new CopyableBoolean(true)), creeps, position,
         new Signal<CopyableFloat>(new CopyableFloat(2.0f)),
@@ -215,13 +270,36 @@ public class TowerFactoryBehaviour extends Behaviour<CopyableList<CopyablePoint>
             CopyableList<CopyablePoint> c = this.signal.read().copy();
             c.clear();
             this.signal.write(c);
+            
+            this.towerCount = 0;
           }
         } else if (e instanceof TowerSpawnEvent) {
           CopyableList<CopyablePoint> c = this.signal.read().copy();
-          if (c.contains(e.value)) {
-            TowerFactoryBehaviour.createTower((CopyablePoint) e.value, this.creeps, this.behaviourWatcher, this.tileSize, this.drawWatcher);
+          CopyablePoint p = (CopyablePoint) e.value;
+          ConnectivityIndex ci = this.connectivity;
+          if (c.contains(p) && (ci == null || !ci.wouldDisconnect(p.x, p.y))) {
+            if (this.fuse) {
+              FusedBehaviour.Collector collector = new FusedBehaviour.Collector("Tower", this.behaviourWatcher);
+              
+              TowerFactoryBehaviour.createTower((CopyablePoint) e.value, this.creeps, collector, this.tileSize, this.drawWatcher);
+              
+              collector.flush();
+            } else {
+              TowerFactoryBehaviour.createTower((CopyablePoint) e.value, this.creeps, this.behaviourWatcher, this.tileSize, this.drawWatcher);
+            }
             c.remove(e.value);
             this.signal.write(c);
+            
+            this.towerCount++;
+            
+            this.behaviourWatcher.handleEvent(
+                new PathModEvent(
+                    this,
+                    new PathModEvent.Data(
+                        PathModEvent.Data.Type.BLOCKED,
+                        (CopyablePoint) e.value),
+                    Event.Type.BROADCAST,
+                    e.time));
           }
         }
       }
@@ -232,4 +310,9 @@ public class TowerFactoryBehaviour extends Behaviour<CopyableList<CopyablePoint>
   public boolean isReady() {
     return !this.events.isEmpty();
   }
+  
+  @Override
+  public boolean waitsForEvents() {
+    return true;
+  }
 }
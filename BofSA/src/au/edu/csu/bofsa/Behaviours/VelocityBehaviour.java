@@ -23,9 +23,11 @@
  */
 package au.edu.csu.bofsa.Behaviours;
 
-import au.edu.csu.bofsa.CheckPoint;
 import au.edu.csu.bofsa.CopyableFloat;
+import au.edu.csu.bofsa.CopyableInteger;
 import au.edu.csu.bofsa.CopyableVector2f;
+import au.edu.csu.bofsa.PathPlanner;
+import au.edu.csu.bofsa.Route;
 import au.edu.csu.bofsa.Events.Event;
 import au.edu.csu.bofsa.Events.GenericEvent;
 import au.edu.csu.bofsa.Events.Stream;
@@ -39,24 +41,61 @@ import au.edu.csu.bofsa.Signals.Signal;
 public class VelocityBehaviour extends Behaviour<CopyableVector2f>{
 
   protected InputSignal<CopyableVector2f> pos;
-  protected InputSignal<CheckPoint> goal;
+  protected InputSignal<CopyableInteger> waypoint;
+  protected Route route;
   protected InputSignal<CopyableFloat> speed;
+  protected InputSignal<CopyableVector2f> separation;
+  
+  protected PathPlanner planner;
+  protected PathPlanner.Steering steering;
+  protected int steeringWaypoint;
+  
+  public VelocityBehaviour(Signal<CopyableVector2f> velocity, InputSignal<CopyableVector2f> position, InputSignal<CopyableInteger> waypoint, Route route, InputSignal<CopyableFloat> maxSpeed, Stream creepStream) {
+    this(velocity, position, waypoint, route, maxSpeed, null, creepStream);
+  }
+  
+  /**
+   * @param planner may be null, in which case creeps head straight for each
+   *                   checkpoint.
+   */
+  public VelocityBehaviour(Signal<CopyableVector2f> velocity, InputSignal<CopyableVector2f> position, InputSignal<CopyableInteger> waypoint, Route route, InputSignal<CopyableFloat> maxSpeed, PathPlanner planner, Stream creepStream) {
+    this(velocity, position, waypoint, route, maxSpeed, planner, null, creepStream);
+  }
   
   /**
-   * @param signal
+   * @param separation may be null, otherwise it's added to the steering
+   *                   velocity (scaled by the max speed).
    */
-  public VelocityBehaviour(Signal<CopyableVector2f> velocity, InputSignal<CopyableVector2f> position, InputSignal<CheckPoint> goal, InputSignal<CopyableFloat> maxSpeed, Stream creepStream) {
+  public VelocityBehaviour(Signal<CopyableVector2f> velocity, InputSignal<CopyableVector2f> position, InputSignal<CopyableInteger> waypoint, Route route, InputSignal<CopyableFloat> maxSpeed, PathPlanner planner, InputSignal<CopyableVector2f> separation, Stream creepStream) {
     super(VelocityBehaviour.class.getSimpleName(), velocity);
 
     this.addInput(position);
     
     this.pos = position;
-    this.goal = goal;
+    this.waypoint = waypoint;
+    this.route = route;
     this.speed = maxSpeed;
+    this.separation = separation;
+    
+    this.planner = planner;
+    this.steering = null;
+    this.steeringWaypoint = -1;
     
     creepStream.addSink(this);
   }
 
+  /**
+   * @param planner may be null, in which case creeps head straight for each
+   *                   checkpoint.
+   */
+  public void setRoute(Route route, PathPlanner planner) {
+    this.route = route;
+    this.planner = planner;
+    
+    this.steering = null;
+    this.steeringWaypoint = -1;
+  }
+
   /**
    * @see au.edu.csu.bofsa.Behaviours.Behaviour#doRun()
    */
@@ -72,18 +111,48 @@ public class VelocityBehaviour extends Behaviour<CopyableVector2f>{
       }
     }
     
-    CopyableVector2f vel = new CopyableVector2f(this.goal.read().position);
+    int waypoint = this.waypoint.read().getValue();
+    float goalX = this.route.getX(waypoint);
+    float goalY = this.route.getY(waypoint);
+    
+    CopyableVector2f pos = this.pos.read();
+    
+    CopyableVector2f vel = new CopyableVector2f(goalX, goalY);
+    
+    if (this.planner != null) {
+      if (waypoint != this.steeringWaypoint) {
+        this.steeringWaypoint = waypoint;
+        this.steering = this.planner.getSteering(vel);
+      }
+      
+      if (this.steering != null && !this.steering.getSteeringTarget(pos.x, pos.y, vel)) {
+        vel.set(goalX, goalY);
+      }
+    }
     
-    vel.sub(this.pos.read());
+    vel.sub(pos);
     
     float maxSpeed = this.speed.read().getValue();
-    if (vel.lengthSquared() > (maxSpeed * maxSpeed)) {
-      vel.normalise();
-      vel.scale(maxSpeed);
+    VelocityBehaviour.clamp(vel, maxSpeed);
+    
+    if (this.separation != null) {
+      CopyableVector2f sep = this.separation.read();
+      
+      vel.x += sep.x * maxSpeed;
+      vel.y += sep.y * maxSpeed;
+      
+      VelocityBehaviour.clamp(vel, maxSpeed);
     }
     
     this.signal.write(vel);
     
     return true;
   }
+  
+  private static void clamp(CopyableVector2f vel, float maxSpeed) {
+    if (vel.lengthSquared() > (maxSpeed * maxSpeed)) {
+      vel.normalise();
+      vel.scale(maxSpeed);
+    }
+  }
 }
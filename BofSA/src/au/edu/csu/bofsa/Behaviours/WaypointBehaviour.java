@@ -23,10 +23,8 @@
  */
 package au.edu.csu.bofsa.Behaviours;
 
-import java.util.LinkedList;
-import java.util.Queue;
-
-import au.edu.csu.bofsa.CheckPoint;
+import au.edu.csu.bofsa.CopyableInteger;
+import au.edu.csu.bofsa.Route;
 import au.edu.csu.bofsa.Events.CollisionEvent;
 import au.edu.csu.bofsa.Events.Event;
 import au.edu.csu.bofsa.Events.GenericEvent;
@@ -37,27 +35,45 @@ import au.edu.csu.bofsa.Signals.Signal;
  * @author ephphatha
  *
  */
-public class WaypointBehaviour extends Behaviour<CheckPoint> {
+public class WaypointBehaviour extends Behaviour<CopyableInteger> {
 
-  protected Queue<CheckPoint> waypoints;
+  protected Route route;
   protected Stream creepStream;
+  
+  /**
+   * Index of the waypoint the creep is heading for, kept here so advancing
+   * doesn't need to read the signal back. The signal copies whatever it's
+   * given so the same scratch value is reused for every write.
+   */
+  protected int waypoint;
+  protected CopyableInteger scratch;
 
-  public WaypointBehaviour(Signal<CheckPoint> goal, Queue<CheckPoint> waypoints, Stream creepStream) {
-    super(WaypointBehaviour.class.getSimpleName(), goal);
+  public WaypointBehaviour(Signal<CopyableInteger> waypoint, Route route, Stream creepStream) {
+    super(WaypointBehaviour.class.getSimpleName(), waypoint);
     
-    if (waypoints.isEmpty()) {
-      throw new IllegalArgumentException("Must be at least one waypoint.");
-    }
+    this.route = route;
     
-    this.waypoints = new LinkedList<CheckPoint>(waypoints);
+    this.waypoint = 0;
+    this.scratch = new CopyableInteger(0);
     
-    this.signal.write(this.waypoints.poll());
+    this.signal.write(this.scratch);
     
     this.creepStream = creepStream;
     
     this.creepStream.addSink(this);
   }
 
+  public void setRoute(Route route) {
+    this.route = route;
+  }
+
+  @Override
+  public void reset() {
+    super.reset();
+    
+    this.waypoint = 0;
+  }
+
   @Override
   protected boolean doRun() {
     if (this.events.isEmpty()) {
@@ -67,11 +83,12 @@ public class WaypointBehaviour extends Behaviour<CheckPoint> {
         Event e = this.events.poll();
         
         if (e instanceof CollisionEvent) {
-          if (this.waypoints.isEmpty()) {
-            this.creepStream.handleEvent(new GenericEvent(this, GenericEvent.Message.DEATH, Event.Type.BROADCAST, System.nanoTime()));
+          if (this.route.isLast(this.waypoint)) {
+            this.creepStream.handleEvent(new GenericEvent(this, GenericEvent.Message.DEATH, Event.Type.BROADCAST, this.clock.nanoTime()));
             return false;
           } else {
-            this.signal.write(this.waypoints.poll());
+            this.scratch.setValue(++this.waypoint);
+            this.signal.write(this.scratch);
           }
         } else if (e instanceof GenericEvent) {
           if (e.value == GenericEvent.Message.DEATH) {
@@ -87,4 +104,9 @@ public class WaypointBehaviour extends Behaviour<CheckPoint> {
   public boolean isReady() {
     return !this.events.isEmpty();
   }
+  
+  @Override
+  public boolean waitsForEvents() {
+    return true;
+  }
 }
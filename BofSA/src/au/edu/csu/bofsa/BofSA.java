@@ -38,7 +38,8 @@ public class BofSA extends StateBasedGame {
     MAINMENU,
     SINGLE_THREAD,
     DATA_PARALLEL,
-    TASK_BASED
+    TASK_BASED,
+    ENTITY_SYSTEM
   }
 
   /**
@@ -47,6 +48,10 @@ public class BofSA extends StateBasedGame {
   public static void main(String[] args) {
     //Thread.currentThread().setPriority(Thread.NORM_PRIORITY + 2);
     int maxThreads = Runtime.getRuntime().availableProcessors();
+    float tickRate = InGameStateST.DEFAULT_TICK_RATE;
+    boolean fuse = false;
+    Logger.Mode logMode = Logger.Mode.BASIC;
+    int sampleInterval = Logger.DEFAULT_SAMPLE_INTERVAL;
     
     for (String s : args) {
       if (s.startsWith("-t")) {
@@ -55,11 +60,40 @@ public class BofSA extends StateBasedGame {
         } catch (NumberFormatException e) {
           //Goggles
         }
+      } else if (s.startsWith("-r")) {
+        try {
+          tickRate = Float.parseFloat(s.substring(2));
+        } catch (NumberFormatException e) {
+          //Goggles
+        }
+      } else if (s.equals("-f")) {
+        fuse = true;
+      } else if (s.equals("-p")) {
+        SpanProfiler.setEnabled(true);
+      } else if (s.equals("-i")) {
+        ReplayRecorder.setEnabled(true);
+      } else if (s.startsWith("-x")) {
+        try {
+          SimClock.setDefault(new SimClock.Accelerated(Double.parseDouble(s.substring(2))));
+        } catch (NumberFormatException e) {
+          //Goggles
+        }
+      } else if (s.startsWith("-s")) {
+        logMode = Logger.Mode.SAMPLE;
+        
+        try {
+          sampleInterval = Integer.parseInt(s.substring(2));
+        } catch (NumberFormatException e) {
+          //Goggles
+        }
       }
     }
     
     try {
-      AppGameContainer app = new AppGameContainer(new BofSA(maxThreads));
+      BofSA game = new BofSA(maxThreads, logMode, 0, tickRate, fuse);
+      game.setSampleInterval(sampleInterval);
+      
+      AppGameContainer app = new AppGameContainer(game);
       app.setDisplayMode(800, 600, false);
       app.start();
     } catch (SlickException e) {
@@ -80,16 +114,47 @@ public class BofSA extends StateBasedGame {
   }
   
   public BofSA(int maxThreads, Logger.Mode logMode, int numTowers) {
+    this(maxThreads, logMode, numTowers, InGameStateST.DEFAULT_TICK_RATE, false);
+  }
+  
+  /**
+   * @param fuse whether the task based state runs each entity's behaviours as
+   *             one task.
+   */
+  public BofSA(int maxThreads, Logger.Mode logMode, int numTowers, float tickRate, boolean fuse) {
     super("Bank of SA");
     
+    ArchetypeRegistry.getDefault();
+    
+    InGameStateST st = new InGameStateST(States.SINGLE_THREAD.ordinal());
+    InGameStateST dp = new InGameStateDP(States.DATA_PARALLEL.ordinal(), maxThreads);
+    InGameStateTB tb = new InGameStateTB(States.TASK_BASED.ordinal(), maxThreads);
+    InGameStateST ecs = new InGameStateECS(States.ENTITY_SYSTEM.ordinal(), maxThreads);
+    
+    st.setTickRate(tickRate);
+    dp.setTickRate(tickRate);
+    ecs.setTickRate(tickRate);
+    
+    tb.setFusion(fuse);
+    tb.setLogMode(logMode);
+    
     this.addState(new MainMenuState(States.MAINMENU.ordinal()));
-    this.addState(new InGameStateST(States.SINGLE_THREAD.ordinal()));
-    this.addState(new InGameStateDP(States.DATA_PARALLEL.ordinal(), maxThreads));
-    this.addState(new InGameStateTB(States.TASK_BASED.ordinal(), maxThreads));
+    this.addState(st);
+    this.addState(dp);
+    this.addState(tb);
+    this.addState(ecs);
     
     this.enterState(States.MAINMENU.ordinal());
   }
 
+  /**
+   * @param interval how many task runs go by per sampled run on average when
+   *                 logging in SAMPLE mode.
+   */
+  public void setSampleInterval(int interval) {
+    ((InGameStateTB) this.getState(States.TASK_BASED.ordinal())).setSampleInterval(interval);
+  }
+
   @Override
   public void initStatesList(GameContainer gc) throws SlickException {
     for (int i = 0; i < this.getStateCount(); ++i) {
@@ -48,6 +48,8 @@ public class Button {
   
   protected Color colour;
   
+  protected String label;
+  
   protected Shape area;
   
   protected Sound mouseOverSound,
@@ -77,6 +79,8 @@ public class Button {
     
     this.colour = colour;
     
+    this.label = null;
+    
     this.area = pos;
     
     this.over = false;
@@ -85,11 +89,26 @@ public class Button {
     this.mouseDownSound = null;
   }
   
+  /**
+   * A button with no image of its own, drawn as a frame like the ones in the
+   * menu sheet with the label written over it.
+   */
+  Button(String label, final Shape pos, final Color colour) {
+    this((Image) null, pos, colour);
+    
+    this.label = label;
+  }
+  
   public void addListener(ComponentListener listener) {
     this.listeners.add(listener);
   }
   
   public void render(GUIContext container, Graphics g) {
+    if (this.currentImage == null) {
+      this.renderLabel(container, g);
+      return;
+    }
+    
     this.currentImage.draw(
         (float) container.getWidth() * this.area.getX(),
         (float) container.getHeight() * this.area.getY(),
@@ -98,6 +117,33 @@ public class Button {
         this.colour);
   }
 
+  protected void renderLabel(GUIContext container, Graphics g) {
+    // Inset to match the frames in the menu sheet, which don't fill their
+    // cells.
+    float x = (float) container.getWidth() * (this.area.getX() + this.area.getWidth() * 0.025f);
+    float y = (float) container.getHeight() * (this.area.getY() + this.area.getHeight() * 0.125f);
+    float w = (float) container.getWidth() * this.area.getWidth() * 0.95f;
+    float h = (float) container.getHeight() * this.area.getHeight() * 0.75f;
+    float r = h / 4.0f;
+    
+    Color c = g.getColor();
+    float lineWidth = g.getLineWidth();
+    
+    g.setColor(this.colour);
+    g.fillRoundRect(x, y, w, h, (int) r);
+    
+    g.setColor(Color.black);
+    g.setLineWidth(3.0f);
+    g.drawRoundRect(x, y, w, h, (int) r);
+    
+    g.drawString(this.label,
+        x + (w - g.getFont().getWidth(this.label)) / 2.0f,
+        y + (h - g.getFont().getLineHeight()) / 2.0f);
+    
+    g.setLineWidth(lineWidth);
+    g.setColor(c);
+  }
+
   public boolean hit(Vector2f p) {
     return Rectangle.contains(p.x, p.y, this.area.getX(), this.area.getY(), this.area.getWidth(), this.area.getHeight());
   }
@@ -0,0 +1,393 @@
+/**
+ *   The MIT License
+ *
+ *  Copyright 2011 Andrew James <ephphatha@thelettereph.com>.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package au.edu.csu.bofsa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.newdawn.slick.geom.Vector2f;
+
+import au.edu.csu.bofsa.Events.Event;
+import au.edu.csu.bofsa.Events.EventSink;
+import au.edu.csu.bofsa.Events.PathModEvent;
+
+/**
+ * Answers whether blocking a tile would cut any spawn off from its goal.
+ * 
+ * A witness path is kept for every leg of every route (spawn to checkpoint,
+ * checkpoint to checkpoint, ..., to the goal). A tile that no witness path
+ * uses can be blocked without further checks. Otherwise the two path tiles
+ * either side of it are searched from simultaneously until the searches meet
+ * (the detour becomes part of the witness path) or one of them runs out of
+ * tiles (that side is cut off). Either way the work is bounded by the size of
+ * the detour or of the smaller side, not the size of the board.
+ * 
+ * Diagonal steps can't cut corners so four way connectivity is used.
+ * 
+ * @author ephphatha
+ *
+ */
+public class ConnectivityIndex implements EventSink, Comparable<Object> {
+  
+  protected static final int[] DX = { 1, -1, 0, 0 };
+  protected static final int[] DY = { 0, 0, 1, -1 };
+  
+  protected PathGrid grid;
+  protected final int width;
+  
+  protected List<Leg> legs;
+  
+  protected int[] usage;
+  
+  protected int stamp;
+  protected int[] seenA;
+  protected int[] seenB;
+  protected int[] parentA;
+  protected int[] parentB;
+  protected int[] queueA;
+  protected int[] queueB;
+  
+  protected static class Leg {
+    public final int start;
+    public final int goal;
+    
+    public int[] path;
+    
+    public Leg(int start, int goal) {
+      this.start = start;
+      this.goal = goal;
+      this.path = null;
+    }
+    
+    public int indexOf(int tile) {
+      if (this.path != null) {
+        for (int i = 0; i < this.path.length; ++i) {
+          if (this.path[i] == tile) {
+            return i;
+          }
+        }
+      }
+      
+      return -1;
+    }
+  }
+  
+  public ConnectivityIndex(PathGrid grid) {
+    this.grid = grid;
+    this.width = grid.getWidth();
+    
+    int n = grid.getWidth() * grid.getHeight();
+    
+    this.legs = new ArrayList<Leg>();
+    
+    this.usage = new int[n];
+    
+    this.stamp = 0;
+    this.seenA = new int[n];
+    this.seenB = new int[n];
+    this.parentA = new int[n];
+    this.parentB = new int[n];
+    this.queueA = new int[64];
+    this.queueB = new int[64];
+    
+    this.grid.addSink(this);
+  }
+  
+  public void addLeg(Vector2f from, Vector2f to) {
+    this.addLeg((int) Math.floor(from.x), (int) Math.floor(from.y), (int) Math.floor(to.x), (int) Math.floor(to.y));
+  }
+  
+  public synchronized void addLeg(int fromX, int fromY, int toX, int toY) {
+    if (!this.grid.contains(fromX, fromY) || !this.grid.contains(toX, toY)) {
+      return;
+    }
+    
+    Leg l = new Leg(fromY * this.width + fromX, toY * this.width + toX);
+    
+    this.setPath(l, this.meet(l.start, l.goal, -1));
+    
+    this.legs.add(l);
+  }
+  
+  /**
+   * @return true if any spawn that can currently reach its goal would no
+   *         longer be able to if tile (x, y) was blocked.
+   */
+  public synchronized boolean wouldDisconnect(int x, int y) {
+    if (!this.grid.isPathable(x, y)) {
+      return false;
+    }
+    
+    int c = y * this.width + x;
+    
+    if (this.usage[c] == 0) {
+      return false;
+    }
+    
+    for (Leg l : this.legs) {
+      int i = l.indexOf(c);
+      
+      if (i >= 0 && this.findDetour(l, i, c) == null) {
+        return true;
+      }
+    }
+    
+    return false;
+  }
+  
+  public synchronized boolean isConnected() {
+    for (Leg l : this.legs) {
+      if (l.path == null) {
+        return false;
+      }
+    }
+    
+    return true;
+  }
+
+  @Override
+  public void handleEvent(Event event) {
+    if (event instanceof PathModEvent) {
+      PathModEvent.Data d = (PathModEvent.Data) event.value;
+      
+      if (d.type == PathModEvent.Data.Type.BLOCKED) {
+        this.cellBlocked(d.position.y * this.width + d.position.x);
+      } else {
+        this.cellUnblocked();
+      }
+    }
+  }
+  
+  protected synchronized void cellBlocked(int c) {
+    if (this.usage[c] == 0) {
+      return;
+    }
+    
+    for (Leg l : this.legs) {
+      int i = l.indexOf(c);
+      
+      if (i >= 0) {
+        this.setPath(l, this.findDetour(l, i, c));
+      }
+    }
+  }
+  
+  protected synchronized void cellUnblocked() {
+    // Existing witness paths stay valid, only broken legs need another look.
+    for (Leg l : this.legs) {
+      if (l.path == null) {
+        this.setPath(l, this.meet(l.start, l.goal, -1));
+      }
+    }
+  }
+  
+  protected void setPath(Leg l, int[] path) {
+    if (l.path != null) {
+      for (int c : l.path) {
+        this.usage[c]--;
+      }
+    }
+    
+    l.path = path;
+    
+    if (l.path != null) {
+      for (int c : l.path) {
+        this.usage[c]++;
+      }
+    }
+  }
+  
+  /**
+   * @return the witness path for leg l with the tile at index i replaced by a
+   *         detour, or null if there is no way around it.
+   */
+  protected int[] findDetour(Leg l, int i, int c) {
+    if (i == 0 || i == l.path.length - 1) {
+      return null;
+    }
+    
+    int[] detour = this.meet(l.path[i - 1], l.path[i + 1], c);
+    
+    if (detour == null) {
+      return null;
+    }
+    
+    int[] path = new int[l.path.length - 3 + detour.length];
+    
+    System.arraycopy(l.path, 0, path, 0, i - 1);
+    System.arraycopy(detour, 0, path, i - 1, detour.length);
+    System.arraycopy(l.path, i + 2, path, i - 1 + detour.length, l.path.length - i - 2);
+    
+    return this.removeLoops(path);
+  }
+  
+  /**
+   * Searches outwards from both a and b (never entering tile blocked) one tile
+   * at a time from each side until the two searches touch.
+   * 
+   * @return the tiles from a to b inclusive, or null if one of the searches
+   *         ran out of tiles first.
+   */
+  protected int[] meet(int a, int b, int blocked) {
+    if (a == b) {
+      return new int[] { a };
+    }
+    
+    this.nextStamp();
+    
+    int headA = 0, tailA = 0;
+    int headB = 0, tailB = 0;
+    
+    this.seenA[a] = this.stamp;
+    this.parentA[a] = -1;
+    this.queueA[tailA++] = a;
+    
+    this.seenB[b] = this.stamp;
+    this.parentB[b] = -1;
+    this.queueB[tailB++] = b;
+    
+    while (headA < tailA && headB < tailB) {
+      int c = this.queueA[headA++];
+      int cx = c % this.width;
+      int cy = c / this.width;
+      
+      for (int d = 0; d < 4; ++d) {
+        int nx = cx + ConnectivityIndex.DX[d];
+        int ny = cy + ConnectivityIndex.DY[d];
+        int n = ny * this.width + nx;
+        
+        if (!this.grid.isPathable(nx, ny) || n == blocked || this.seenA[n] == this.stamp) {
+          continue;
+        }
+        
+        this.seenA[n] = this.stamp;
+        this.parentA[n] = c;
+        
+        if (this.seenB[n] == this.stamp) {
+          return this.join(n);
+        }
+        
+        if (tailA == this.queueA.length) {
+          this.queueA = Arrays.copyOf(this.queueA, tailA * 2);
+        }
+        this.queueA[tailA++] = n;
+      }
+      
+      c = this.queueB[headB++];
+      cx = c % this.width;
+      cy = c / this.width;
+      
+      for (int d = 0; d < 4; ++d) {
+        int nx = cx + ConnectivityIndex.DX[d];
+        int ny = cy + ConnectivityIndex.DY[d];
+        int n = ny * this.width + nx;
+        
+        if (!this.grid.isPathable(nx, ny) || n == blocked || this.seenB[n] == this.stamp) {
+          continue;
+        }
+        
+        this.seenB[n] = this.stamp;
+        this.parentB[n] = c;
+        
+        if (this.seenA[n] == this.stamp) {
+          return this.join(n);
+        }
+        
+        if (tailB == this.queueB.length) {
+          this.queueB = Arrays.copyOf(this.queueB, tailB * 2);
+        }
+        this.queueB[tailB++] = n;
+      }
+    }
+    
+    return null;
+  }
+  
+  private int[] join(int m) {
+    int lengthA = 0;
+    for (int c = m; c != -1; c = this.parentA[c]) {
+      lengthA++;
+    }
+    
+    int lengthB = 0;
+    for (int c = this.parentB[m]; c != -1; c = this.parentB[c]) {
+      lengthB++;
+    }
+    
+    int[] path = new int[lengthA + lengthB];
+    
+    int i = lengthA - 1;
+    for (int c = m; c != -1; c = this.parentA[c]) {
+      path[i--] = c;
+    }
+    
+    i = lengthA;
+    for (int c = this.parentB[m]; c != -1; c = this.parentB[c]) {
+      path[i++] = c;
+    }
+    
+    return path;
+  }
+  
+  /**
+   * A spliced in detour can cross the rest of the path, cut out the loops so
+   * every tile is only counted once.
+   */
+  private int[] removeLoops(int[] path) {
+    this.nextStamp();
+    
+    int length = 0;
+    
+    for (int c : path) {
+      if (this.seenA[c] == this.stamp) {
+        int j = this.parentA[c];
+        
+        if (j < length && path[j] == c) {
+          length = j + 1;
+          continue;
+        }
+      }
+      
+      this.seenA[c] = this.stamp;
+      this.parentA[c] = length;
+      path[length++] = c;
+    }
+    
+    return length == path.length ? path : Arrays.copyOf(path, length);
+  }
+  
+  private void nextStamp() {
+    if (++this.stamp == Integer.MAX_VALUE) {
+      Arrays.fill(this.seenA, 0);
+      Arrays.fill(this.seenB, 0);
+      this.stamp = 1;
+    }
+  }
+
+  @Override
+  public int compareTo(Object o) {
+    return this.hashCode() - o.hashCode();
+  }
+}
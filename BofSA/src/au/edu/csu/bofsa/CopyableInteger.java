@@ -55,4 +55,8 @@ public class CopyableInteger implements Copyable<CopyableInteger> {
   public int getValue() {
     return this.value;
   }
+  
+  public void setValue(int value) {
+    this.value = value;
+  }
 }
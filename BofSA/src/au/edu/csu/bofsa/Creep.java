@@ -33,6 +33,7 @@ import au.edu.csu.bofsa.Behaviours.ActorRenderBehaviour;
 import au.edu.csu.bofsa.Behaviours.CollisionBehaviour;
 import au.edu.csu.bofsa.Behaviours.HealthBehaviour;
 import au.edu.csu.bofsa.Behaviours.MoveBehaviour;
+import au.edu.csu.bofsa.Behaviours.SeparationBehaviour;
 import au.edu.csu.bofsa.Behaviours.VelocityBehaviour;
 import au.edu.csu.bofsa.Behaviours.WaypointBehaviour;
 import au.edu.csu.bofsa.Events.DamageEvent;
@@ -46,20 +47,27 @@ import au.edu.csu.bofsa.Signals.Signal;
  *
  */
 public class Creep implements Callable<Boolean>, Comparable<Object>, EventSink {
-
+  private static final int SPAN = Logger.getTypeId("Creep");
+  
   private HealthBehaviour h;
   private MoveBehaviour m;
   private WaypointBehaviour w;
   private VelocityBehaviour v;
+  private SeparationBehaviour s;
   private CollisionBehaviour c;
   private ActorRenderBehaviour arb;
   
   private CreepManager cm;
   
+  private CreepArchetype archetype;
+  
+  private Pipe<CopyableVector2f> pipe;
+  
   private boolean isDead;
   
-  Creep(CreepManager cm) {
+  Creep(CreepManager cm, CreepArchetype archetype) {
     this.cm = cm;
+    this.archetype = archetype;
     
     this.isDead = false;
   }
@@ -81,28 +89,89 @@ public class Creep implements Callable<Boolean>, Comparable<Object>, EventSink {
     this.arb.draw(g);
   }
   
+  /**
+   * Runs the creep for one tick of the given length, for the tick based
+   * modes.
+   */
+  public Boolean update(float delta) {
+    this.m.setStep(delta);
+    
+    return this.call();
+  }
+  
   public Boolean call() {
-    this.arb.call();
+    SpanProfiler.enter(Creep.SPAN);
     
-    this.h.call();
+    try {
+      this.arb.call();
+      
+      this.h.call();
+      
+      if (this.s != null) {
+        this.s.call();
+      }
+      
+      this.v.call();
+  
+      this.m.call();
+      
+      this.c.call();
+      
+      this.w.call();
+    } finally {
+      SpanProfiler.exit();
+    }
     
-    this.v.call();
+    if (this.isDead) {
+      this.cm.onDeath(this);
+    }
+    
+    return false;
+  }
 
-    this.m.call();
+  /**
+   * Brings a dead creep back at the given position with a fresh set of
+   * signals, reusing its behaviours.
+   */
+  public void reset(CopyableVector2f position, Route route, PathPlanner planner) {
+    this.h.reset();
     
-    this.c.call();
+    this.m.reset();
+    this.m.getSignal().write(position);
     
-    this.w.call();
+    this.w.reset();
+    this.w.setRoute(route);
     
-    if (this.isDead) {
-      this.cm.onDeath(this);
+    if (this.s != null) {
+      this.s.reset();
     }
     
-    return false;
+    this.v.reset();
+    this.v.setRoute(route, planner);
+    
+    this.c.reset();
+    this.c.setRoute(route);
+    
+    this.arb.reset();
+    
+    this.isDead = false;
+  }
+  
+  /**
+   * @return a pipe that lets towers find and damage this creep. Damage goes
+   * straight to the health behaviour, the same place the creep's stream
+   * delivers it for a freshly spawned creep.
+   */
+  public Pipe<CopyableVector2f> getPipe() {
+    if (this.pipe == null) {
+      this.pipe = new Pipe<CopyableVector2f>(this.getPositionSignal(), this.h);
+    }
+    
+    return this.pipe;
   }
 
   public void takeDamage(float damage) {
-    this.h.handleEvent(new DamageEvent(this, damage, Event.Type.TARGETTED, System.nanoTime()));
+    this.h.handleEvent(new DamageEvent(this, damage, Event.Type.TARGETTED, SimClock.now()));
   }
 
   @Override
@@ -115,6 +184,8 @@ public class Creep implements Callable<Boolean>, Comparable<Object>, EventSink {
         this.h = (HealthBehaviour) o;
       } else if (o instanceof VelocityBehaviour) {
         this.v = (VelocityBehaviour) o;
+      } else if (o instanceof SeparationBehaviour) {
+        this.s = (SeparationBehaviour) o;
       } else if (o instanceof MoveBehaviour) {
         this.m = (MoveBehaviour) o;
       } else if (o instanceof CollisionBehaviour) {
@@ -123,6 +194,7 @@ public class Creep implements Callable<Boolean>, Comparable<Object>, EventSink {
         this.w = (WaypointBehaviour) o;
       } else if (o instanceof ActorRenderBehaviour) {
         this.arb = (ActorRenderBehaviour) o;
+        this.arb.setInterpolated(true);
       }
     }
   }
@@ -132,6 +204,10 @@ public class Creep implements Callable<Boolean>, Comparable<Object>, EventSink {
     return this.hashCode() - o.hashCode();
   }
 
+  public CreepArchetype getArchetype() {
+    return this.archetype;
+  }
+
   public Signal<CopyableVector2f> getPositionSignal() {
     return this.m.getSignal();
   }
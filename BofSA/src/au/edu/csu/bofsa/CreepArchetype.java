@@ -0,0 +1,61 @@
+/**
+ *   The MIT License
+ *
+ *  Copyright 2011 Andrew James <ephphatha@thelettereph.com>.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package au.edu.csu.bofsa;
+
+/**
+ * Stats and animation shared by every creep of one type. Never changes once
+ * built, so creeps can be spawned from it on any thread.
+ * 
+ * @author ephphatha
+ *
+ */
+public final class CreepArchetype {
+  public final int id;
+  public final String name;
+  
+  public final float speed;
+  public final float maxHealth;
+  public final float damage;
+  
+  private final Sprite.SequencePoint[][] animations;
+  
+  public CreepArchetype(int id, String name, float speed, float maxHealth, float damage, Sprite.SequencePoint[][] animations) {
+    this.id = id;
+    this.name = name;
+    
+    this.speed = speed;
+    this.maxHealth = maxHealth;
+    this.damage = damage;
+    
+    this.animations = animations;
+  }
+  
+  /**
+   * @return the walk cycle for each direction, shared between every creep of
+   *         this type so it must not be modified.
+   */
+  public Sprite.SequencePoint[][] getAnimations() {
+    return this.animations;
+  }
+}
@@ -23,8 +23,6 @@
  */
 package au.edu.csu.bofsa;
 
-import java.util.Queue;
-
 /**
  * @author ephphatha
  *
@@ -35,7 +33,11 @@ public interface CreepManager {
   
   public void onDeath(Creep c);
   
+  /**
+   * @param archetype id of the creep type in the ArchetypeRegistry.
+   */
   public void spawnCreep(
+      int archetype,
       CopyableVector2f position,
-      Queue<CheckPoint> checkpoints);
+      Route route);
 }
\ No newline at end of file
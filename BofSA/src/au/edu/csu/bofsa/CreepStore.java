@@ -0,0 +1,402 @@
+/**
+ *   The MIT License
+ *
+ *  Copyright 2011 Andrew James <ephphatha@thelettereph.com>.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package au.edu.csu.bofsa;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.newdawn.slick.geom.Vector2f;
+
+import au.edu.csu.bofsa.Behaviours.ActorRenderBehaviour;
+
+/**
+ * Creep state kept as parallel primitive arrays indexed by slot, with the
+ * per-creep behaviours replaced by passes that walk the arrays in order.
+ * Live creeps are always packed into slots [0, size()) in the order they
+ * were added, dead ones are squeezed out by compact().
+ * 
+ * @author ephphatha
+ *
+ */
+public class CreepStore {
+  public static final float WAYPOINT_RADIUS = 0.25f;
+  public static final int SNAPSHOT_STRIDE = 6;
+  
+  private static final int INITIAL_CAPACITY = 64;
+  
+  protected int count;
+  
+  protected float[] posX;
+  protected float[] posY;
+  protected float[] prevX;
+  protected float[] prevY;
+  protected float[] velX;
+  protected float[] velY;
+  protected float[] sepX;
+  protected float[] sepY;
+  protected float[] health;
+  protected float[] maxHealth;
+  protected float[] speed;
+  protected int[] cursor;
+  protected Route[] route;
+  protected PathPlanner.Steering[][] steering;
+  protected boolean[] alive;
+  
+  protected PathPlanner planner;
+  
+  protected Map<Route, PathPlanner.Steering[]> routeSteering;
+  
+  public CreepStore() {
+    this(null);
+  }
+  
+  /**
+   * @param planner may be null, in which case creeps head straight for each
+   *                   checkpoint.
+   */
+  public CreepStore(PathPlanner planner) {
+    this.planner = planner;
+    
+    this.routeSteering = new HashMap<Route, PathPlanner.Steering[]>();
+    
+    this.allocate(CreepStore.INITIAL_CAPACITY);
+  }
+  
+  public int size() {
+    return this.count;
+  }
+  
+  public void clear() {
+    this.count = 0;
+    this.routeSteering.clear();
+  }
+  
+  public int add(CreepArchetype archetype, float x, float y, Route route) {
+    if (this.count >= this.alive.length) {
+      this.grow();
+    }
+    
+    int i = this.count++;
+    
+    this.posX[i] = x;
+    this.posY[i] = y;
+    this.prevX[i] = x;
+    this.prevY[i] = y;
+    this.velX[i] = 0;
+    this.velY[i] = 0;
+    this.sepX[i] = 0;
+    this.sepY[i] = 0;
+    this.health[i] = archetype.maxHealth;
+    this.maxHealth[i] = archetype.maxHealth;
+    this.speed[i] = archetype.speed;
+    this.cursor[i] = 0;
+    this.route[i] = route;
+    this.steering[i] = this.getSteering(route);
+    this.alive[i] = true;
+    
+    return i;
+  }
+  
+  public boolean isAlive(int i) {
+    return this.alive[i];
+  }
+  
+  public float getX(int i) {
+    return this.posX[i];
+  }
+  
+  public float getY(int i) {
+    return this.posY[i];
+  }
+  
+  public float[] getPositionsX() {
+    return this.posX;
+  }
+  
+  public float[] getPositionsY() {
+    return this.posY;
+  }
+  
+  public void setSeparation(int i, float x, float y) {
+    this.sepX[i] = x;
+    this.sepY[i] = y;
+  }
+  
+  /**
+   * Damages the first live creep within range of the given point, the same
+   * target choice an AttackBehaviour makes.
+   * 
+   * @return false if nothing was in range.
+   */
+  public boolean damageFirstInRange(float x, float y, float range, float damage) {
+    float rangeSquared = range * range;
+    
+    for (int i = 0; i < this.count; ++i) {
+      if (this.alive[i]) {
+        float dx = this.posX[i] - x;
+        float dy = this.posY[i] - y;
+        
+        if (dx * dx + dy * dy < rangeSquared) {
+          this.health[i] -= damage;
+          return true;
+        }
+      }
+    }
+    
+    return false;
+  }
+  
+  /**
+   * Steers each creep in [from, to) towards its current waypoint, plus
+   * whatever separation was set for it this tick.
+   */
+  public void updateVelocity(int from, int to) {
+    Vector2f target = new Vector2f();
+    
+    for (int i = from; i < to; ++i) {
+      if (!this.alive[i]) {
+        continue;
+      }
+      
+      Route r = this.route[i];
+      int waypoint = this.cursor[i];
+      
+      target.set(r.getX(waypoint), r.getY(waypoint));
+      
+      PathPlanner.Steering s = this.steering[i][waypoint];
+      
+      if (s != null && !s.getSteeringTarget(this.posX[i], this.posY[i], target)) {
+        target.set(r.getX(waypoint), r.getY(waypoint));
+      }
+      
+      float maxSpeed = this.speed[i];
+      
+      float vx = target.x - this.posX[i];
+      float vy = target.y - this.posY[i];
+      float scale = CreepStore.clampScale(vx, vy, maxSpeed);
+      
+      vx = vx * scale + this.sepX[i] * maxSpeed;
+      vy = vy * scale + this.sepY[i] * maxSpeed;
+      scale = CreepStore.clampScale(vx, vy, maxSpeed);
+      
+      this.velX[i] = vx * scale;
+      this.velY[i] = vy * scale;
+    }
+  }
+  
+  public void move(int from, int to, float dt) {
+    for (int i = from; i < to; ++i) {
+      if (this.alive[i]) {
+        this.prevX[i] = this.posX[i];
+        this.prevY[i] = this.posY[i];
+        this.posX[i] += this.velX[i] * dt;
+        this.posY[i] += this.velY[i] * dt;
+      }
+    }
+  }
+  
+  /**
+   * Moves creeps on to their next waypoint once they're close enough to the
+   * current one, creeps that reach the end of their route die.
+   */
+  public void updateWaypoints(int from, int to) {
+    float radiusSquared = CreepStore.WAYPOINT_RADIUS * CreepStore.WAYPOINT_RADIUS;
+    
+    for (int i = from; i < to; ++i) {
+      if (this.alive[i]) {
+        int waypoint = this.cursor[i];
+        
+        if (this.route[i].distanceSquared(waypoint, this.posX[i], this.posY[i]) <= radiusSquared) {
+          if (this.route[i].isLast(waypoint)) {
+            this.alive[i] = false;
+          } else {
+            this.cursor[i] = waypoint + 1;
+          }
+        }
+      }
+    }
+  }
+  
+  public void updateHealth(int from, int to) {
+    for (int i = from; i < to; ++i) {
+      if (this.health[i] <= 0) {
+        this.alive[i] = false;
+      }
+    }
+  }
+  
+  /**
+   * Shifts live creeps down over the dead ones. Slots are not stable across
+   * calls but the order is, so the lowest slot is always the oldest creep,
+   * which damageFirstInRange() relies on.
+   * 
+   * @return the number of creeps removed.
+   */
+  public int compact() {
+    int live = 0;
+    
+    for (int i = 0; i < this.count; ++i) {
+      if (this.alive[i]) {
+        if (i != live) {
+          this.moveSlot(i, live);
+        }
+        
+        ++live;
+      } else {
+        this.route[i] = null;
+        this.steering[i] = null;
+      }
+    }
+    
+    int removed = this.count - live;
+    
+    this.count = live;
+    
+    return removed;
+  }
+  
+  /**
+   * Packs previous and current position, facing and health ratio for each
+   * live creep, SNAPSHOT_STRIDE floats per creep, so the render thread never
+   * touches the live arrays.
+   */
+  public float[] snapshot() {
+    float[] s = new float[this.count * CreepStore.SNAPSHOT_STRIDE];
+    
+    for (int i = 0, j = 0; i < this.count; ++i, j += CreepStore.SNAPSHOT_STRIDE) {
+      s[j] = this.prevX[i];
+      s[j + 1] = this.prevY[i];
+      s[j + 2] = this.posX[i];
+      s[j + 3] = this.posY[i];
+      s[j + 4] = CreepStore.getDirection(this.velX[i], this.velY[i]).ordinal();
+      s[j + 5] = this.health[i] / this.maxHealth[i];
+    }
+    
+    return s;
+  }
+  
+  public static ActorRenderBehaviour.Direction getDirection(float vx, float vy) {
+    if (Math.abs(vx) > Math.abs(vy)) {
+      return vx > 0 ? ActorRenderBehaviour.Direction.EAST : ActorRenderBehaviour.Direction.WEST;
+    } else {
+      return vy > 0 ? ActorRenderBehaviour.Direction.SOUTH : ActorRenderBehaviour.Direction.NORTH;
+    }
+  }
+  
+  private PathPlanner.Steering[] getSteering(Route route) {
+    PathPlanner.Steering[] s = this.routeSteering.get(route);
+    
+    if (s == null) {
+      s = new PathPlanner.Steering[route.size()];
+      
+      if (this.planner != null) {
+        for (int i = 0; i < s.length; ++i) {
+          s[i] = this.planner.getSteering(new Vector2f(route.getX(i), route.getY(i)));
+        }
+      }
+      
+      this.routeSteering.put(route, s);
+    }
+    
+    return s;
+  }
+  
+  private static float clampScale(float x, float y, float max) {
+    float lengthSquared = x * x + y * y;
+    
+    if (lengthSquared > max * max) {
+      return max / (float) Math.sqrt(lengthSquared);
+    }
+    
+    return 1.0f;
+  }
+  
+  private void moveSlot(int from, int to) {
+    this.posX[to] = this.posX[from];
+    this.posY[to] = this.posY[from];
+    this.prevX[to] = this.prevX[from];
+    this.prevY[to] = this.prevY[from];
+    this.velX[to] = this.velX[from];
+    this.velY[to] = this.velY[from];
+    this.sepX[to] = this.sepX[from];
+    this.sepY[to] = this.sepY[from];
+    this.health[to] = this.health[from];
+    this.maxHealth[to] = this.maxHealth[from];
+    this.speed[to] = this.speed[from];
+    this.cursor[to] = this.cursor[from];
+    this.route[to] = this.route[from];
+    this.steering[to] = this.steering[from];
+    this.alive[to] = this.alive[from];
+    
+    this.route[from] = null;
+    this.steering[from] = null;
+  }
+  
+  private void grow() {
+    int capacity = this.alive.length * 2;
+    
+    float[] px = this.posX, py = this.posY, ox = this.prevX, oy = this.prevY, vx = this.velX, vy = this.velY,
+            sx = this.sepX, sy = this.sepY, h = this.health, mh = this.maxHealth, sp = this.speed;
+    int[] c = this.cursor;
+    Route[] r = this.route;
+    PathPlanner.Steering[][] st = this.steering;
+    boolean[] a = this.alive;
+    
+    this.allocate(capacity);
+    
+    System.arraycopy(px, 0, this.posX, 0, this.count);
+    System.arraycopy(py, 0, this.posY, 0, this.count);
+    System.arraycopy(ox, 0, this.prevX, 0, this.count);
+    System.arraycopy(oy, 0, this.prevY, 0, this.count);
+    System.arraycopy(vx, 0, this.velX, 0, this.count);
+    System.arraycopy(vy, 0, this.velY, 0, this.count);
+    System.arraycopy(sx, 0, this.sepX, 0, this.count);
+    System.arraycopy(sy, 0, this.sepY, 0, this.count);
+    System.arraycopy(h, 0, this.health, 0, this.count);
+    System.arraycopy(mh, 0, this.maxHealth, 0, this.count);
+    System.arraycopy(sp, 0, this.speed, 0, this.count);
+    System.arraycopy(c, 0, this.cursor, 0, this.count);
+    System.arraycopy(r, 0, this.route, 0, this.count);
+    System.arraycopy(st, 0, this.steering, 0, this.count);
+    System.arraycopy(a, 0, this.alive, 0, this.count);
+  }
+  
+  private void allocate(int capacity) {
+    this.posX = new float[capacity];
+    this.posY = new float[capacity];
+    this.prevX = new float[capacity];
+    this.prevY = new float[capacity];
+    this.velX = new float[capacity];
+    this.velY = new float[capacity];
+    this.sepX = new float[capacity];
+    this.sepY = new float[capacity];
+    this.health = new float[capacity];
+    this.maxHealth = new float[capacity];
+    this.speed = new float[capacity];
+    this.cursor = new int[capacity];
+    this.route = new Route[capacity];
+    this.steering = new PathPlanner.Steering[capacity][];
+    this.alive = new boolean[capacity];
+  }
+}
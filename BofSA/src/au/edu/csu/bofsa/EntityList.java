@@ -0,0 +1,226 @@
+/**
+ *   The MIT License
+ *
+ *  Copyright 2011 Andrew James <ephphatha@thelettereph.com>.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package au.edu.csu.bofsa;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Densely packed entities owned by a single thread. Adds and removes
+ * can come from any thread but only take effect when the owner calls
+ * applyChanges(), removal swaps the last entity into the freed slot. Other
+ * threads that need to walk the list (i.e. the renderer) should use
+ * getSnapshot() instead.
+ * 
+ * @author ephphatha
+ *
+ */
+public class EntityList<T> implements Iterable<T> {
+  private static final int INITIAL_CAPACITY = 64;
+  
+  protected Object[] items;
+  protected int count;
+  
+  protected Map<T, Integer> slots;
+  
+  protected Queue<T> pendingAdds;
+  protected Queue<T> pendingRemoves;
+  
+  protected volatile List<T> snapshot;
+  protected volatile boolean snapshotRequested;
+  protected boolean dirty;
+  protected int snapshotCount;
+  
+  public EntityList() {
+    this.items = new Object[EntityList.INITIAL_CAPACITY];
+    this.count = 0;
+    
+    this.slots = new IdentityHashMap<T, Integer>();
+    
+    this.pendingAdds = new ConcurrentLinkedQueue<T>();
+    this.pendingRemoves = new ConcurrentLinkedQueue<T>();
+    
+    this.snapshot = Collections.emptyList();
+    this.snapshotRequested = false;
+    this.dirty = false;
+    this.snapshotCount = 0;
+  }
+  
+  /**
+   * Queues e to be added on the next applyChanges().
+   */
+  public void add(T e) {
+    this.pendingAdds.add(e);
+  }
+  
+  /**
+   * Queues e to be removed on the next applyChanges(), removing something
+   * that isn't in the list does nothing.
+   */
+  public void remove(T e) {
+    this.pendingRemoves.add(e);
+  }
+  
+  /**
+   * Applies queued adds then removes, should only be called by the thread
+   * that owns the list.
+   */
+  public void applyChanges() {
+    while (!this.pendingAdds.isEmpty()) {
+      T e = this.pendingAdds.poll();
+      
+      if (e != null && !this.slots.containsKey(e)) {
+        if (this.count >= this.items.length) {
+          this.items = Arrays.copyOf(this.items, this.items.length * 2);
+        }
+        
+        this.slots.put(e, Integer.valueOf(this.count));
+        this.items[this.count++] = e;
+        this.dirty = true;
+      }
+    }
+    
+    while (!this.pendingRemoves.isEmpty()) {
+      Integer slot = this.slots.get(this.pendingRemoves.poll());
+      
+      if (slot != null) {
+        this.removeSlot(slot.intValue());
+      }
+    }
+    
+    if (this.dirty && this.snapshotRequested) {
+      this.snapshotRequested = false;
+      this.dirty = false;
+      this.snapshot = this.copyItems();
+      ++this.snapshotCount;
+    }
+  }
+  
+  /**
+   * Removes the entity in the given slot straight away by moving the last
+   * entity into it. Only safe from the owning thread.
+   */
+  public void removeSlot(int slot) {
+    if (slot < 0 || slot >= this.count) {
+      throw new IndexOutOfBoundsException(Integer.toString(slot));
+    }
+    
+    this.slots.remove(this.items[slot]);
+    
+    int last = --this.count;
+    
+    if (slot != last) {
+      this.items[slot] = this.items[last];
+      this.slots.put(this.get(slot), Integer.valueOf(slot));
+    }
+    
+    this.items[last] = null;
+    this.dirty = true;
+  }
+  
+  public int size() {
+    return this.count;
+  }
+  
+  @SuppressWarnings("unchecked")
+  public T get(int slot) {
+    return (T) this.items[slot];
+  }
+  
+  /**
+   * Gets the list as it was at some recent applyChanges(). The returned list
+   * never changes, and the next one is only built once this is called again
+   * so the update thread doesn't copy the list every tick.
+   */
+  public List<T> getSnapshot() {
+    this.snapshotRequested = true;
+    
+    return this.snapshot;
+  }
+  
+  /**
+   * How many snapshots applyChanges() has built. Something removed while this
+   * was n is in no snapshot from n + 1 on, and the reader has let go of the
+   * last one holding it once it asks for another, which builds n + 2. While it
+   * is 0 the snapshot has always been empty.
+   */
+  public int getSnapshotCount() {
+    return this.snapshotCount;
+  }
+  
+  /**
+   * Drops everything including pending changes. The owning thread must not
+   * be running.
+   */
+  public void clear() {
+    Arrays.fill(this.items, 0, this.count, null);
+    this.count = 0;
+    
+    this.slots.clear();
+    
+    this.pendingAdds.clear();
+    this.pendingRemoves.clear();
+    
+    this.snapshot = Collections.emptyList();
+    this.dirty = false;
+  }
+
+  @Override
+  public Iterator<T> iterator() {
+    return new Iterator<T>() {
+      private int next = 0;
+      
+      @Override
+      public boolean hasNext() {
+        return this.next < EntityList.this.count;
+      }
+
+      @Override
+      public T next() {
+        if (!this.hasNext()) {
+          throw new NoSuchElementException();
+        }
+        
+        return EntityList.this.get(this.next++);
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+  
+  @SuppressWarnings("unchecked")
+  private List<T> copyItems() {
+    return Collections.unmodifiableList(Arrays.asList((T[]) Arrays.copyOf(this.items, this.count)));
+  }
+}
@@ -23,7 +23,7 @@
  */
 package au.edu.csu.bofsa.Events;
 
-import au.edu.csu.bofsa.CheckPoint;
+import au.edu.csu.bofsa.CopyableInteger;
 
 
 /**
@@ -34,7 +34,7 @@ public class CollisionEvent extends Event {
 
   private static final long serialVersionUID = -6947161911179324386L;
 
-  public CollisionEvent(Object source, CheckPoint value, Type type, long time) {
+  public CollisionEvent(Object source, CopyableInteger value, Type type, long time) {
     super(source, value, type, time);
   }
 
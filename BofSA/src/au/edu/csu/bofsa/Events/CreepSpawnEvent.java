@@ -23,11 +23,10 @@
  */
 package au.edu.csu.bofsa.Events;
 
-import java.util.Queue;
-
 import org.newdawn.slick.geom.Vector2f;
 
-import au.edu.csu.bofsa.CheckPoint;
+import au.edu.csu.bofsa.PathPlanner;
+import au.edu.csu.bofsa.Route;
 
 /**
  * @author ephphatha
@@ -38,12 +37,23 @@ public class CreepSpawnEvent extends Event {
   private static final long serialVersionUID = 7750426419085883272L;
 
   public static class SpawnEventParameters {
+    public int archetype;
     public Vector2f position;
-    public Queue<CheckPoint> waypoints;
+    public Route route;
+    public PathPlanner planner;
+    
+    public SpawnEventParameters(int archetype, Vector2f position, Route route) {
+      this(archetype, position, route, null);
+    }
     
-    public SpawnEventParameters(Vector2f position, Queue<CheckPoint> waypoints) {
+    /**
+     * @param archetype id of the creep type in the ArchetypeRegistry.
+     */
+    public SpawnEventParameters(int archetype, Vector2f position, Route route, PathPlanner planner) {
+      this.archetype = archetype;
       this.position = position;
-      this.waypoints = waypoints;
+      this.route = route;
+      this.planner = planner;
     }
   }
   
@@ -0,0 +1,460 @@
+/**
+ *   The MIT License
+ *
+ *  Copyright 2011 Andrew James <ephphatha@thelettereph.com>.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package au.edu.csu.bofsa;
+
+import java.util.Arrays;
+
+import org.newdawn.slick.geom.Vector2f;
+
+/**
+ * Integration and direction fields towards a single goal tile. Every creep
+ * heading for the goal shares the one field and only needs to look up the
+ * direction stored for the tile it is standing on.
+ * 
+ * @author ephphatha
+ *
+ */
+public class FlowField implements PathPlanner.Steering {
+  public static final int UNREACHABLE = Integer.MAX_VALUE;
+  
+  protected static final byte NONE = -1;
+  
+  protected static final int[] DX = { 1, -1, 0, 0, 1, 1, -1, -1 };
+  protected static final int[] DY = { 0, 0, 1, -1, 1, -1, 1, -1 };
+  protected static final int[] COST = { 10, 10, 10, 10, 14, 14, 14, 14 };
+  protected static final byte[] OPPOSITE = { 1, 0, 3, 2, 7, 6, 5, 4 };
+  
+  protected final PathGrid grid;
+  
+  protected final int left;
+  protected final int top;
+  protected final int width;
+  protected final int height;
+  
+  protected final int goalX;
+  protected final int goalY;
+  
+  protected final int[] cost;
+  protected final byte[] direction;
+  
+  protected Frontier frontier;
+  protected int[] stack;
+
+  /**
+   * Binary min-heap of (cost, tile) pairs packed into longs so the searches
+   * don't box anything.
+   */
+  protected static class Frontier {
+    protected long[] heap;
+    protected int size;
+    
+    public Frontier(int capacity) {
+      this.heap = new long[Math.max(capacity, 16)];
+      this.size = 0;
+    }
+    
+    public boolean isEmpty() {
+      return this.size == 0;
+    }
+    
+    public void clear() {
+      this.size = 0;
+    }
+    
+    public void push(int cost, int tile) {
+      if (this.size == this.heap.length) {
+        this.heap = Arrays.copyOf(this.heap, this.heap.length * 2);
+      }
+      
+      long v = ((long) cost << 32) | (tile & 0xFFFFFFFFL);
+      int i = this.size++;
+      
+      while (i > 0) {
+        int parent = (i - 1) >>> 1;
+        if (this.heap[parent] <= v) {
+          break;
+        }
+        this.heap[i] = this.heap[parent];
+        i = parent;
+      }
+      
+      this.heap[i] = v;
+    }
+    
+    public long pop() {
+      long top = this.heap[0];
+      long v = this.heap[--this.size];
+      int i = 0;
+      
+      while (true) {
+        int child = 2 * i + 1;
+        if (child >= this.size) {
+          break;
+        }
+        if (child + 1 < this.size && this.heap[child + 1] < this.heap[child]) {
+          child++;
+        }
+        if (v <= this.heap[child]) {
+          break;
+        }
+        this.heap[i] = this.heap[child];
+        i = child;
+      }
+      
+      this.heap[i] = v;
+      
+      return top;
+    }
+    
+    public static int cost(long entry) {
+      return (int) (entry >>> 32);
+    }
+    
+    public static int tile(long entry) {
+      return (int) entry;
+    }
+  }
+  
+  public FlowField(PathGrid grid, int goalX, int goalY) {
+    this(grid, goalX, goalY, 0, 0, grid.getWidth(), grid.getHeight());
+  }
+  
+  /**
+   * A field that only covers part of the grid, paths are not allowed to leave
+   * the given bounds.
+   */
+  public FlowField(PathGrid grid, int goalX, int goalY, int left, int top, int width, int height) {
+    this.grid = grid;
+    
+    this.left = left;
+    this.top = top;
+    this.width = width;
+    this.height = height;
+    
+    this.goalX = goalX;
+    this.goalY = goalY;
+    
+    this.cost = new int[this.width * this.height];
+    this.direction = new byte[this.width * this.height];
+    
+    this.frontier = new Frontier(this.width + this.height);
+    this.stack = new int[16];
+    
+    this.rebuild();
+  }
+  
+  public int getGoalX() {
+    return this.goalX;
+  }
+  
+  public int getGoalY() {
+    return this.goalY;
+  }
+  
+  public synchronized void rebuild() {
+    Arrays.fill(this.cost, FlowField.UNREACHABLE);
+    Arrays.fill(this.direction, FlowField.NONE);
+    
+    this.frontier.clear();
+    
+    if (this.contains(this.goalX, this.goalY)) {
+      int goal = this.index(this.goalX, this.goalY);
+      this.cost[goal] = 0;
+      this.frontier.push(0, goal);
+    }
+    
+    this.propagate();
+  }
+  
+  /**
+   * The integration value of a tile, the cost of the cheapest path from that
+   * tile to the goal in tenths of a tile.
+   */
+  public int getCost(int x, int y) {
+    if (!this.contains(x, y)) {
+      return FlowField.UNREACHABLE;
+    }
+    
+    return this.cost[this.index(x, y)];
+  }
+  
+  public boolean contains(int x, int y) {
+    return x >= this.left && x < this.left + this.width && y >= this.top && y < this.top + this.height;
+  }
+  
+  /**
+   * Writes the centre of the next tile on the way to the goal into target.
+   * 
+   * @return false if the position is already in the goal tile or the goal
+   *         can't be reached from there, in which case the caller should head
+   *         directly for the goal.
+   */
+  @Override
+  public boolean getSteeringTarget(float x, float y, Vector2f target) {
+    int tx = (int) Math.floor(x);
+    int ty = (int) Math.floor(y);
+    
+    if (!this.contains(tx, ty)) {
+      return false;
+    }
+    
+    // Read without locking, a stale direction only lasts until the next tick.
+    byte d = this.direction[this.index(tx, ty)];
+    
+    if (d == FlowField.NONE) {
+      return false;
+    }
+    
+    target.set(tx + FlowField.DX[d] + 0.5f, ty + FlowField.DY[d] + 0.5f);
+    
+    return true;
+  }
+  
+  /**
+   * Updates the field after a tile on the grid has been blocked or unblocked.
+   * Only the tiles whose paths actually change are visited.
+   */
+  public synchronized void cellChanged(int x, int y, boolean pathable) {
+    if (!this.contains(x, y) || (x == this.goalX && y == this.goalY)) {
+      return;
+    }
+    
+    if (pathable) {
+      this.cellUnblocked(x, y);
+    } else {
+      this.cellBlocked(x, y);
+    }
+  }
+  
+  protected void cellBlocked(int x, int y) {
+    int blocked = this.index(x, y);
+    
+    // Every tile whose path ran through the blocked tile (or cut across its
+    // corner) has to be resolved again. They form subtrees of the direction
+    // field so they can be found by walking the direction links backwards.
+    int count = 0;
+    
+    this.cost[blocked] = FlowField.UNREACHABLE;
+    this.direction[blocked] = FlowField.NONE;
+    count = this.push(count, blocked);
+    
+    for (int d = 0; d < 4; ++d) {
+      int nx = x + FlowField.DX[d];
+      int ny = y + FlowField.DY[d];
+      
+      if (this.contains(nx, ny)) {
+        int n = this.index(nx, ny);
+        byte nd = this.direction[n];
+        
+        if (nd >= 4 && ((nx + FlowField.DX[nd] == x && ny == y) || (nx == x && ny + FlowField.DY[nd] == y))) {
+          this.cost[n] = FlowField.UNREACHABLE;
+          this.direction[n] = FlowField.NONE;
+          count = this.push(count, n);
+        }
+      }
+    }
+    
+    int visited = 0;
+    
+    while (visited < count) {
+      int c = this.stack[visited++];
+      int cx = this.left + c % this.width;
+      int cy = this.top + c / this.width;
+      
+      for (int d = 0; d < 8; ++d) {
+        int nx = cx + FlowField.DX[d];
+        int ny = cy + FlowField.DY[d];
+        
+        if (!this.contains(nx, ny)) {
+          continue;
+        }
+        
+        int n = this.index(nx, ny);
+        byte nd = this.direction[n];
+        
+        if (nd != FlowField.NONE && nd == FlowField.OPPOSITE[d]) {
+          this.cost[n] = FlowField.UNREACHABLE;
+          this.direction[n] = FlowField.NONE;
+          count = this.push(count, n);
+        }
+      }
+    }
+    
+    // Reseed the invalidated region from its still valid border.
+    this.frontier.clear();
+    
+    for (int i = 0; i < count; ++i) {
+      int c = this.stack[i];
+      
+      if (c != blocked && this.settleFromNeighbours(c)) {
+        this.frontier.push(this.cost[c], c);
+      }
+    }
+    
+    this.propagate();
+  }
+  
+  protected void cellUnblocked(int x, int y) {
+    int c = this.index(x, y);
+    
+    this.frontier.clear();
+    
+    this.settleFromNeighbours(c);
+    
+    if (this.cost[c] != FlowField.UNREACHABLE) {
+      this.frontier.push(this.cost[c], c);
+    }
+    
+    // Diagonal moves around the unblocked tile may have opened up too.
+    for (int d = 0; d < 8; ++d) {
+      int nx = x + FlowField.DX[d];
+      int ny = y + FlowField.DY[d];
+      
+      if (this.contains(nx, ny)) {
+        int n = this.index(nx, ny);
+        
+        if (this.cost[n] != FlowField.UNREACHABLE) {
+          this.frontier.push(this.cost[n], n);
+        }
+      }
+    }
+    
+    this.propagate();
+  }
+  
+  /**
+   * Picks the cheapest valid neighbour of tile c as its successor.
+   * 
+   * @return true if the tile can reach the goal.
+   */
+  protected boolean settleFromNeighbours(int c) {
+    int cx = this.left + c % this.width;
+    int cy = this.top + c / this.width;
+    
+    if (!this.isPathable(cx, cy)) {
+      return false;
+    }
+    
+    int best = FlowField.UNREACHABLE;
+    byte bestDir = FlowField.NONE;
+    
+    for (int d = 0; d < 8; ++d) {
+      if (!this.canMove(cx, cy, d)) {
+        continue;
+      }
+      
+      int n = this.index(cx + FlowField.DX[d], cy + FlowField.DY[d]);
+      
+      if (this.cost[n] != FlowField.UNREACHABLE && this.cost[n] + FlowField.COST[d] < best) {
+        best = this.cost[n] + FlowField.COST[d];
+        bestDir = (byte) d;
+      }
+    }
+    
+    this.cost[c] = best;
+    this.direction[c] = bestDir;
+    
+    return best != FlowField.UNREACHABLE;
+  }
+  
+  /**
+   * Dijkstra's algorithm from whatever is currently in the frontier. Tiles are
+   * only relaxed when their cost improves so an update never spreads further
+   * than the area that changed.
+   */
+  protected void propagate() {
+    while (!this.frontier.isEmpty()) {
+      long e = this.frontier.pop();
+      int c = Frontier.tile(e);
+      int g = Frontier.cost(e);
+      
+      if (g != this.cost[c]) {
+        continue;
+      }
+      
+      int cx = this.left + c % this.width;
+      int cy = this.top + c / this.width;
+      
+      for (int d = 0; d < 8; ++d) {
+        int nx = cx + FlowField.DX[d];
+        int ny = cy + FlowField.DY[d];
+        
+        // Paths are followed in the opposite direction to the search.
+        if (!this.isPathable(nx, ny) || !this.canMove(nx, ny, FlowField.OPPOSITE[d])) {
+          continue;
+        }
+        
+        int n = this.index(nx, ny);
+        int ng = g + FlowField.COST[d];
+        
+        if (ng < this.cost[n]) {
+          this.cost[n] = ng;
+          this.direction[n] = FlowField.OPPOSITE[d];
+          this.frontier.push(ng, n);
+        }
+      }
+    }
+  }
+  
+  /**
+   * Whether a creep on tile (x, y) can step in direction d. Diagonal steps
+   * aren't allowed to cut the corner of a blocked tile.
+   */
+  protected boolean canMove(int x, int y, int d) {
+    int nx = x + FlowField.DX[d];
+    int ny = y + FlowField.DY[d];
+    
+    if (!this.isOpen(nx, ny)) {
+      return false;
+    }
+    
+    if (d >= 4) {
+      return this.isOpen(nx, y) && this.isOpen(x, ny);
+    }
+    
+    return true;
+  }
+  
+  protected boolean isOpen(int x, int y) {
+    return this.contains(x, y) && (this.grid.isPathable(x, y) || (x == this.goalX && y == this.goalY));
+  }
+  
+  protected boolean isPathable(int x, int y) {
+    return this.contains(x, y) && this.grid.isPathable(x, y);
+  }
+  
+  protected int index(int x, int y) {
+    return (y - this.top) * this.width + (x - this.left);
+  }
+  
+  private int push(int count, int tile) {
+    if (count == this.stack.length) {
+      this.stack = Arrays.copyOf(this.stack, this.stack.length * 2);
+    }
+    
+    this.stack[count] = tile;
+    
+    return count + 1;
+  }
+}
@@ -0,0 +1,107 @@
+/**
+ *   The MIT License
+ *
+ *  Copyright 2011 Andrew James <ephphatha@thelettereph.com>.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package au.edu.csu.bofsa;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.newdawn.slick.geom.Vector2f;
+
+import au.edu.csu.bofsa.Events.Event;
+import au.edu.csu.bofsa.Events.EventSink;
+import au.edu.csu.bofsa.Events.PathModEvent;
+
+/**
+ * One flow field per goal tile, shared between every creep heading there.
+ * Fields are kept up to date as tiles on the grid are blocked and unblocked.
+ * 
+ * @author ephphatha
+ *
+ */
+public class FlowFieldCache implements PathPlanner, EventSink, Comparable<Object> {
+  
+  protected PathGrid grid;
+  
+  protected Map<Integer, FlowField> fields;
+  
+  public FlowFieldCache(PathGrid grid) {
+    this.grid = grid;
+    
+    this.fields = new ConcurrentHashMap<Integer, FlowField>();
+    
+    this.grid.addSink(this);
+  }
+  
+  public PathGrid getGrid() {
+    return this.grid;
+  }
+  
+  @Override
+  public Steering getSteering(Vector2f goal) {
+    return this.getField(goal);
+  }
+  
+  public FlowField getField(Vector2f goal) {
+    return this.getField((int) Math.floor(goal.x), (int) Math.floor(goal.y));
+  }
+  
+  public FlowField getField(int x, int y) {
+    if (!this.grid.contains(x, y)) {
+      return null;
+    }
+    
+    Integer key = Integer.valueOf(y * this.grid.getWidth() + x);
+    
+    FlowField f = this.fields.get(key);
+    
+    if (f == null) {
+      synchronized (this.grid) {
+        f = this.fields.get(key);
+        
+        if (f == null) {
+          f = new FlowField(this.grid, x, y);
+          this.fields.put(key, f);
+        }
+      }
+    }
+    
+    return f;
+  }
+  
+  @Override
+  public void handleEvent(Event event) {
+    if (event instanceof PathModEvent) {
+      PathModEvent.Data d = (PathModEvent.Data) event.value;
+      
+      for (FlowField f : this.fields.values()) {
+        f.cellChanged(d.position.x, d.position.y, d.type == PathModEvent.Data.Type.UNBLOCKED);
+      }
+    }
+  }
+
+  @Override
+  public int compareTo(Object o) {
+    return this.hashCode() - o.hashCode();
+  }
+}
@@ -24,11 +24,11 @@
 package au.edu.csu.bofsa;
 
 import java.awt.Dimension;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
-import java.util.PriorityQueue;
-import java.util.Queue;
 
 import org.newdawn.slick.Graphics;
 import org.newdawn.slick.Image;
@@ -48,10 +48,15 @@ import au.edu.csu.bofsa.Signals.InputSignal;
  */
 public class GameLevelST {
 
+  protected final String name;
   protected Dimension size;
   protected BoardNode[][] board;
   protected List<SpawnPoint> spawns;
   
+  protected PathGrid pathGrid;
+  protected PathPlanner planner;
+  protected ConnectivityIndex connectivity;
+  
   public static class BoardNode {
     protected EnumSet<Attribute> attributes;
     
@@ -59,6 +64,8 @@ public class GameLevelST {
     
     protected Sprite tower;
     
+    protected boolean occupied;
+    
     public static enum Attribute {
       PATHABLE,
       BUILDABLE;
@@ -78,6 +85,8 @@ public class GameLevelST {
       this.attributes = attributes;
       
       this.tower = null;
+      
+      this.occupied = false;
     }
     
     public void draw(Graphics g, Rectangle tile) {
@@ -87,7 +96,7 @@ public class GameLevelST {
     }
     
     public boolean isPathable() {
-      return this.tower == null && this.attributes.contains(Attribute.PATHABLE);
+      return !this.occupied && this.tower == null && this.attributes.contains(Attribute.PATHABLE);
     }
     
     public void setPathable() {
@@ -109,6 +118,7 @@ public class GameLevelST {
     public boolean placeTower() {
       if (this.attributes.contains(Attribute.BUILDABLE)) {
         this.setUnbuildable();
+        this.occupied = true;
         return true;
       }
       return false;
@@ -116,15 +126,34 @@ public class GameLevelST {
   }
   
   public GameLevelST(String levelName) throws SlickException {
-    TiledMap map = new TiledMap("levels/" + levelName + ".tmx");
+    this(levelName, true);
+  }
+  
+  /**
+   * @param loadImages false to leave out the tile images, for running
+   *                   without a display.
+   */
+  public GameLevelST(String levelName, boolean loadImages) throws SlickException {
+    LevelFile level;
+    
+    try {
+      level = LevelFile.load(levelName);
+    } catch (IOException e) {
+      throw new SlickException("Couldn't load level " + levelName, e);
+    }
+    
+    TiledMap map = null;
+    
+    if (loadImages) {
+      map = new TiledMap("levels/" + levelName + ".tmx");
+    }
     
-    this.size = new Dimension(map.getWidth(), map.getHeight());
+    this.name = levelName;
+    this.size = new Dimension(level.getWidth(), level.getHeight());
     
     this.board = new BoardNode[this.size.width][];
     
-    int backgroundLayer =  map.getLayerIndex("Background");
-    int buildableLayer = map.getLayerIndex("Buildable");
-    int pathableLayer = map.getLayerIndex("Pathable");
+    int backgroundLayer = map != null ? map.getLayerIndex("Background") : -1;
     
     for (int x = 0; x < this.size.width; ++x) {
       this.board[x] = new BoardNode[this.size.height];
@@ -138,25 +167,32 @@ public class GameLevelST {
           image = map.getTileImage(x, y, backgroundLayer);
         }
 
-        if (buildableLayer >= 0) {
-          if (map.getTileImage(x, y, buildableLayer) != null) {
-            attributes.add(BoardNode.Attribute.BUILDABLE);
-          }
+        if (level.hasTile("Buildable", x, y)) {
+          attributes.add(BoardNode.Attribute.BUILDABLE);
         }
         
-        if (pathableLayer >= 0) {
-          if (map.getTileImage(x, y, pathableLayer) != null) {
-            attributes.add(BoardNode.Attribute.PATHABLE);
-          }
+        if (level.hasTile("Pathable", x, y)) {
+          attributes.add(BoardNode.Attribute.PATHABLE);
         }
         
         this.board[x][y] = new BoardNode(image, attributes);
       }
     }
     
+    this.pathGrid = new PathGrid(this.size.width, this.size.height);
+    
+    for (int x = 0; x < this.size.width; ++x) {
+      for (int y = 0; y < this.size.height; ++y) {
+        this.pathGrid.initPathable(x, y, this.board[x][y].isPathable());
+      }
+    }
+    
+    this.planner = HierarchicalPathfinder.create(this.pathGrid);
+    this.connectivity = new ConnectivityIndex(this.pathGrid);
+    
     this.spawns = new ArrayList<SpawnPoint>();
     
-    int objectGroups = map.getObjectGroupCount();
+    int objectGroups = level.getObjectGroupCount();
     int validGroups = 0;
     
     if (objectGroups > 1) {
@@ -166,19 +202,18 @@ public class GameLevelST {
     for (int i = 0; i < objectGroups; ++i) {
       SpawnPoint spawn = null;
       
-      Queue<CheckPoint> checkpoints = new PriorityQueue<CheckPoint>();
+      List<CheckPoint> checkpoints = new ArrayList<CheckPoint>();
       Vector2f goal = null;
       
-      for (int j = 0; j < map.getObjectCount(i); ++j) {
-        String s = map.getObjectType(i, j);
-        Vector2f position = new Vector2f((float) map.getObjectX(i, j) / (float) map.getTileWidth(),
-            (float) map.getObjectY(i, j) / (float) map.getTileHeight());
+      for (LevelFile.MapObject o : level.getObjects(i)) {
+        String s = o.type;
+        Vector2f position = new Vector2f(level.getObjectTileX(o), level.getObjectTileY(o));
         
         if (s.equalsIgnoreCase("Checkpoint")) {
           //add to checkpoint queue
           
           try {
-            checkpoints.add(new CheckPoint(Integer.parseInt(map.getObjectName(i, j)), position));
+            checkpoints.add(new CheckPoint(Integer.parseInt(o.name), position));
           } catch (NumberFormatException e) {
             // Goggles.
           }
@@ -188,9 +223,10 @@ public class GameLevelST {
           if (spawn == null) {
             try {
               spawn = new SpawnPoint(position,
-                  Float.parseFloat(map.getObjectProperty(i, j, "spawnDuration", "5")),
-                  Float.parseFloat(map.getObjectProperty(i, j, "spawnInterval", "1")),
-                  Float.parseFloat(map.getObjectProperty(i, j, "lullDuration", "20")));
+                  ArchetypeRegistry.getDefault().getId(LevelFile.getProperty(o, "creep", null)),
+                  Float.parseFloat(LevelFile.getProperty(o, "spawnDuration", "5")),
+                  Float.parseFloat(LevelFile.getProperty(o, "spawnInterval", "1")),
+                  Float.parseFloat(LevelFile.getProperty(o, "lullDuration", "20")));
 
             } catch (NumberFormatException e) {
               // Goggles.
@@ -210,8 +246,21 @@ public class GameLevelST {
         
         //add to list of spawns
         
-        spawn.setCheckPoints(checkpoints);
-        spawn.setGoal(goal);
+        Collections.sort(checkpoints);
+        
+        if (goal != null) {
+          checkpoints.add(new CheckPoint(checkpoints.size(), goal));
+        }
+        
+        spawn.setRoute(new Route(checkpoints));
+        
+        Vector2f from = spawn.position;
+        
+        for (CheckPoint cp : checkpoints) {
+          this.planner.getSteering(cp.position);
+          this.connectivity.addLeg(from, cp.position);
+          from = cp.position;
+        }
         
         this.spawns.add(spawn);
       }
@@ -224,6 +273,10 @@ public class GameLevelST {
     }
   }
   
+  public String getName() {
+    return this.name;
+  }
+  
   public Dimension getSize() {
     return this.size;
   }
@@ -236,6 +289,18 @@ public class GameLevelST {
     return (int) this.size.getHeight();
   }
   
+  public PathGrid getPathGrid() {
+    return this.pathGrid;
+  }
+  
+  public PathPlanner getPathPlanner() {
+    return this.planner;
+  }
+  
+  public ConnectivityIndex getConnectivity() {
+    return this.connectivity;
+  }
+  
   public void render(GUIContext container, Graphics g) {
     g.pushTransform();
     
@@ -264,7 +329,7 @@ public class GameLevelST {
       EventSink drawWatcher) {
     Tower t = new Tower(pos);
     
-    TowerFactoryBehaviour.createTower(pos, creeps, t, tileSize, drawWatcher);
+    TowerFactoryBehaviour.createTower(t.getPositionSignal(), creeps, t, tileSize, drawWatcher);
     
     if (this.spawnTower(t)) {
       return t;
@@ -273,17 +338,37 @@ public class GameLevelST {
     }
   }
   
-  private boolean spawnTower(Tower t) {
-    if (t == null) {
+  /**
+   * Claims a tile for a tower without building any behaviours for it.
+   * 
+   * @return false if the tile can't hold a tower.
+   */
+  public boolean placeTower(CopyablePoint p) {
+    if (p == null) {
       return false;
     } else {
-      CopyablePoint p = t.getPosition();
       if (p.x >= 0 && p.x < this.size.width &&
           p.y >= 0 && p.y < this.size.height) {
-        return this.board[p.x][p.y].placeTower();
+        if (this.board[p.x][p.y].isPathable() && this.connectivity.wouldDisconnect(p.x, p.y)) {
+          return false;
+        }
+        
+        if (this.board[p.x][p.y].placeTower()) {
+          this.pathGrid.setPathable(p.x, p.y, this.board[p.x][p.y].isPathable());
+          return true;
+        }
+        return false;
       } else {
         return false;
       }
     }
   }
+  
+  private boolean spawnTower(Tower t) {
+    if (t == null) {
+      return false;
+    } else {
+      return this.placeTower(t.getPosition());
+    }
+  }
 }
@@ -24,7 +24,10 @@
 package au.edu.csu.bofsa;
 
 import java.awt.Dimension;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 
 import org.newdawn.slick.Graphics;
 import org.newdawn.slick.Image;
@@ -51,6 +54,10 @@ public class GameLevelTB {
   protected Dimension size;
   protected BoardNode[][] board;
   
+  protected PathGrid pathGrid;
+  protected PathPlanner planner;
+  protected ConnectivityIndex connectivity;
+  
   public static class BoardNode {
     protected Image background;
     
@@ -70,22 +77,47 @@ public class GameLevelTB {
       EventSink behaviourListener,
       EventSink spawnListener,
       EventSink buildListener) throws SlickException {
-    TiledMap map;
-    
-    String fileName = "/levels/" + levelName + ".tmx";
+    this(levelName, behaviourListener, spawnListener, buildListener, true);
+  }
+  
+  /**
+   * @param loadImages false to leave out the tile images, for running
+   *                   without a display.
+   */
+  public GameLevelTB(
+      String levelName,
+      EventSink behaviourListener,
+      EventSink spawnListener,
+      EventSink buildListener,
+      boolean loadImages) throws SlickException {
+    LevelFile level;
     
     try {
-      map = new TiledMap(this.getClass().getResource(fileName).getRef());
-    } catch (NullPointerException e) {
-      map = new TiledMap(fileName);
+      level = LevelFile.load(levelName);
+    } catch (IOException e) {
+      throw new SlickException("Couldn't load level " + levelName, e);
     }
     
-    this.size = new Dimension(map.getWidth(), map.getHeight());
+    TiledMap map = null;
+    
+    if (loadImages) {
+      String fileName = "/levels/" + levelName + ".tmx";
+      
+      try {
+        map = new TiledMap(this.getClass().getResource(fileName).getRef());
+      } catch (NullPointerException e) {
+        map = new TiledMap(fileName);
+      }
+    }
+    
+    this.size = new Dimension(level.getWidth(), level.getHeight());
     
     this.board = new BoardNode[this.size.width][];
     
-    int backgroundLayer =  map.getLayerIndex("Background");
-    int buildableLayer = map.getLayerIndex("Buildable");
+    int backgroundLayer = map != null ? map.getLayerIndex("Background") : -1;
+    boolean pathableLayer = level.hasLayer("Pathable");
+    
+    this.pathGrid = new PathGrid(this.size.width, this.size.height);
     
     for (int x = 0; x < this.size.width; ++x) {
       this.board[x] = new BoardNode[this.size.height];
@@ -97,24 +129,29 @@ public class GameLevelTB {
           image = map.getTileImage(x, y, backgroundLayer);
         }
 
-        if (buildableLayer >= 0) {
-          if (map.getTileImage(x, y, buildableLayer) != null) {
-            buildListener.handleEvent(
-                new BuildAreaModEvent(
-                    this,
-                    new BuildAreaModEvent.Data(
-                        BuildAreaModEvent.Data.Type.ADD_LOCATION,
-                        new CopyablePoint(x, y)),
-                    Event.Type.TARGETTED,
-                    System.nanoTime()));
-          }
+        if (level.hasTile("Buildable", x, y)) {
+          buildListener.handleEvent(
+              new BuildAreaModEvent(
+                  this,
+                  new BuildAreaModEvent.Data(
+                      BuildAreaModEvent.Data.Type.ADD_LOCATION,
+                      new CopyablePoint(x, y)),
+                  Event.Type.TARGETTED,
+                  SimClock.now()));
+        }
+        
+        if (pathableLayer) {
+          this.pathGrid.initPathable(x, y, level.hasTile("Pathable", x, y));
         }
         
         this.board[x][y] = new BoardNode(image);
       }
     }
     
-    int objectGroups = map.getObjectGroupCount();
+    this.planner = HierarchicalPathfinder.create(this.pathGrid);
+    this.connectivity = new ConnectivityIndex(this.pathGrid);
+    
+    int objectGroups = level.getObjectGroupCount();
     int validGroups = 0;
     
     for (int i = 0; i < objectGroups; ++i) {
@@ -122,18 +159,18 @@ public class GameLevelTB {
       InputSignal<CopyableFloat> spawnDuration = null;
       InputSignal<CopyableFloat> spawnInterval = null;
       InputSignal<CopyableFloat> lullDuration = null;
-      CopyableList<CheckPoint> checkpoints = new CopyableList<CheckPoint>();
+      int archetype = 0;
+      List<CheckPoint> checkpoints = new ArrayList<CheckPoint>();
       Vector2f goal = null;
       
-      for (int j = 0; j < map.getObjectCount(i); ++j) {
-        String s = map.getObjectType(i, j);
-        Vector2f pos = new Vector2f((float) map.getObjectX(i, j) / (float) map.getTileWidth(),
-            (float) map.getObjectY(i, j) / (float) map.getTileHeight());
+      for (LevelFile.MapObject o : level.getObjects(i)) {
+        String s = o.type;
+        Vector2f pos = new Vector2f(level.getObjectTileX(o), level.getObjectTileY(o));
         
         if (s.equalsIgnoreCase("Checkpoint")) {
           //add to checkpoint queue
           try {
-            checkpoints.add(new CheckPoint(Integer.parseInt(map.getObjectName(i, j)), pos));
+            checkpoints.add(new CheckPoint(Integer.parseInt(o.name), pos));
           } catch (NumberFormatException e) {
             // Goggles.
           }
@@ -142,9 +179,10 @@ public class GameLevelTB {
           if (spawnPos == null) {
             try {
               spawnPos = new Signal<CopyableVector2f>(new CopyableVector2f(pos));
-              spawnDuration = new Signal<CopyableFloat>(new CopyableFloat(Float.parseFloat(map.getObjectProperty(i, j, "spawnDuration", "5"))));
-              spawnInterval = new Signal<CopyableFloat>(new CopyableFloat(Float.parseFloat(map.getObjectProperty(i, j, "spawnInterval", "1"))));
-              lullDuration = new Signal<CopyableFloat>(new CopyableFloat(Float.parseFloat(map.getObjectProperty(i, j, "lullDuration", "20"))));
+              spawnDuration = new Signal<CopyableFloat>(new CopyableFloat(Float.parseFloat(LevelFile.getProperty(o, "spawnDuration", "5"))));
+              spawnInterval = new Signal<CopyableFloat>(new CopyableFloat(Float.parseFloat(LevelFile.getProperty(o, "spawnInterval", "1"))));
+              lullDuration = new Signal<CopyableFloat>(new CopyableFloat(Float.parseFloat(LevelFile.getProperty(o, "lullDuration", "20"))));
+              archetype = ArchetypeRegistry.getDefault().getId(LevelFile.getProperty(o, "creep", null));
             } catch (NumberFormatException e) {
               spawnPos = null;
               spawnDuration = null;
@@ -165,15 +203,28 @@ public class GameLevelTB {
         validGroups++;
         
         Collections.sort(checkpoints);
-        checkpoints.add(new CheckPoint(checkpoints.getLast().index + 1, goal));
+        checkpoints.add(new CheckPoint(checkpoints.size(), goal));
+        
+        Vector2f from = spawnPos != null ? spawnPos.read() : null;
+        
+        for (CheckPoint cp : checkpoints) {
+          this.planner.getSteering(cp.position);
+          
+          if (from != null) {
+            this.connectivity.addLeg(from, cp.position);
+          }
+          from = cp.position;
+        }
         
         SpawnBehaviour spawn = new SpawnBehaviour(
-            new Signal<CopyableLong>(new CopyableLong(System.nanoTime())),
+            new Signal<CopyableLong>(new CopyableLong(SimClock.now())),
             spawnPos,
-            new Signal<CopyableList<CheckPoint>>(checkpoints),
+            new Route(checkpoints),
+            archetype,
             spawnDuration,
             spawnInterval,
             lullDuration,
+            this.planner,
             spawnListener);
         
         behaviourListener.handleEvent(
@@ -181,7 +232,7 @@ public class GameLevelTB {
                 spawn,
                 GenericEvent.Message.NEW_BEHAVIOUR,
                 Event.Type.TARGETTED,
-                System.nanoTime()));
+                SimClock.now()));
       }
     }
     
@@ -202,6 +253,14 @@ public class GameLevelTB {
     return (int) this.size.getHeight();
   }
   
+  public PathGrid getPathGrid() {
+    return this.pathGrid;
+  }
+  
+  public ConnectivityIndex getConnectivity() {
+    return this.connectivity;
+  }
+  
   public void render(GUIContext container, Graphics g) {
     g.pushTransform();
     
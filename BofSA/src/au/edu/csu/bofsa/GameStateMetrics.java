@@ -0,0 +1,135 @@
+/**
+ *   The MIT License
+ *
+ *  Copyright 2011 Andrew James <ephphatha@thelettereph.com>.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package au.edu.csu.bofsa;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * @author ephphatha
+ *
+ */
+public class GameStateMetrics implements GameStateMetricsMXBean {
+  
+  /**
+   * Implemented by the game state being watched, called from the JMX
+   * thread.
+   */
+  public static interface Source {
+    public int getCreepCount();
+    
+    public int getTowerCount();
+    
+    /**
+     * @return null if the state doesn't run a fixed step loop.
+     */
+    public TickStats getTickStats();
+  }
+  
+  protected final Source source;
+  protected final long gcTimeBase;
+  protected final long gcCountBase;
+  
+  public GameStateMetrics(Source source) {
+    this.source = source;
+    
+    this.gcTimeBase = GameStateMetrics.totalGcTime();
+    this.gcCountBase = GameStateMetrics.totalGcCount();
+  }
+  
+  protected static long totalGcTime() {
+    long total = 0;
+    
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      total += Math.max(0, gc.getCollectionTime());
+    }
+    
+    return total;
+  }
+  
+  protected static long totalGcCount() {
+    long total = 0;
+    
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      total += Math.max(0, gc.getCollectionCount());
+    }
+    
+    return total;
+  }
+
+  @Override
+  public int getCreeps() {
+    return this.source.getCreepCount();
+  }
+
+  @Override
+  public int getTowers() {
+    return this.source.getTowerCount();
+  }
+
+  @Override
+  public long getTicks() {
+    TickStats t = this.source.getTickStats();
+    
+    return t != null ? t.getTicks() : 0;
+  }
+
+  @Override
+  public long getTickOverruns() {
+    TickStats t = this.source.getTickStats();
+    
+    return t != null ? t.getOverruns() : 0;
+  }
+
+  @Override
+  public long getTicksDropped() {
+    TickStats t = this.source.getTickStats();
+    
+    return t != null ? t.getDropped() : 0;
+  }
+
+  @Override
+  public double getMeanTickTime() {
+    TickStats t = this.source.getTickStats();
+    
+    return t != null ? t.getMeanTickTime() : 0;
+  }
+
+  @Override
+  public long getMaxTickTime() {
+    TickStats t = this.source.getTickStats();
+    
+    return t != null ? t.getMaxTickTime() : 0;
+  }
+
+  @Override
+  public long getGcTime() {
+    return GameStateMetrics.totalGcTime() - this.gcTimeBase;
+  }
+
+  @Override
+  public long getGcCount() {
+    return GameStateMetrics.totalGcCount() - this.gcCountBase;
+  }
+}
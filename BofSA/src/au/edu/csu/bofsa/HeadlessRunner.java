@@ -0,0 +1,545 @@
+/**
+ *   The MIT License
+ *
+ *  Copyright 2011 Andrew James <ephphatha@thelettereph.com>.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package au.edu.csu.bofsa;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.newdawn.slick.SlickException;
+
+/**
+ * Runs the game logic without a display so the game modes can be timed on
+ * machines with no OpenGL. The level is loaded without images, towers are
+ * placed from a script, and the logic is run for a set number of simulated
+ * seconds for each thread count given. Tick based modes run their ticks back
+ * to back, the task based mode has no ticks and is run until the clock says
+ * that much time has passed.
+ * 
+ * By default the game runs on a fixed step clock moved on one tick at a time,
+ * so the tick based modes give the same game every run however long a tick
+ * takes. -creal runs on the wall clock and -c<N> on a clock N times faster.
+ * 
+ * -p plays back the tower placements from a replay file in place of -b,
+ * optionally starting from a given number of seconds in. The level and
+ * duration come from the replay, -l and -d after it override them. -i
+ * records each run's placements to a replay of its own.
+ * 
+ * None of the shipped levels are big enough to use the hierarchical planner,
+ * -h uses it on whatever level is loaded with clusters of the given size (4
+ * by default). Runs with and without it should end with much the same number
+ * of creeps.
+ * 
+ * Usage: HeadlessRunner [-g<ST|DP|ECS|TB>,...] [-t<threads>,...]
+ *                       [-m<scheduler mode>] [-l<level>] [-d<seconds>]
+ *                       [-r<tick rate>] [-b<x>,<y>[@<seconds>]]... [-f]
+ *                       [-c<fixed|real|N>] [-p<file.replay>[@<seconds>]]
+ *                       [-h[<cluster size>]] [-i] [-o<file.csv>]
+ * 
+ * @author ephphatha
+ *
+ */
+public class HeadlessRunner {
+  
+  public static enum GameMode {
+    ST,
+    DP,
+    ECS,
+    TB
+  }
+  
+  public static final float DEFAULT_DURATION = 60.0f;
+  public static final int DEFAULT_CLUSTER_SIZE = 4;
+  public static final String DEFAULT_LEVEL = "test";
+  
+  /**
+   * Clock speed standing for the fixed step clock.
+   */
+  public static final double FIXED_STEP = 0.0;
+  
+  /**
+   * A tower to be placed once the simulation reaches time seconds.
+   */
+  public static class TowerPlacement implements Comparable<TowerPlacement> {
+    public final CopyablePoint position;
+    public final float time;
+    
+    public TowerPlacement(CopyablePoint position, float time) {
+      this.position = position;
+      this.time = time;
+    }
+    
+    /**
+     * @param s x,y or x,y@seconds
+     * @return null if s can't be read.
+     */
+    public static TowerPlacement parse(String s) {
+      try {
+        float time = 0;
+        int at = s.indexOf('@');
+        
+        if (at >= 0) {
+          time = Float.parseFloat(s.substring(at + 1));
+          s = s.substring(0, at);
+        }
+        
+        String[] xy = s.split(",");
+        
+        return new TowerPlacement(new CopyablePoint(Integer.parseInt(xy[0].trim()), Integer.parseInt(xy[1].trim())), time);
+      } catch (NumberFormatException e) {
+        return null;
+      } catch (ArrayIndexOutOfBoundsException e) {
+        return null;
+      }
+    }
+
+    @Override
+    public int compareTo(TowerPlacement o) {
+      return Float.compare(this.time, o.time);
+    }
+  }
+  
+  public static class Result {
+    public GameMode gameMode;
+    public Scheduler.Mode schedulingMode;
+    public String clock;
+    public int threads;
+    public int workers;
+    public float simulatedSeconds;
+    public double wallSeconds;
+    public long ticks;
+    public long creepUpdates;
+    public int creeps;
+    public int towers;
+    
+    public static String getHeadings() {
+      return
+          "Game mode," +
+          "Scheduling mode," +
+          "Clock," +
+          "Threads," +
+          "Workers," +
+          "Simulated seconds," +
+          "Wall time (seconds)," +
+          "Ticks," +
+          "Ticks/s," +
+          "Creep updates," +
+          "Creep updates/s," +
+          "Creeps at end," +
+          "Towers at end";
+    }
+    
+    public String toString() {
+      return
+          this.gameMode + "," +
+          this.schedulingMode + "," +
+          this.clock + "," +
+          this.threads + "," +
+          this.workers + "," +
+          this.simulatedSeconds + "," +
+          this.wallSeconds + "," +
+          (this.ticks >= 0 ? Long.toString(this.ticks) : "") + "," +
+          (this.ticks >= 0 ? Double.toString(this.ticks / this.wallSeconds) : "") + "," +
+          this.creepUpdates + "," +
+          (this.creepUpdates / this.wallSeconds) + "," +
+          this.creeps + "," +
+          this.towers;
+    }
+  }
+  
+  protected String levelName;
+  protected float duration;
+  protected float tickRate;
+  protected Scheduler.Mode schedulingMode;
+  protected boolean fuse;
+  protected double clockSpeed;
+  protected List<TowerPlacement> towers;
+  
+  public static void main(String[] args) {
+    List<GameMode> gameModes = new ArrayList<GameMode>();
+    List<Integer> threadCounts = new ArrayList<Integer>();
+    String output = null;
+    
+    HeadlessRunner runner = new HeadlessRunner();
+    
+    for (String s : args) {
+      try {
+        if (s.startsWith("-g")) {
+          for (String g : s.substring(2).split(",")) {
+            gameModes.add(GameMode.valueOf(g.trim().toUpperCase()));
+          }
+        } else if (s.startsWith("-t")) {
+          for (String t : s.substring(2).split(",")) {
+            threadCounts.add(Integer.valueOf(t.trim()));
+          }
+        } else if (s.startsWith("-m")) {
+          runner.setSchedulingMode(Scheduler.Mode.valueOf(s.substring(2).trim().toUpperCase()));
+        } else if (s.startsWith("-l")) {
+          runner.setLevel(s.substring(2));
+        } else if (s.startsWith("-d")) {
+          runner.setDuration(Float.parseFloat(s.substring(2)));
+        } else if (s.startsWith("-r")) {
+          runner.setTickRate(Float.parseFloat(s.substring(2)));
+        } else if (s.startsWith("-b")) {
+          TowerPlacement p = TowerPlacement.parse(s.substring(2));
+          
+          if (p != null) {
+            runner.addTower(p);
+          } else {
+            System.out.println("Ignoring tower " + s.substring(2));
+          }
+        } else if (s.equals("-f")) {
+          runner.setFusion(true);
+        } else if (s.startsWith("-c")) {
+          String c = s.substring(2).trim().toLowerCase();
+          
+          if (c.equals("fixed")) {
+            runner.setClockSpeed(HeadlessRunner.FIXED_STEP);
+          } else if (c.equals("real")) {
+            runner.setClockSpeed(1.0);
+          } else {
+            runner.setClockSpeed(Double.parseDouble(c.endsWith("x") ? c.substring(0, c.length() - 1) : c));
+          }
+        } else if (s.startsWith("-p")) {
+          String file = s.substring(2);
+          float from = 0;
+          int at = file.lastIndexOf('@');
+          
+          if (at >= 0) {
+            from = Float.parseFloat(file.substring(at + 1));
+            file = file.substring(0, at);
+          }
+          
+          runner.loadReplay(ReplayFile.open(file), from);
+        } else if (s.startsWith("-h")) {
+          HierarchicalPathfinder.setForcedClusterSize(
+              s.length() > 2 ? Integer.parseInt(s.substring(2).trim()) : HeadlessRunner.DEFAULT_CLUSTER_SIZE);
+        } else if (s.equals("-i")) {
+          ReplayRecorder.setEnabled(true);
+        } else if (s.startsWith("-o")) {
+          output = s.substring(2);
+        }
+      } catch (IllegalArgumentException e) {
+        System.out.println("Ignoring " + s + ": " + e.getMessage());
+      } catch (IOException e) {
+        System.out.println("Couldn't read replay " + s.substring(2) + ": " + e.getMessage());
+      }
+    }
+    
+    if (gameModes.isEmpty()) {
+      for (GameMode g : GameMode.values()) {
+        gameModes.add(g);
+      }
+    }
+    
+    if (threadCounts.isEmpty()) {
+      threadCounts.add(Integer.valueOf(Runtime.getRuntime().availableProcessors()));
+    }
+    
+    Sprite.setHeadless(true);
+    
+    FileWriter file = null;
+    
+    try {
+      if (output != null) {
+        file = new FileWriter(output);
+        file.write(Result.getHeadings() + "\n");
+      }
+      
+      System.out.println(Result.getHeadings());
+      
+      for (GameMode g : gameModes) {
+        for (Integer t : threadCounts) {
+          Result r = runner.run(g, t.intValue());
+          
+          System.out.println(r);
+          
+          if (file != null) {
+            file.write(r + "\n");
+            file.flush();
+          }
+          
+          // The single threaded mode doesn't use a scheduler.
+          if (g == GameMode.ST) {
+            break;
+          }
+        }
+      }
+    } catch (SlickException e) {
+      System.out.println("Couldn't load level: " + e.getMessage());
+    } catch (IOException e) {
+      System.out.println("Couldn't write results: " + e.getMessage());
+    } finally {
+      if (file != null) {
+        try {
+          file.close();
+        } catch (IOException e) {
+          //Goggles
+        }
+      }
+    }
+    
+    // The states leave non-daemon threads behind, the game never returns to
+    // this point so nothing else cleans them up.
+    System.exit(0);
+  }
+  
+  public HeadlessRunner() {
+    this.levelName = HeadlessRunner.DEFAULT_LEVEL;
+    this.duration = HeadlessRunner.DEFAULT_DURATION;
+    this.tickRate = InGameStateST.DEFAULT_TICK_RATE;
+    this.schedulingMode = Scheduler.Mode.UNORDERED;
+    this.fuse = false;
+    this.clockSpeed = HeadlessRunner.FIXED_STEP;
+    this.towers = new ArrayList<TowerPlacement>();
+  }
+  
+  public void setLevel(String levelName) {
+    this.levelName = levelName;
+  }
+  
+  /**
+   * @param seconds how much game time each run covers.
+   */
+  public void setDuration(float seconds) {
+    if (seconds > 0) {
+      this.duration = seconds;
+    }
+  }
+  
+  public void setTickRate(float ticksPerSecond) {
+    if (ticksPerSecond > 0) {
+      this.tickRate = ticksPerSecond;
+    }
+  }
+  
+  public void setSchedulingMode(Scheduler.Mode mode) {
+    this.schedulingMode = mode;
+  }
+  
+  public void setFusion(boolean fuse) {
+    this.fuse = fuse;
+  }
+  
+  /**
+   * @param speed FIXED_STEP for a clock moved on a tick at a time, otherwise
+   *              how many times faster than the wall clock the game runs.
+   */
+  public void setClockSpeed(double speed) {
+    if (speed >= 0) {
+      this.clockSpeed = speed;
+    }
+  }
+  
+  /**
+   * Each run gets a clock of its own so they all start from the same time.
+   */
+  protected SimClock createClock() {
+    if (this.clockSpeed == HeadlessRunner.FIXED_STEP) {
+      return new SimClock.FixedStep((long) (1.0E9 / this.tickRate));
+    } else if (this.clockSpeed == 1.0) {
+      return new SimClock.Real();
+    } else {
+      return new SimClock.Accelerated(this.clockSpeed);
+    }
+  }
+  
+  public void addTower(TowerPlacement p) {
+    this.towers.add(p);
+    Collections.sort(this.towers);
+  }
+  
+  /**
+   * Replaces the tower placements with the ones in a replay. Starting part
+   * way in, the towers clicked before that point are all placed straight
+   * away and the rest keep their times relative to the new start.
+   * 
+   * @param from seconds into the replay to start from.
+   */
+  public void loadReplay(ReplayFile replay, float from) {
+    long start = Math.min(Math.max((long) (from * 1.0E9), 0), replay.getLength());
+    
+    this.towers.clear();
+    
+    ReplayFile.Checkpoint c = replay.seek(start);
+    
+    for (CopyablePoint p : c.tiles) {
+      this.towers.add(new TowerPlacement(p, 0));
+    }
+    
+    for (ReplayFile.Input i : replay.getInputs(c.time, replay.getLength())) {
+      this.towers.add(new TowerPlacement(i.position, Math.max(i.time - start, 0) / 1.0E9f));
+    }
+    
+    Collections.sort(this.towers);
+    
+    this.setLevel(replay.getLevel());
+    this.setDuration((replay.getLength() - start) / 1.0E9f);
+  }
+  
+  public Result run(GameMode mode, int threads) throws SlickException {
+    Result r = new Result();
+    
+    r.gameMode = mode;
+    r.schedulingMode = this.schedulingMode;
+    r.threads = threads;
+    r.simulatedSeconds = this.duration;
+    
+    // Everything made from here on picks the clock up as its default.
+    SimClock clock = this.createClock();
+    SimClock.setDefault(clock);
+    r.clock = clock.toString();
+    
+    switch (mode) {
+    case ST:
+      this.runTicks(new InGameStateST(0), null, clock, r);
+      break;
+      
+    case DP:
+      InGameStateDP dp = new InGameStateDP(0, threads);
+      dp.setSchedulingMode(this.schedulingMode);
+      this.runTicks(dp, dp.getScheduler(), clock, r);
+      break;
+      
+    case ECS:
+      InGameStateECS ecs = new InGameStateECS(0, threads);
+      ecs.setSchedulingMode(this.schedulingMode);
+      this.runTicks(ecs, ecs.getScheduler(), clock, r);
+      break;
+      
+    case TB:
+      this.runTasks(new InGameStateTB(0, threads), clock, r);
+      break;
+    }
+    
+    return r;
+  }
+  
+  /**
+   * Runs the tick based states' update() back to back, counting each creep
+   * alive at the start of a tick as one creep update. A fixed step clock is
+   * moved on a tick after each update.
+   */
+  protected void runTicks(InGameStateST state, Scheduler scheduler, SimClock clock, Result r) throws SlickException {
+    state.setTickRate(this.tickRate);
+    state.begin(new GameLevelST(this.levelName, false));
+    
+    r.workers = scheduler != null ? scheduler.numThreads() : 0;
+    
+    float delta = 1.0f / this.tickRate;
+    long period = (long) (1.0E9 / this.tickRate);
+    long ticks = (long) Math.ceil(this.duration * this.tickRate);
+    int nextTower = 0;
+    
+    long start = System.nanoTime();
+    
+    for (long i = 0; i < ticks; ++i) {
+      // Worked out the same way as times from a replay recorded here.
+      float now = (i * period) / 1.0E9f;
+      
+      while (nextTower < this.towers.size() && this.towers.get(nextTower).time <= now) {
+        CopyablePoint p = this.towers.get(nextTower++).position;
+        
+        ReplayRecorder.record(p);
+        state.placeTower(p);
+      }
+      
+      r.creepUpdates += state.getCreepCount();
+      
+      state.update(delta);
+      ReplayRecorder.tick();
+      
+      if (clock instanceof SimClock.FixedStep) {
+        ((SimClock.FixedStep) clock).advance();
+      }
+    }
+    
+    r.wallSeconds = (System.nanoTime() - start) / 1.0E9;
+    r.ticks = ticks;
+    r.creeps = state.getCreepCount();
+    r.towers = state.getTowerCount();
+    
+    state.end();
+  }
+  
+  /**
+   * Lets the task based state's scheduler run for the duration, creep
+   * updates are the number of times a creep's movement ran. A fixed step
+   * clock is moved on a step every millisecond, the scheduler's threads
+   * still race each other so runs aren't repeatable the way ticks are.
+   */
+  protected void runTasks(InGameStateTB state, SimClock clock, Result r) throws SlickException {
+    state.setSchedulingMode(this.schedulingMode);
+    state.setFusion(this.fuse);
+    state.begin(this.levelName, false);
+    
+    Scheduler scheduler = state.getScheduler();
+    
+    r.workers = scheduler.numThreads();
+    
+    long start = System.nanoTime();
+    long simStart = clock.nanoTime();
+    long simEnd = simStart + (long) (this.duration * 1.0E9);
+    int nextTower = 0;
+    
+    while (clock.nanoTime() < simEnd) {
+      float now = (clock.nanoTime() - simStart) / 1.0E9f;
+      
+      while (nextTower < this.towers.size() && this.towers.get(nextTower).time <= now) {
+        CopyablePoint p = this.towers.get(nextTower++).position;
+        
+        ReplayRecorder.record(p);
+        state.placeTower(p);
+      }
+      
+      ReplayRecorder.tick();
+      
+      try {
+        Thread.sleep(1);
+      } catch (InterruptedException e) {
+        break;
+      }
+      
+      if (clock instanceof SimClock.FixedStep) {
+        ((SimClock.FixedStep) clock).advance();
+      }
+    }
+    
+    r.wallSeconds = (System.nanoTime() - start) / 1.0E9;
+    r.ticks = -1;
+    r.creeps = state.getCreepCount();
+    r.towers = state.getTowerCount();
+    
+    state.end();
+    
+    Logger logger = scheduler.getLogger();
+    
+    Logger.TaskStats moves = logger.peekTaskStats(Logger.getTypeId("MoveBehaviour"));
+    Logger.TaskStats fused = logger.peekTaskStats(Logger.getTypeId("Creep"));
+    
+    r.creepUpdates = (moves != null ? moves.executionCount : 0) + (fused != null ? fused.executionCount : 0);
+  }
+}
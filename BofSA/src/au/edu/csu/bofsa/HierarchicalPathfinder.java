@@ -0,0 +1,762 @@
+/**
+ *   The MIT License
+ *
+ *  Copyright 2011 Andrew James <ephphatha@thelettereph.com>.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package au.edu.csu.bofsa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.newdawn.slick.geom.Vector2f;
+
+import au.edu.csu.bofsa.Events.Event;
+import au.edu.csu.bofsa.Events.EventSink;
+import au.edu.csu.bofsa.Events.PathModEvent;
+
+/**
+ * HPA* style planner for boards too large to keep a full flow field per goal.
+ * The board is split into square clusters joined by transition nodes where
+ * their borders are open. Creeps pick the best transition out of the cluster
+ * they're in and follow a flow field local to that cluster, these local fields
+ * are only built the first time a creep needs one.
+ * 
+ * Blocking or unblocking a tile only rebuilds the transitions and intra-cluster
+ * edges of the cluster it's in (and the neighbour across any border it sits
+ * on). The abstract search for each goal is kept until a change could alter
+ * it. Changes to a border replace its transitions and throw every search away,
+ * a change inside a cluster only drops the searches it would give a different
+ * cost to.
+ * 
+ * @author ephphatha
+ *
+ */
+public class HierarchicalPathfinder implements PathPlanner, EventSink, Comparable<Object> {
+  public static final int DEFAULT_CLUSTER_SIZE = 16;
+  
+  /**
+   * Boards with fewer tiles than this are better off with plain flow fields.
+   */
+  public static final int MIN_AREA = 256 * 256;
+  
+  /**
+   * Entrances wider than this get a transition at each end instead of one in
+   * the middle.
+   */
+  protected static final int MAX_ENTRANCE_WIDTH = 6;
+  
+  /**
+   * Cluster size to use on every board regardless of area, 0 when only large
+   * boards get this planner.
+   */
+  protected static volatile int forcedClusterSize = 0;
+  
+  protected final PathGrid grid;
+  
+  protected final int clusterSize;
+  protected final int clustersX;
+  protected final int clustersY;
+  
+  protected final Cluster[] clusters;
+  
+  /**
+   * Borders between each cluster and the one to its right, and the one below.
+   */
+  protected final Border[] horizontal;
+  protected final Border[] vertical;
+  
+  protected int[] freeIds;
+  protected int freeCount;
+  protected int idCapacity;
+  
+  protected volatile int version;
+  
+  protected Map<Integer, Goal> goals;
+  
+  protected static class Cluster {
+    public final int left;
+    public final int top;
+    public final int width;
+    public final int height;
+    
+    public volatile Node[] nodes;
+    
+    public Cluster(int left, int top, int width, int height) {
+      this.left = left;
+      this.top = top;
+      this.width = width;
+      this.height = height;
+      
+      this.nodes = new Node[0];
+    }
+  }
+  
+  protected static class Node {
+    public final int id;
+    public final int x;
+    public final int y;
+    public final Cluster cluster;
+    
+    /**
+     * The matching node on the other side of the border.
+     */
+    public Node partner;
+    
+    public Node[] links;
+    public int[] linkCosts;
+    
+    public volatile FlowField field;
+    
+    public Node(int id, int x, int y, Cluster cluster) {
+      this.id = id;
+      this.x = x;
+      this.y = y;
+      this.cluster = cluster;
+      
+      this.partner = null;
+      
+      this.links = new Node[0];
+      this.linkCosts = new int[0];
+      
+      this.field = null;
+    }
+  }
+  
+  protected static class Border {
+    public final Cluster a;
+    public final Cluster b;
+    public final boolean vertical;
+    
+    public Node[] sideA;
+    public Node[] sideB;
+    
+    public Border(Cluster a, Cluster b, boolean vertical) {
+      this.a = a;
+      this.b = b;
+      this.vertical = vertical;
+      
+      this.sideA = new Node[0];
+      this.sideB = new Node[0];
+    }
+  }
+  
+  /**
+   * Result of the abstract search towards a goal. Indexed by node id.
+   */
+  protected static class Search {
+    public final int version;
+    public final int[] cost;
+    public final Node[] next;
+    
+    public Search(int version, int capacity) {
+      this.version = version;
+      this.cost = new int[capacity];
+      this.next = new Node[capacity];
+      
+      Arrays.fill(this.cost, FlowField.UNREACHABLE);
+    }
+    
+    /**
+     * Checks the search against a cluster whose links have just been redone.
+     * Only that cluster's links changed, so the costs are still the shortest
+     * ones if every step of a route inside it costs what it did and none of
+     * its links now gives a shorter way to a node.
+     */
+    public boolean holdsFor(Cluster c) {
+      for (Node n : c.nodes) {
+        if (n.id >= this.cost.length) {
+          return false;
+        }
+      }
+      
+      for (Node n : c.nodes) {
+        Node via = this.next[n.id];
+        
+        if (via != null && via.cluster == c && this.linkCost(via, n) != this.cost[n.id] - this.cost[via.id]) {
+          return false;
+        }
+        
+        if (this.cost[n.id] == FlowField.UNREACHABLE) {
+          continue;
+        }
+        
+        for (int i = 0; i < n.links.length; ++i) {
+          if (this.cost[n.id] + n.linkCosts[i] < this.cost[n.links[i].id]) {
+            return false;
+          }
+        }
+      }
+      
+      return true;
+    }
+    
+    protected int linkCost(Node from, Node to) {
+      for (int i = 0; i < from.links.length; ++i) {
+        if (from.links[i] == to) {
+          return from.linkCosts[i];
+        }
+      }
+      
+      return FlowField.UNREACHABLE;
+    }
+  }
+  
+  protected class Goal implements PathPlanner.Steering {
+    protected final Cluster goalCluster;
+    protected final FlowField goalField;
+    
+    protected volatile Search search;
+    
+    public Goal(int goalX, int goalY) {
+      this.goalCluster = HierarchicalPathfinder.this.clusterAt(goalX, goalY);
+      this.goalField = new FlowField(
+          HierarchicalPathfinder.this.grid,
+          goalX,
+          goalY,
+          this.goalCluster.left,
+          this.goalCluster.top,
+          this.goalCluster.width,
+          this.goalCluster.height);
+      
+      this.search = null;
+    }
+    
+    protected Search getSearch() {
+      Search s = this.search;
+      
+      if (s == null || s.version != HierarchicalPathfinder.this.version) {
+        synchronized (HierarchicalPathfinder.this) {
+          s = this.search;
+          
+          if (s == null || s.version != HierarchicalPathfinder.this.version) {
+            s = HierarchicalPathfinder.this.search(this);
+            this.search = s;
+          }
+        }
+      }
+      
+      return s;
+    }
+    
+    @Override
+    public boolean getSteeringTarget(float x, float y, Vector2f target) {
+      int tx = (int) Math.floor(x);
+      int ty = (int) Math.floor(y);
+      
+      if (!HierarchicalPathfinder.this.grid.contains(tx, ty)) {
+        return false;
+      }
+      
+      Search s = this.getSearch();
+      Cluster c = HierarchicalPathfinder.this.clusterAt(tx, ty);
+      
+      int best = FlowField.UNREACHABLE;
+      int bestLocal = FlowField.UNREACHABLE;
+      Node via = null;
+      
+      if (c == this.goalCluster) {
+        best = this.goalField.getCost(tx, ty);
+      }
+      
+      // A node created after the search was run (or reusing the id of one
+      // that was dropped) may be read with a stale cost, that only lasts until
+      // the next tick when the search is redone.
+      for (Node n : c.nodes) {
+        if (n.id >= s.cost.length || s.cost[n.id] == FlowField.UNREACHABLE) {
+          continue;
+        }
+        
+        int local = HierarchicalPathfinder.this.getLocalField(n).getCost(tx, ty);
+        
+        if (local != FlowField.UNREACHABLE && local + s.cost[n.id] < best) {
+          best = local + s.cost[n.id];
+          bestLocal = local;
+          via = n;
+        }
+      }
+      
+      if (via == null) {
+        return c == this.goalCluster && this.goalField.getSteeringTarget(x, y, target);
+      }
+      
+      if (bestLocal > 0) {
+        return via.field.getSteeringTarget(x, y, target);
+      }
+      
+      // Standing on the transition, move on to the next node on the route.
+      Node next = s.next[via.id];
+      
+      // Corner tiles can hold a transition for each border they're on.
+      while (next != null && next.x == tx && next.y == ty) {
+        next = s.next[next.id];
+      }
+      
+      if (next == null) {
+        return this.goalField.getSteeringTarget(x, y, target);
+      } else if (next.cluster != c) {
+        target.set(next.x + 0.5f, next.y + 0.5f);
+        return true;
+      } else {
+        return HierarchicalPathfinder.this.getLocalField(next).getSteeringTarget(x, y, target);
+      }
+    }
+  }
+  
+  public HierarchicalPathfinder(PathGrid grid) {
+    this(grid, HierarchicalPathfinder.DEFAULT_CLUSTER_SIZE);
+  }
+  
+  public HierarchicalPathfinder(PathGrid grid, int clusterSize) {
+    this.grid = grid;
+    
+    this.clusterSize = clusterSize;
+    this.clustersX = (grid.getWidth() + clusterSize - 1) / clusterSize;
+    this.clustersY = (grid.getHeight() + clusterSize - 1) / clusterSize;
+    
+    this.clusters = new Cluster[this.clustersX * this.clustersY];
+    
+    for (int cy = 0; cy < this.clustersY; ++cy) {
+      for (int cx = 0; cx < this.clustersX; ++cx) {
+        int left = cx * clusterSize;
+        int top = cy * clusterSize;
+        
+        this.clusters[cy * this.clustersX + cx] = new Cluster(
+            left,
+            top,
+            Math.min(clusterSize, grid.getWidth() - left),
+            Math.min(clusterSize, grid.getHeight() - top));
+      }
+    }
+    
+    this.horizontal = new Border[this.clusters.length];
+    this.vertical = new Border[this.clusters.length];
+    
+    this.freeIds = new int[16];
+    this.freeCount = 0;
+    this.idCapacity = 0;
+    
+    this.goals = new ConcurrentHashMap<Integer, Goal>();
+    
+    synchronized (this) {
+      for (int cy = 0; cy < this.clustersY; ++cy) {
+        for (int cx = 0; cx < this.clustersX; ++cx) {
+          int i = cy * this.clustersX + cx;
+          
+          if (cx + 1 < this.clustersX) {
+            this.horizontal[i] = new Border(this.clusters[i], this.clusters[i + 1], false);
+            this.rebuildBorder(this.horizontal[i]);
+          }
+          
+          if (cy + 1 < this.clustersY) {
+            this.vertical[i] = new Border(this.clusters[i], this.clusters[i + this.clustersX], true);
+            this.rebuildBorder(this.vertical[i]);
+          }
+        }
+      }
+      
+      for (int cy = 0; cy < this.clustersY; ++cy) {
+        for (int cx = 0; cx < this.clustersX; ++cx) {
+          this.relink(cx, cy);
+        }
+      }
+      
+      this.version = grid.getVersion();
+    }
+    
+    this.grid.addSink(this);
+  }
+  
+  /**
+   * Builds the planner suited to the size of the grid, this one for large
+   * boards and a FlowFieldCache otherwise.
+   */
+  public static PathPlanner create(PathGrid grid) {
+    int clusterSize = HierarchicalPathfinder.forcedClusterSize;
+    
+    if (clusterSize > 0) {
+      return new HierarchicalPathfinder(grid, clusterSize);
+    } else if (grid.getWidth() * grid.getHeight() >= HierarchicalPathfinder.MIN_AREA) {
+      return new HierarchicalPathfinder(grid);
+    } else {
+      return new FlowFieldCache(grid);
+    }
+  }
+  
+  /**
+   * Makes create() use this planner on every board, so it can be exercised on
+   * the small levels.
+   * 
+   * @param clusterSize the size of the clusters to use, 0 to go back to only
+   *                    using it on large boards.
+   */
+  public static void setForcedClusterSize(int clusterSize) {
+    HierarchicalPathfinder.forcedClusterSize = Math.max(clusterSize, 0);
+  }
+  
+  public static int getForcedClusterSize() {
+    return HierarchicalPathfinder.forcedClusterSize;
+  }
+  
+  public PathGrid getGrid() {
+    return this.grid;
+  }
+  
+  @Override
+  public Steering getSteering(Vector2f goal) {
+    int x = (int) Math.floor(goal.x);
+    int y = (int) Math.floor(goal.y);
+    
+    if (!this.grid.contains(x, y)) {
+      return null;
+    }
+    
+    Integer key = Integer.valueOf(y * this.grid.getWidth() + x);
+    
+    Goal r = this.goals.get(key);
+    
+    if (r == null) {
+      synchronized (this) {
+        r = this.goals.get(key);
+        
+        if (r == null) {
+          r = new Goal(x, y);
+          this.goals.put(key, r);
+        }
+      }
+    }
+    
+    return r;
+  }
+  
+  @Override
+  public void handleEvent(Event event) {
+    if (event instanceof PathModEvent) {
+      PathModEvent.Data d = (PathModEvent.Data) event.value;
+      
+      this.cellChanged(d.position.x, d.position.y, d.type == PathModEvent.Data.Type.UNBLOCKED);
+    }
+  }
+  
+  protected synchronized void cellChanged(int x, int y, boolean pathable) {
+    if (!this.grid.contains(x, y)) {
+      return;
+    }
+    
+    int cx = x / this.clusterSize;
+    int cy = y / this.clusterSize;
+    int i = cy * this.clustersX + cx;
+    Cluster c = this.clusters[i];
+    
+    // Local fields that survive the rebuild just need patching.
+    for (Node n : c.nodes) {
+      if (n.field != null) {
+        n.field.cellChanged(x, y, pathable);
+      }
+    }
+    
+    for (Goal r : this.goals.values()) {
+      if (r.goalCluster == c) {
+        r.goalField.cellChanged(x, y, pathable);
+      }
+    }
+    
+    boolean left = x == c.left && cx > 0;
+    boolean right = x == c.left + c.width - 1 && cx + 1 < this.clustersX;
+    boolean up = y == c.top && cy > 0;
+    boolean down = y == c.top + c.height - 1 && cy + 1 < this.clustersY;
+    
+    if (left) {
+      this.rebuildBorder(this.horizontal[i - 1]);
+    }
+    if (right) {
+      this.rebuildBorder(this.horizontal[i]);
+    }
+    if (up) {
+      this.rebuildBorder(this.vertical[i - this.clustersX]);
+    }
+    if (down) {
+      this.rebuildBorder(this.vertical[i]);
+    }
+    
+    this.relink(cx, cy);
+    
+    if (left) {
+      this.relink(cx - 1, cy);
+    }
+    if (right) {
+      this.relink(cx + 1, cy);
+    }
+    if (up) {
+      this.relink(cx, cy - 1);
+    }
+    if (down) {
+      this.relink(cx, cy + 1);
+    }
+    
+    if (left || right || up || down) {
+      // The transitions were replaced, so node ids in every search are stale.
+      this.version = this.grid.getVersion();
+    } else {
+      for (Goal r : this.goals.values()) {
+        Search s = r.search;
+        
+        if (s != null && (r.goalCluster == c || !s.holdsFor(c))) {
+          r.search = null;
+        }
+      }
+    }
+  }
+  
+  protected Cluster clusterAt(int x, int y) {
+    return this.clusters[(y / this.clusterSize) * this.clustersX + x / this.clusterSize];
+  }
+  
+  protected FlowField getLocalField(Node n) {
+    FlowField f = n.field;
+    
+    if (f == null) {
+      synchronized (this) {
+        f = n.field;
+        
+        if (f == null) {
+          f = this.createLocalField(n);
+          n.field = f;
+        }
+      }
+    }
+    
+    return f;
+  }
+  
+  protected FlowField createLocalField(Node n) {
+    return new FlowField(this.grid, n.x, n.y, n.cluster.left, n.cluster.top, n.cluster.width, n.cluster.height);
+  }
+  
+  /**
+   * Replaces the transitions across a border with ones matching the current
+   * state of the grid.
+   */
+  protected void rebuildBorder(Border b) {
+    for (Node n : b.sideA) {
+      this.releaseId(n.id);
+    }
+    for (Node n : b.sideB) {
+      this.releaseId(n.id);
+    }
+    
+    List<Node> sideA = new ArrayList<Node>();
+    List<Node> sideB = new ArrayList<Node>();
+    
+    int length;
+    int ax, ay, bx, by;
+    
+    if (b.vertical) {
+      length = b.a.width;
+      ax = b.a.left;
+      ay = b.a.top + b.a.height - 1;
+      bx = b.b.left;
+      by = b.b.top;
+    } else {
+      length = b.a.height;
+      ax = b.a.left + b.a.width - 1;
+      ay = b.a.top;
+      bx = b.b.left;
+      by = b.b.top;
+    }
+    
+    int start = -1;
+    
+    for (int i = 0; i <= length; ++i) {
+      boolean open = false;
+      
+      if (i < length) {
+        if (b.vertical) {
+          open = this.grid.isPathable(ax + i, ay) && this.grid.isPathable(bx + i, by);
+        } else {
+          open = this.grid.isPathable(ax, ay + i) && this.grid.isPathable(bx, by + i);
+        }
+      }
+      
+      if (open && start < 0) {
+        start = i;
+      } else if (!open && start >= 0) {
+        int end = i - 1;
+        
+        if (end - start + 1 < HierarchicalPathfinder.MAX_ENTRANCE_WIDTH) {
+          this.addTransition(b, (start + end) / 2, ax, ay, bx, by, sideA, sideB);
+        } else {
+          this.addTransition(b, start, ax, ay, bx, by, sideA, sideB);
+          this.addTransition(b, end, ax, ay, bx, by, sideA, sideB);
+        }
+        
+        start = -1;
+      }
+    }
+    
+    b.sideA = sideA.toArray(new Node[sideA.size()]);
+    b.sideB = sideB.toArray(new Node[sideB.size()]);
+  }
+  
+  protected void addTransition(Border b, int offset, int ax, int ay, int bx, int by, List<Node> sideA, List<Node> sideB) {
+    Node na;
+    Node nb;
+    
+    if (b.vertical) {
+      na = new Node(this.allocateId(), ax + offset, ay, b.a);
+      nb = new Node(this.allocateId(), bx + offset, by, b.b);
+    } else {
+      na = new Node(this.allocateId(), ax, ay + offset, b.a);
+      nb = new Node(this.allocateId(), bx, by + offset, b.b);
+    }
+    
+    na.partner = nb;
+    nb.partner = na;
+    
+    sideA.add(na);
+    sideB.add(nb);
+  }
+  
+  /**
+   * Collects the transitions on every border of a cluster and works out the
+   * cost of travelling between each pair of them inside the cluster.
+   */
+  protected void relink(int cx, int cy) {
+    int i = cy * this.clustersX + cx;
+    Cluster c = this.clusters[i];
+    
+    List<Node> nodes = new ArrayList<Node>();
+    
+    if (cx > 0) {
+      nodes.addAll(Arrays.asList(this.horizontal[i - 1].sideB));
+    }
+    if (cx + 1 < this.clustersX) {
+      nodes.addAll(Arrays.asList(this.horizontal[i].sideA));
+    }
+    if (cy > 0) {
+      nodes.addAll(Arrays.asList(this.vertical[i - this.clustersX].sideB));
+    }
+    if (cy + 1 < this.clustersY) {
+      nodes.addAll(Arrays.asList(this.vertical[i].sideA));
+    }
+    
+    Node[] ns = nodes.toArray(new Node[nodes.size()]);
+    
+    for (Node n : ns) {
+      FlowField f = n.field != null ? n.field : this.createLocalField(n);
+      
+      int count = 0;
+      Node[] links = new Node[ns.length];
+      int[] costs = new int[ns.length];
+      
+      for (Node m : ns) {
+        int cost = f.getCost(m.x, m.y);
+        
+        if (m != n && cost != FlowField.UNREACHABLE) {
+          links[count] = m;
+          costs[count] = cost;
+          count++;
+        }
+      }
+      
+      n.links = Arrays.copyOf(links, count);
+      n.linkCosts = Arrays.copyOf(costs, count);
+    }
+    
+    c.nodes = ns;
+  }
+  
+  /**
+   * Dijkstra's algorithm over the abstract graph, outwards from the nodes that
+   * can reach the goal without leaving its cluster.
+   */
+  protected Search search(Goal r) {
+    Search s = new Search(this.version, this.idCapacity);
+    FlowField.Frontier frontier = new FlowField.Frontier(this.idCapacity);
+    Node[] byId = new Node[this.idCapacity];
+    
+    for (Cluster c : this.clusters) {
+      for (Node n : c.nodes) {
+        byId[n.id] = n;
+      }
+    }
+    
+    for (Node n : r.goalCluster.nodes) {
+      int cost = r.goalField.getCost(n.x, n.y);
+      
+      if (cost != FlowField.UNREACHABLE) {
+        s.cost[n.id] = cost;
+        frontier.push(cost, n.id);
+      }
+    }
+    
+    while (!frontier.isEmpty()) {
+      long e = frontier.pop();
+      Node n = byId[FlowField.Frontier.tile(e)];
+      int g = FlowField.Frontier.cost(e);
+      
+      if (g != s.cost[n.id]) {
+        continue;
+      }
+      
+      for (int i = 0; i < n.links.length; ++i) {
+        this.relax(s, frontier, n, n.links[i], g + n.linkCosts[i]);
+      }
+      
+      if (n.partner != null) {
+        this.relax(s, frontier, n, n.partner, g + FlowField.COST[0]);
+      }
+    }
+    
+    return s;
+  }
+  
+  protected void relax(Search s, FlowField.Frontier frontier, Node from, Node to, int cost) {
+    if (cost < s.cost[to.id]) {
+      s.cost[to.id] = cost;
+      s.next[to.id] = from;
+      frontier.push(cost, to.id);
+    }
+  }
+  
+  protected int allocateId() {
+    if (this.freeCount > 0) {
+      return this.freeIds[--this.freeCount];
+    }
+    
+    return this.idCapacity++;
+  }
+  
+  protected void releaseId(int id) {
+    if (this.freeCount == this.freeIds.length) {
+      this.freeIds = Arrays.copyOf(this.freeIds, this.freeIds.length * 2);
+    }
+    
+    this.freeIds[this.freeCount++] = id;
+  }
+
+  @Override
+  public int compareTo(Object o) {
+    return this.hashCode() - o.hashCode();
+  }
+}
@@ -23,19 +23,19 @@
  */
 package au.edu.csu.bofsa;
 
-import org.newdawn.slick.GameContainer;
-import org.newdawn.slick.SlickException;
-import org.newdawn.slick.state.StateBasedGame;
+import au.edu.csu.bofsa.Behaviours.SeparationBehaviour;
 
 /**
  * @author ephphatha
  *
  */
 public class InGameStateDP extends InGameStateST {
- 
+
   private int maxThreads;
 
   private Scheduler scheduler;
+  
+  private Scheduler.Mode schedulingMode;
 
   @SuppressWarnings("unused")
   private InGameStateDP() {
@@ -48,6 +48,19 @@ public class InGameStateDP extends InGameStateST {
     this.maxThreads = maxThreads;
 
     this.scheduler = new Scheduler();
+    
+    this.schedulingMode = Scheduler.Mode.UNORDERED;
+  }
+  
+  /**
+   * Takes effect the next time the state is entered.
+   */
+  public void setSchedulingMode(Scheduler.Mode mode) {
+    this.schedulingMode = mode;
+  }
+  
+  public Scheduler getScheduler() {
+    return this.scheduler;
   }
 
   @Override
@@ -56,51 +69,74 @@ public class InGameStateDP extends InGameStateST {
   }
 
   @Override
-  public void enter(GameContainer container, StateBasedGame game)
-      throws SlickException {
-    super.enter(container, game);
+  protected void begin(GameLevelST level) {
+    super.begin(level);
     
-    this.scheduler.start(Scheduler.Mode.UNORDERED, this.maxThreads - 2);
-
-    this.updateThread.start();
+    this.scheduler.start(this.schedulingMode, this.maxThreads - 2);
+    
+    this.scheduler.getLogger().startLogging("DataParallel", this.scheduler.numThreads());
+    this.scheduler.registerMetrics("DataParallel");
   }
   
   @Override
-  public void leave(GameContainer container, StateBasedGame game)
-      throws SlickException {
+  protected void end() {
     this.scheduler.stop();
     
-    super.leave(container, game);
+    this.scheduler.getLogger().stopLogging();
+    
+    super.end();
   }
 
   @Override
   public void update(final float delta) {
     // Game logic
 
-    this.creeps.addAll(this.newCreeps);
-    this.newCreeps.clear();
-    
     this.map.update(this, delta);
     
-    for (Tower t : this.towers) {
-      this.scheduler.call(t);
-    }
+    final EntityList<Tower> towers = this.towers;
     
-    this.waitForPendingTasks();
+    this.scheduler.parallelFor("Towers", towers.size(), new Scheduler.Range() {
+      @Override
+      public void run(int from, int to) {
+        for (int i = from; i < to; ++i) {
+          towers.get(i).call();
+        }
+      }
+    });
     
-    for (Creep c : this.creeps) {
-      this.scheduler.call(c);
-    }
-
-    this.waitForPendingTasks();
+    this.updateBroadphase();
+    
+    final EntityList<Creep> creeps = this.creeps;
+    
+    this.scheduler.parallelFor("Creeps", creeps.size(), new Scheduler.Range() {
+      @Override
+      public void run(int from, int to) {
+        for (int i = from; i < to; ++i) {
+          creeps.get(i).update(delta);
+        }
+      }
+    });
 
-    this.creeps.removeAll(this.deadCreeps);
-    this.deadCreeps.clear();
+    this.applyChanges();
   }
 
-  private void waitForPendingTasks() {
-    while (this.scheduler.isBusy() && !Thread.currentThread().isInterrupted()) {
-      Thread.yield();
-    }
+  /**
+   * Splits the separation queries into runs of neighbouring grid cells and
+   * spreads them across the scheduler.
+   */
+  @Override
+  protected void updateBroadphase() {
+    final SpatialGrid grid = SpatialGrid.build(this.creepPositions.read(), SeparationBehaviour.SEPARATION_RADIUS);
+    
+    this.scheduler.parallelFor("Broadphase", grid.size(), new Scheduler.Range() {
+      @Override
+      public void run(int from, int to) {
+        grid.computeSeparation(from, to);
+      }
+    });
+    
+    grid.setResolved();
+    
+    this.creepGrid.write(grid);
   }
 }
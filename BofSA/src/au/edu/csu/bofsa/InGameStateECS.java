@@ -0,0 +1,371 @@
+/**
+ *   The MIT License
+ *
+ *  Copyright 2011 Andrew James <ephphatha@thelettereph.com>.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package au.edu.csu.bofsa;
+
+import java.awt.Dimension;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.newdawn.slick.Color;
+import org.newdawn.slick.GameContainer;
+import org.newdawn.slick.Graphics;
+import org.newdawn.slick.Input;
+import org.newdawn.slick.SlickException;
+import org.newdawn.slick.geom.Rectangle;
+import org.newdawn.slick.geom.Vector2f;
+import org.newdawn.slick.state.StateBasedGame;
+
+import au.edu.csu.bofsa.Behaviours.ActorRenderBehaviour;
+import au.edu.csu.bofsa.Behaviours.CreepFactoryBehaviour;
+import au.edu.csu.bofsa.Behaviours.SeparationBehaviour;
+import au.edu.csu.bofsa.Behaviours.TowerFactoryBehaviour;
+
+/**
+ * Plays the same levels as the other states but keeps creeps in a
+ * CreepStore instead of behaviour graphs, with each system pass split into
+ * runs of slots with the scheduler's parallelFor.
+ * 
+ * @author ephphatha
+ *
+ */
+public class InGameStateECS extends InGameStateST {
+  
+  private static final float TOWER_FIRE_RATE = 2.0f;
+  private static final float TOWER_DAMAGE = 8.0f;
+  private static final float TOWER_RANGE = 4.0f;
+  
+  protected static ActorRenderBehaviour.SolidFill redFill = new ActorRenderBehaviour.SolidFill(Color.red);
+  protected static ActorRenderBehaviour.SolidFill greenFill = new ActorRenderBehaviour.SolidFill(Color.green);
+  
+  private int maxThreads;
+
+  private Scheduler scheduler;
+  
+  private Scheduler.Mode schedulingMode;
+  
+  protected CreepStore store;
+  
+  protected Queue<CopyablePoint> newTowers;
+  protected List<CopyablePoint> towerTiles;
+  
+  protected float[] towerX;
+  protected float[] towerY;
+  protected long[] towerLastShot;
+  protected int towerCount;
+  
+  protected volatile float[] creepSnapshot;
+  protected volatile boolean snapshotRequested;
+  
+  protected Sprite creepSprite;
+  protected Sprite towerSprite;
+  
+  @SuppressWarnings("unused")
+  private InGameStateECS() {
+    this(0, Integer.MAX_VALUE);
+  }
+  
+  public InGameStateECS(int id, int maxThreads) {
+    super(id);
+    
+    this.maxThreads = maxThreads;
+
+    this.scheduler = new Scheduler();
+    
+    this.schedulingMode = Scheduler.Mode.UNORDERED;
+    
+    this.newTowers = new ConcurrentLinkedQueue<CopyablePoint>();
+    this.towerTiles = new CopyOnWriteArrayList<CopyablePoint>();
+    
+    this.towerX = new float[0];
+    this.towerY = new float[0];
+    this.towerLastShot = new long[0];
+    this.towerCount = 0;
+    
+    this.creepSnapshot = new float[0];
+  }
+
+  @Override
+  public int getID() {
+    return super.getID();
+  }
+
+  /**
+   * Takes effect the next time the state is entered.
+   */
+  public void setSchedulingMode(Scheduler.Mode mode) {
+    this.schedulingMode = mode;
+  }
+  
+  public Scheduler getScheduler() {
+    return this.scheduler;
+  }
+
+  @Override
+  protected void begin(GameLevelST level) {
+    super.begin(level);
+    
+    this.store = new CreepStore(this.map.getPathPlanner());
+    
+    this.creepSprite = CreepFactoryBehaviour.getSprite();
+    this.towerSprite = TowerFactoryBehaviour.getSprite();
+    
+    this.snapshotRequested = true;
+    
+    this.scheduler.start(this.schedulingMode, this.maxThreads - 2);
+    
+    this.scheduler.getLogger().startLogging("EntitySystem", this.scheduler.numThreads());
+    this.scheduler.registerMetrics("EntitySystem");
+  }
+  
+  @Override
+  protected void end() {
+    this.scheduler.stop();
+    
+    this.scheduler.getLogger().stopLogging();
+    
+    super.end();
+    
+    this.store = null;
+    
+    this.newTowers.clear();
+    this.towerTiles.clear();
+    this.towerCount = 0;
+    
+    this.creepSnapshot = new float[0];
+  }
+  
+  @Override
+  public int getCreepCount() {
+    CreepStore s = this.store;
+    
+    return s != null ? s.size() : 0;
+  }
+  
+  @Override
+  public int getTowerCount() {
+    return this.towerCount;
+  }
+
+  @Override
+  public void render(GameContainer container, StateBasedGame game, Graphics g)
+      throws SlickException {
+    if (this.map != null) {
+      Dimension tile = new Dimension(container.getWidth() / this.map.getWidth(), container.getHeight() / this.map.getHeight());
+
+      this.map.render(container, g);
+      
+      Rectangle r = new Rectangle(0, 0, tile.width, tile.height);
+      
+      for (CopyablePoint p : this.towerTiles) {
+        r.setLocation(p.x * tile.width, p.y * tile.height);
+        this.towerSprite.draw(g, r);
+      }
+      
+      float[] s = this.creepSnapshot;
+      this.snapshotRequested = true;
+      
+      float alpha = this.getInterpolation();
+      
+      for (int j = 0; j < s.length; j += CreepStore.SNAPSHOT_STRIDE) {
+        float x = s[j] + (s[j + 2] - s[j]) * alpha;
+        float y = s[j + 1] + (s[j + 3] - s[j + 1]) * alpha;
+        
+        r.setBounds(x * tile.width - tile.width / 4.0f, y * tile.height - tile.height / 4.0f, tile.width / 2.0f, tile.height / 2.0f);
+        
+        this.creepSprite.setFrameIndex((int) s[j + 4] * 4);
+        this.creepSprite.draw(g, r);
+        
+        r.setHeight(r.getHeight() * 0.1f);
+        
+        g.draw(r, InGameStateECS.redFill);
+        
+        r.setWidth(r.getWidth() * Math.max(0.0f, s[j + 5]));
+        
+        g.draw(r, InGameStateECS.greenFill);
+      }
+      
+      this.drawTickStats(g);
+    }
+  }
+
+  @Override
+  public void update(GameContainer container, StateBasedGame game, int delta)
+      throws SlickException {
+    Input input = container.getInput();
+
+    Vector2f relativeInput = new Vector2f((float) input.getMouseX() / (float) container.getWidth(),
+                                          (float) input.getMouseY() / (float) container.getHeight());
+    
+    if (input.isMousePressed(Input.MOUSE_LEFT_BUTTON)) {
+      CopyablePoint tile = new CopyablePoint((int) Math.floor(relativeInput.x * this.map.getWidth()),
+                                             (int) Math.floor(relativeInput.y * this.map.getHeight()));
+      
+      ReplayRecorder.record(tile);
+      this.placeTower(tile);
+    }
+
+    if (input.isKeyPressed(Input.KEY_ESCAPE)) {
+      game.enterState(BofSA.States.MAINMENU.ordinal());
+    }
+  }
+  
+  @Override
+  public boolean placeTower(CopyablePoint towerPos) {
+    if (this.map.placeTower(towerPos)) {
+      this.towerTiles.add(towerPos);
+      this.newTowers.add(towerPos);
+      
+      return true;
+    }
+    
+    return false;
+  }
+
+  @Override
+  public void update(final float delta) {
+    // Game logic
+    
+    final CreepStore creeps = this.store;
+    
+    // Creeps spawned this tick can be seen and shot straight away but only
+    // start moving next tick, the same as in the other tick based states.
+    int moving = creeps.size();
+    
+    this.map.update(this, delta);
+    
+    this.updateTowers(delta);
+    
+    this.updateBroadphase();
+    
+    this.scheduler.parallelFor("Creeps", moving, new Scheduler.Range() {
+      @Override
+      public void run(int from, int to) {
+        creeps.updateHealth(from, to);
+        creeps.updateVelocity(from, to);
+        creeps.move(from, to, delta);
+        creeps.updateWaypoints(from, to);
+      }
+    });
+    
+    creeps.compact();
+    
+    // Likewise new towers start firing next tick.
+    this.addNewTowers();
+    
+    if (this.snapshotRequested) {
+      this.snapshotRequested = false;
+      this.creepSnapshot = creeps.snapshot();
+    }
+  }
+
+  /**
+   * Builds the broadphase straight from the position arrays and scatters
+   * each creep's separation back into its slot.
+   */
+  @Override
+  protected void updateBroadphase() {
+    final CreepStore creeps = this.store;
+    final SpatialGrid grid = SpatialGrid.build(creeps.getPositionsX(), creeps.getPositionsY(), creeps.size(), SeparationBehaviour.SEPARATION_RADIUS);
+    
+    this.scheduler.parallelFor("Broadphase", grid.size(), new Scheduler.Range() {
+      @Override
+      public void run(int from, int to) {
+        grid.computeSeparation(from, to);
+        
+        for (int i = from; i < to; ++i) {
+          creeps.setSeparation(grid.getId(i), grid.getSeparationX(i), grid.getSeparationY(i));
+        }
+      }
+    });
+  }
+
+  @Override
+  public void spawnCreep(
+      int archetype,
+      CopyableVector2f position,
+      Route route) {
+    this.store.add(ArchetypeRegistry.getDefault().get(archetype), position.x, position.y, route);
+  }
+  
+  /**
+   * Towers share creep health so they run one after another, each firing as
+   * many shots as its rate allows this tick. Reloading is timed against the
+   * clock the same way AttackBehaviour does it, so both fire on the same
+   * ticks.
+   */
+  protected void updateTowers(float delta) {
+    long current = this.clock.nanoTime();
+    long nanosPerShot = InGameStateECS.getNanosPerShot();
+    
+    for (int t = 0; t < this.towerCount; ++t) {
+      boolean fired = true;
+      
+      while (fired && current - this.towerLastShot[t] > nanosPerShot) {
+        fired = this.store.damageFirstInRange(this.towerX[t], this.towerY[t], InGameStateECS.TOWER_RANGE, InGameStateECS.TOWER_DAMAGE);
+        
+        if (fired) {
+          this.towerLastShot[t] += nanosPerShot;
+        }
+      }
+      
+      if (!fired) {
+        this.towerLastShot[t] = current - nanosPerShot;
+      }
+    }
+  }
+  
+  private static long getNanosPerShot() {
+    return (long) ((1.0f / InGameStateECS.TOWER_FIRE_RATE) * 1.0E9f);
+  }
+  
+  private void addNewTowers() {
+    while (!this.newTowers.isEmpty()) {
+      CopyablePoint p = this.newTowers.poll();
+      
+      if (this.towerCount >= this.towerX.length) {
+        int capacity = Math.max(8, this.towerX.length * 2);
+        
+        float[] x = new float[capacity];
+        float[] y = new float[capacity];
+        long[] c = new long[capacity];
+        
+        System.arraycopy(this.towerX, 0, x, 0, this.towerCount);
+        System.arraycopy(this.towerY, 0, y, 0, this.towerCount);
+        System.arraycopy(this.towerLastShot, 0, c, 0, this.towerCount);
+        
+        this.towerX = x;
+        this.towerY = y;
+        this.towerLastShot = c;
+      }
+      
+      this.towerX[this.towerCount] = p.x;
+      this.towerY[this.towerCount] = p.y;
+      // Ready to fire straight away, same as a new tower.
+      this.towerLastShot[this.towerCount] = this.clock.nanoTime() - InGameStateECS.getNanosPerShot();
+      this.towerCount++;
+    }
+  }
+}
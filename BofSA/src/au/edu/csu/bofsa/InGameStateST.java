@@ -23,10 +23,16 @@
  */
 package au.edu.csu.bofsa;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.management.ObjectName;
 
 import org.newdawn.slick.GameContainer;
 import org.newdawn.slick.Graphics;
@@ -37,6 +43,7 @@ import org.newdawn.slick.state.GameState;
 import org.newdawn.slick.state.StateBasedGame;
 
 import au.edu.csu.bofsa.Behaviours.CreepFactoryBehaviour;
+import au.edu.csu.bofsa.Behaviours.SeparationBehaviour;
 import au.edu.csu.bofsa.Behaviours.TowerFactoryBehaviour;
 import au.edu.csu.bofsa.Events.Event;
 import au.edu.csu.bofsa.Events.EventSink;
@@ -46,22 +53,64 @@ import au.edu.csu.bofsa.Signals.Signal;
  * @author ephphatha
  *
  */
-public class InGameStateST implements Comparable<Object>, CreepManager, EventSink, GameState, Runnable {
+public class InGameStateST implements Comparable<Object>, CreepManager, EventSink, GameState, GameStateMetrics.Source, Runnable {
+  public static final float DEFAULT_TICK_RATE = 30.0f;
+  public static final int DEFAULT_MAX_CATCH_UP = 5;
+  
+  protected static final int SPAWNS_SPAN = Logger.getTypeId("Spawns");
+  protected static final int TOWERS_SPAN = Logger.getTypeId("Towers");
+  protected static final int BROADPHASE_SPAN = Logger.getTypeId("Broadphase");
+  protected static final int CREEPS_SPAN = Logger.getTypeId("Creeps");
+  protected static final int CHANGES_SPAN = Logger.getTypeId("ApplyChanges");
+  
   private int stateID;
   
   protected GameLevelST map;
   
-  protected List<Tower> towers;
+  protected EntityList<Tower> towers;
+  
+  protected EntityList<Creep> creeps;
+  
+  protected Pool<Tower> towerPool;
+  protected List<Pool<Creep>> creepPools;
   
-  protected Queue<Creep> newCreeps;
-  protected List<Creep> creeps;
   protected Queue<Creep> deadCreeps;
+  private Set<Object> deadSignals;
+  
+  /**
+   * Creeps that died while the renderer's snapshot could still hold them.
+   */
+  protected Queue<RetiredCreeps> retiredCreeps;
   
   protected Signal<CopyableDimension> tileSize;
 
   protected Signal<CopyableList<Pipe<CopyableVector2f>>> creepPositions;
+  
+  protected Signal<SpatialGrid> creepGrid;
 
   protected Thread updateThread;
+  
+  protected SimClock clock;
+  protected float tickRate;
+  protected int maxCatchUp;
+  protected TickStats tickStats;
+  protected volatile long lastTickTime;
+  
+  protected ObjectName metricsName;
+
+  /**
+   * Creeps that died together, and the creep list's snapshot count when they
+   * were taken out of it.
+   */
+  protected static class RetiredCreeps {
+    public final List<Creep> creeps;
+    public final int snapshot;
+    
+    public RetiredCreeps(List<Creep> creeps, int snapshot) {
+      this.creeps = creeps;
+      this.snapshot = snapshot;
+    }
+  }
 
   @SuppressWarnings("unused")
   private InGameStateST() {
@@ -71,14 +120,63 @@ public class InGameStateST implements Comparable<Object>, CreepManager, EventSin
   public InGameStateST(int id) {
     this.stateID = id;
     
-    this.towers = new CopyOnWriteArrayList<Tower>();
-    this.creeps = new CopyOnWriteArrayList<Creep>();
+    this.towers = new EntityList<Tower>();
+    this.creeps = new EntityList<Creep>();
+    
+    this.towerPool = new Pool<Tower>();
     this.deadCreeps = new ConcurrentLinkedQueue<Creep>();
-    this.newCreeps = new ConcurrentLinkedQueue<Creep>();
+    this.deadSignals = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+    this.retiredCreeps = new ArrayDeque<RetiredCreeps>();
+    
+    this.creepPools = new ArrayList<Pool<Creep>>();
+    
+    // One pool per archetype, so a recycled creep's stats never need changing.
+    for (int i = 0; i < ArchetypeRegistry.getDefault().size(); ++i) {
+      this.creepPools.add(new Pool<Creep>());
+    }
 
     this.creepPositions = new Signal<CopyableList<Pipe<CopyableVector2f>>>(new CopyableList<Pipe<CopyableVector2f>>());
     
+    this.creepGrid = new Signal<SpatialGrid>(SpatialGrid.build(this.creepPositions.read(), SeparationBehaviour.SEPARATION_RADIUS));
+    
     this.tileSize = new Signal<CopyableDimension>(new CopyableDimension(1,1));
+    
+    this.clock = SimClock.getDefault();
+    this.tickRate = InGameStateST.DEFAULT_TICK_RATE;
+    this.maxCatchUp = InGameStateST.DEFAULT_MAX_CATCH_UP;
+    this.tickStats = new TickStats();
+  }
+  
+  /**
+   * @param ticksPerSecond how often the game logic runs, takes effect the
+   *                       next time the state is entered.
+   */
+  public void setTickRate(float ticksPerSecond) {
+    if (ticksPerSecond > 0) {
+      this.tickRate = ticksPerSecond;
+    }
+  }
+  
+  /**
+   * @param steps how many ticks may be run back to back to catch up after a
+   *              stall, anything further behind than that is dropped.
+   */
+  public void setMaxCatchUp(int steps) {
+    this.maxCatchUp = Math.max(1, steps);
+  }
+  
+  public TickStats getTickStats() {
+    return this.tickStats;
+  }
+  
+  @Override
+  public int getCreepCount() {
+    return this.creeps.size();
+  }
+  
+  @Override
+  public int getTowerCount() {
+    return this.towers.size();
   }
 
   @Override
@@ -97,17 +195,35 @@ public class InGameStateST implements Comparable<Object>, CreepManager, EventSin
     CreepFactoryBehaviour.loadResources();
     TowerFactoryBehaviour.loadResources();
     
+    GameLevelST level = null;
+    
     try {
-      this.map = new GameLevelST("test");
+      level = new GameLevelST("test");
     } catch (SlickException e) {
       e.printStackTrace();
     }
     
+    this.begin(level);
+    
+    this.updateThread.start();
+  }
+  
+  /**
+   * Sets up everything but the display and the update thread's loop, the
+   * headless runner calls this then drives update() itself.
+   */
+  protected void begin(GameLevelST level) {
+    this.map = level;
+    this.clock = SimClock.getDefault();
+    
+    this.tickStats.reset();
+    SpanProfiler.reset();
+    
+    this.metricsName = Metrics.register("GameState", this.getClass().getSimpleName(), new GameStateMetrics(this));
+    
     this.updateThread = new Thread(this);
     
-    if (this.getClass() == InGameStateST.class) {
-      this.updateThread.start();
-    }
+    ReplayRecorder.begin(this.getClass().getSimpleName(), level.getName(), this.clock, this);
   }
 
   @Override
@@ -119,13 +235,46 @@ public class InGameStateST implements Comparable<Object>, CreepManager, EventSin
     } catch (InterruptedException e) {
       //Goggles
     }
-
+    
+    this.end();
+  }
+  
+  /**
+   * Undoes begin() once nothing is calling update() any more.
+   */
+  protected void end() {
+    ReplayRecorder.end();
+    
     this.map = null;
+    
+    Metrics.unregister(this.metricsName);
+    this.metricsName = null;
+    
+    SpanProfiler.write(this.getClass().getSimpleName());
+    
+    this.applyChanges();
+    
+    for (Tower t : this.towers) {
+      this.towerPool.release(t);
+    }
+    
+    for (Creep c : this.creeps) {
+      this.creepPools.get(c.getArchetype().id).release(c);
+    }
+    
+    for (RetiredCreeps r : this.retiredCreeps) {
+      for (Creep c : r.creeps) {
+        this.creepPools.get(c.getArchetype().id).release(c);
+      }
+    }
+    
+    this.retiredCreeps.clear();
 
     this.towers.clear();
     this.creeps.clear();
     this.deadCreeps.clear();
-    this.newCreeps.clear();
+    
+    this.creepPositions.write(new CopyableList<Pipe<CopyableVector2f>>());
   }
 
   @Override
@@ -136,13 +285,15 @@ public class InGameStateST implements Comparable<Object>, CreepManager, EventSin
 
       this.map.render(container, g);
       
-      for (Tower t : this.towers) {
+      for (Tower t : this.towers.getSnapshot()) {
         t.draw(g);
       }
       
-      for (Creep c : this.creeps) {
+      for (Creep c : this.creeps.getSnapshot()) {
         c.draw(g);
       }
+      
+      this.drawTickStats(g);
     }
   }
 
@@ -155,85 +306,268 @@ public class InGameStateST implements Comparable<Object>, CreepManager, EventSin
                                           (float) input.getMouseY() / (float) container.getHeight());
     
     if (input.isMousePressed(Input.MOUSE_LEFT_BUTTON)) {
-      CopyablePoint towerPos = new CopyablePoint((int) Math.floor(relativeInput.x * this.map.getWidth()),
-                                                 (int) Math.floor(relativeInput.y * this.map.getHeight()));
-      
-      Tower t = this.map.spawnTower(towerPos, this.creepPositions, this.tileSize, this);
+      CopyablePoint tile = new CopyablePoint((int) Math.floor(relativeInput.x * this.map.getWidth()),
+                                             (int) Math.floor(relativeInput.y * this.map.getHeight()));
       
-      if (t != null) {
-        this.towers.add(t);
-      }
+      ReplayRecorder.record(tile);
+      this.placeTower(tile);
     }
 
     if (input.isKeyPressed(Input.KEY_ESCAPE)) {
       game.enterState(BofSA.States.MAINMENU.ordinal());
     }
   }
+  
+  /**
+   * Builds a tower on the given tile if the level allows it, the tower
+   * starts running from the next tick.
+   */
+  public boolean placeTower(CopyablePoint towerPos) {
+    if (this.map.placeTower(towerPos)) {
+      Tower t = this.towerPool.take();
+      
+      if (t == null) {
+        t = new Tower(towerPos);
+        
+        TowerFactoryBehaviour.createTower(t.getPositionSignal(), this.creepPositions, t, this.tileSize, this);
+      } else {
+        t.reset(towerPos);
+      }
+      
+      this.towers.add(t);
+      
+      return true;
+    }
+    
+    return false;
+  }
 
   public void update(final float delta) {
     // Game logic
     
-    this.creeps.addAll(this.newCreeps);
-    this.newCreeps.clear();
-    
+    SpanProfiler.enter(InGameStateST.SPAWNS_SPAN);
     this.map.update(this, delta);
+    SpanProfiler.exit();
     
+    SpanProfiler.enter(InGameStateST.TOWERS_SPAN);
     for (final Tower t : this.towers) {
       t.call();
     }
+    SpanProfiler.exit();
     
+    this.updateBroadphase();
+    
+    SpanProfiler.enter(InGameStateST.CREEPS_SPAN);
     for (final Creep c : this.creeps) {
-      c.call();
+      c.update(delta);
     }
+    SpanProfiler.exit();
 
-    this.creeps.removeAll(this.deadCreeps);
-    this.deadCreeps.clear();
+    this.applyChanges();
   }
 
-  @Override
-  public void run() {
-    long last = System.nanoTime();
+  /**
+   * Adds the towers and creeps created this tick and drops the dead creeps.
+   */
+  protected void applyChanges() {
+    SpanProfiler.enter(InGameStateST.CHANGES_SPAN);
     
-    while (!Thread.currentThread().isInterrupted()) {
-      long current = System.nanoTime();
-      this.update((current - last) / 1E9f);
-      last = current;
+    this.applyDeaths();
+    
+    this.towers.applyChanges();
+    this.creeps.applyChanges();
+    
+    this.releaseRetiredCreeps();
+    
+    SpanProfiler.exit();
+  }
+  
+  /**
+   * Takes every creep that died this tick out of the target list in one pass
+   * and out of the creep list. They go back to their pools once the renderer
+   * is done with them, see releaseRetiredCreeps().
+   */
+  protected void applyDeaths() {
+    if (this.deadCreeps.isEmpty()) {
+      return;
     }
+    
+    List<Creep> dead = new ArrayList<Creep>(this.deadCreeps.size());
+    
+    while (!this.deadCreeps.isEmpty()) {
+      Creep c = this.deadCreeps.poll();
+      
+      if (this.deadSignals.add(c.getPositionSignal())) {
+        dead.add(c);
+      }
+    }
+    
+    CopyableList<Pipe<CopyableVector2f>> temp = new CopyableList<Pipe<CopyableVector2f>>();
+    
+    for (Pipe<CopyableVector2f> p : this.creepPositions.read()) {
+      if (!this.deadSignals.contains(p.signal)) {
+        temp.add(p);
+      }
+    }
+    
+    this.creepPositions.write(temp);
+    this.deadSignals.clear();
+    
+    for (Creep c : dead) {
+      this.creeps.remove(c);
+    }
+    
+    this.retiredCreeps.add(new RetiredCreeps(dead, this.creeps.getSnapshotCount()));
+  }
+  
+  /**
+   * Hands dead creeps back to their pools once no snapshot the renderer could
+   * be drawing holds them, otherwise a creep respawned from the pool could be
+   * drawn as the dead one. Without a renderer no snapshot is ever built and
+   * they go straight back.
+   */
+  protected void releaseRetiredCreeps() {
+    int built = this.creeps.getSnapshotCount();
+    
+    while (!this.retiredCreeps.isEmpty()) {
+      RetiredCreeps r = this.retiredCreeps.peek();
+      
+      if (built != 0 && built < r.snapshot + 2) {
+        break;
+      }
+      
+      this.retiredCreeps.poll();
+      
+      for (Creep c : r.creeps) {
+        this.creepPools.get(c.getArchetype().id).release(c);
+      }
+    }
+  }
+
+  /**
+   * Rebuilds the creep broadphase and works out how far each creep needs to
+   * be pushed away from its neighbours this tick.
+   */
+  protected void updateBroadphase() {
+    SpatialGrid grid = SpatialGrid.build(this.creepPositions.read(), SeparationBehaviour.SEPARATION_RADIUS);
+    
+    SpanProfiler.enter(InGameStateST.BROADPHASE_SPAN);
+    grid.computeSeparation(0, grid.size());
+    SpanProfiler.exit();
+    
+    grid.setResolved();
+    
+    this.creepGrid.write(grid);
   }
 
+  /**
+   * Runs update() at a fixed rate of clock time, waiting on the clock between
+   * ticks. If a tick runs long the following ones run back to back until the
+   * loop has caught up, up to maxCatchUp ticks at a time. Tick cost is still
+   * measured against the wall clock.
+   */
   @Override
-  public void onDeath(Creep c) {
-    CopyableList<Pipe<CopyableVector2f>> temp = this.creepPositions.read().copy();
+  public void run() {
+    SimClock clock = this.clock;
+    long period = (long) (1.0E9 / this.tickRate);
+    float delta = period / 1.0E9f;
+    
+    long next = clock.nanoTime();
+    this.lastTickTime = next;
     
-    for (int i = temp.size() - 1; i >= 0; --i) {
-      if (temp.get(i).signal.equals(c.getPositionSignal())) {
-        temp.remove(i);
+    while (!Thread.currentThread().isInterrupted()) {
+      long current = clock.nanoTime();
+      
+      if (current < next) {
+        clock.waitUntil(next);
+        continue;
+      }
+      
+      for (int steps = 0; steps < this.maxCatchUp && current >= next; ++steps) {
+        long start = System.nanoTime();
+        
+        this.update(delta);
+        SpanProfiler.tick();
+        ReplayRecorder.tick();
+        
+        this.tickStats.tickRun(System.nanoTime() - start, period);
+        
+        this.lastTickTime = next;
+        next += period;
+        current = clock.nanoTime();
+      }
+      
+      if (current >= next) {
+        long behind = (current - next) / period + 1;
+        
+        this.tickStats.ticksDropped(behind);
+        
+        next += behind * period;
       }
     }
+  }
+  
+  /**
+   * @return how far the clock is between the last tick and the next one,
+   *         from 0 to 1.
+   */
+  protected float getInterpolation() {
+    float alpha = (this.clock.nanoTime() - this.lastTickTime) * this.tickRate / 1.0E9f;
     
-    this.creepPositions.write(temp);
+    return Math.max(0.0f, Math.min(1.0f, alpha));
+  }
+  
+  /**
+   * Only shown when profiling (-p), otherwise it just covers the level.
+   */
+  protected void drawTickStats(Graphics g) {
+    if (!SpanProfiler.isEnabled()) {
+      return;
+    }
+    
+    g.drawString(this.tickStats.toString(), 10, 30);
+  }
+
+  @Override
+  public void onDeath(Creep c) {
     this.deadCreeps.add(c);
   }
 
   @Override
   public void onSpawn(Creep c) {
-    this.newCreeps.add(c);
+    this.creeps.add(c);
   }
 
   @Override
   public void spawnCreep(
+      int archetype,
       CopyableVector2f position,
-      Queue<CheckPoint> checkpoints) {
-    Creep c = new Creep(this);
-    
-    CreepFactoryBehaviour.spawnCreep(
-        position,
-        checkpoints,
-        c,
-        c,
-        this.tileSize,
-        this,
-        this.creepPositions);
+      Route route) {
+    CreepArchetype a = ArchetypeRegistry.getDefault().get(archetype);
+    
+    Creep c = this.creepPools.get(a.id).take();
+    
+    if (c == null) {
+      c = new Creep(this, a);
+      
+      CreepFactoryBehaviour.spawnCreep(
+          a,
+          position,
+          route,
+          this.map.getPathPlanner(),
+          this.creepGrid,
+          c,
+          c,
+          this.tileSize,
+          this,
+          this.creepPositions);
+    } else {
+      c.reset(position, route, this.map.getPathPlanner());
+      
+      CopyableList<Pipe<CopyableVector2f>> temp = this.creepPositions.read().copy();
+      temp.add(c.getPipe());
+      this.creepPositions.write(temp);
+    }
     
     this.onSpawn(c);
   }
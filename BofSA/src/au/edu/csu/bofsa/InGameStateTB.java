@@ -23,8 +23,7 @@
  */
 package au.edu.csu.bofsa;
 
-import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import javax.management.ObjectName;
 
 import org.newdawn.slick.GameContainer;
 import org.newdawn.slick.Graphics;
@@ -33,13 +32,16 @@ import org.newdawn.slick.SlickException;
 import org.newdawn.slick.state.GameState;
 import org.newdawn.slick.state.StateBasedGame;
 
+import au.edu.csu.bofsa.Behaviours.BroadphaseBehaviour;
 import au.edu.csu.bofsa.Behaviours.CreepFactoryBehaviour;
 import au.edu.csu.bofsa.Behaviours.InputPollingBehaviour;
+import au.edu.csu.bofsa.Behaviours.SeparationBehaviour;
 import au.edu.csu.bofsa.Behaviours.TowerFactoryBehaviour;
 import au.edu.csu.bofsa.Events.Event;
 import au.edu.csu.bofsa.Events.EventSink;
 import au.edu.csu.bofsa.Events.GenericEvent;
 import au.edu.csu.bofsa.Events.Stream;
+import au.edu.csu.bofsa.Events.TowerSpawnEvent;
 import au.edu.csu.bofsa.Signals.Signal;
 
 /**
@@ -54,17 +56,23 @@ public class InGameStateTB implements GameState, EventSink, Comparable<Object> {
   private CreepFactoryBehaviour creepFactory;
   private TowerFactoryBehaviour towerFactory;
   
+  private BroadphaseBehaviour broadphase;
+  
   private InputPollingBehaviour input;
 
   private Scheduler scheduler;
   
   private Stream broadcastStream;
 
-  private List<Drawable> drawables;
+  private EntityList<Drawable> drawables;
 
   private Signal<CopyableDimension> tileSize;
 
   private int maxThreads;
+  
+  private Scheduler.Mode schedulingMode;
+  
+  private ObjectName metricsName;
 
   @SuppressWarnings("unused")
   private InGameStateTB() {
@@ -76,7 +84,9 @@ public class InGameStateTB implements GameState, EventSink, Comparable<Object> {
 
     this.maxThreads = maxThreads;
     
-    this.drawables = new CopyOnWriteArrayList<Drawable>();
+    this.schedulingMode = Scheduler.Mode.UNORDERED;
+    
+    this.drawables = new EntityList<Drawable>();
 
     this.broadcastStream = new Stream();
     
@@ -88,7 +98,11 @@ public class InGameStateTB implements GameState, EventSink, Comparable<Object> {
     
     Signal<CopyableList<Pipe<CopyableVector2f>>> creeps = new Signal<CopyableList<Pipe<CopyableVector2f>>>(new CopyableList<Pipe<CopyableVector2f>>()); 
     
-    this.creepFactory = new CreepFactoryBehaviour(creeps, this.tileSize, this.broadcastStream, this.broadcastStream);
+    Signal<SpatialGrid> grid = new Signal<SpatialGrid>(SpatialGrid.build(creeps.read(), SeparationBehaviour.SEPARATION_RADIUS));
+    
+    this.broadphase = new BroadphaseBehaviour(grid, creeps);
+    
+    this.creepFactory = new CreepFactoryBehaviour(creeps, this.tileSize, grid, this.broadcastStream, this.broadcastStream);
     this.towerFactory = new TowerFactoryBehaviour(new Signal<CopyableList<CopyablePoint>>(new CopyableList<CopyablePoint>()), this.tileSize, creeps, this.broadcastStream, this.broadcastStream);
     
     this.broadcastStream.addSink(this.creepFactory);
@@ -97,6 +111,50 @@ public class InGameStateTB implements GameState, EventSink, Comparable<Object> {
     this.input = new InputPollingBehaviour(new Signal<CopyableBoolean>(new CopyableBoolean()), tileSize, broadcastStream);
   }
 
+  /**
+   * Switches between scheduling every behaviour of an entity as its own task
+   * and running them together as one, for entities created from now on.
+   */
+  public void setFusion(boolean fuse) {
+    this.creepFactory.setFusion(fuse);
+    this.towerFactory.setFusion(fuse);
+  }
+
+  public void setLogMode(Logger.Mode mode) {
+    this.scheduler.getLogger().setLogMode(mode);
+  }
+  
+  public void setSampleInterval(int interval) {
+    this.scheduler.getLogger().setSampleInterval(interval);
+  }
+  
+  /**
+   * Takes effect the next time the state is entered.
+   */
+  public void setSchedulingMode(Scheduler.Mode mode) {
+    this.schedulingMode = mode;
+  }
+  
+  public Scheduler getScheduler() {
+    return this.scheduler;
+  }
+  
+  public int getCreepCount() {
+    return this.creepFactory.getSignal().read().size();
+  }
+  
+  public int getTowerCount() {
+    return this.towerFactory.getTowerCount();
+  }
+  
+  /**
+   * Asks the tower factory for a tower on the given tile, the same as a
+   * click there would.
+   */
+  public void placeTower(CopyablePoint p) {
+    this.broadcastStream.handleEvent(new TowerSpawnEvent(this, p, Event.Type.BROADCAST, SimClock.now()));
+  }
+
   @Override
   public int getID() {
     return this.stateID;
@@ -116,37 +174,101 @@ public class InGameStateTB implements GameState, EventSink, Comparable<Object> {
     CreepFactoryBehaviour.loadResources();
     TowerFactoryBehaviour.loadResources();
     
-    this.scheduler.start(Scheduler.Mode.UNORDERED, this.maxThreads - 1);
-
-    try {
-      this.map = new GameLevelTB("test", this.scheduler, this.creepFactory, this.towerFactory);
-    } catch (SlickException e) {
-      e.printStackTrace();
-    }
+    this.begin("test", true);
 
     this.tileSize.write(
         new CopyableDimension(
             container.getWidth() / this.map.getWidth(),
             container.getHeight() / this.map.getHeight()));
-
-    this.scheduler.call(this.creepFactory);
-    this.scheduler.call(this.towerFactory);
+    
     this.scheduler.call(this.input);
     
     container.getInput().addListener(this.input);
     this.input.setInput(container.getInput());
   }
+  
+  /**
+   * Starts the scheduler running the level's behaviours, everything but
+   * input and the display. The headless runner calls this directly.
+   * 
+   * @param loadImages false to load the level without tile images.
+   */
+  protected void begin(String levelName, boolean loadImages) throws SlickException {
+    SpanProfiler.reset();
+    
+    this.scheduler.start(this.schedulingMode, this.maxThreads - 1);
+    
+    this.scheduler.getLogger().startLogging("TaskBased", this.scheduler.numThreads());
+    this.scheduler.registerMetrics("TaskBased");
+    
+    GameStateMetrics.Source source = new GameStateMetrics.Source() {
+      @Override
+      public int getCreepCount() {
+        return InGameStateTB.this.getCreepCount();
+      }
+      
+      @Override
+      public int getTowerCount() {
+        return InGameStateTB.this.getTowerCount();
+      }
+      
+      @Override
+      public TickStats getTickStats() {
+        return null;
+      }
+    };
+    
+    this.metricsName = Metrics.register("GameState", InGameStateTB.class.getSimpleName(), new GameStateMetrics(source));
+
+    try {
+      this.map = new GameLevelTB(levelName, this.scheduler, this.creepFactory, this.towerFactory, loadImages);
+    } catch (SlickException e) {
+      this.scheduler.stop();
+      
+      Metrics.unregister(this.metricsName);
+      this.metricsName = null;
+      
+      throw e;
+    }
+
+    this.broadcastStream.addSink(this.map.getPathGrid());
+    this.towerFactory.setConnectivity(this.map.getConnectivity());
+
+    this.scheduler.call(this.creepFactory);
+    this.scheduler.call(this.towerFactory);
+    this.scheduler.call(this.broadphase);
+    
+    ReplayRecorder.begin(InGameStateTB.class.getSimpleName(), levelName, this.scheduler.getClock(), source);
+  }
 
   @Override
   public void leave(GameContainer container, StateBasedGame game)
       throws SlickException {
+    this.end();
+  }
+  
+  protected void end() {
+    ReplayRecorder.end();
+    
+    if (this.map != null) {
+      this.broadcastStream.removeSink(this.map.getPathGrid());
+      this.towerFactory.setConnectivity(null);
+    }
+    
     this.map = null;
     
-    this.towerFactory.handleEvent(new GenericEvent(this, GenericEvent.Message.FORGET_ALL, Event.Type.TARGETTED, System.nanoTime()));
-    this.creepFactory.handleEvent(new GenericEvent(this, GenericEvent.Message.FORGET_ALL, Event.Type.TARGETTED, System.nanoTime()));
+    this.towerFactory.handleEvent(new GenericEvent(this, GenericEvent.Message.FORGET_ALL, Event.Type.TARGETTED, SimClock.now()));
+    this.creepFactory.handleEvent(new GenericEvent(this, GenericEvent.Message.FORGET_ALL, Event.Type.TARGETTED, SimClock.now()));
 
     this.scheduler.stop();
     
+    Metrics.unregister(this.metricsName);
+    this.metricsName = null;
+    
+    SpanProfiler.write(InGameStateTB.class.getSimpleName());
+    
+    this.scheduler.getLogger().stopLogging();
+    
     this.drawables.clear();
   }
 
@@ -156,6 +278,10 @@ public class InGameStateTB implements GameState, EventSink, Comparable<Object> {
     if (this.map != null) {
       this.map.render(container, g);
       
+      // Owned by the render thread, everything drawn or removed since the
+      // last frame is applied in one go.
+      this.drawables.applyChanges();
+      
       for (Drawable d : this.drawables) {
         d.draw(g);
       }
@@ -165,6 +291,8 @@ public class InGameStateTB implements GameState, EventSink, Comparable<Object> {
   @Override
   public void update(GameContainer container, StateBasedGame game, int delta)
       throws SlickException {
+    SpanProfiler.tick();
+    
     Input input = container.getInput();
 
     if (input.isKeyPressed(Input.KEY_ESCAPE)) {
@@ -178,7 +306,7 @@ public class InGameStateTB implements GameState, EventSink, Comparable<Object> {
       if ((GenericEvent.Message)event.value == GenericEvent.Message.ADD_DRAWABLE) {
         this.drawables.add((Drawable) event.getSource());
       } else if ((GenericEvent.Message)event.value == GenericEvent.Message.REMOVE_DRAWABLE) {
-        this.drawables.remove(event.getSource());
+        this.drawables.remove((Drawable) event.getSource());
       }
     }
   }
@@ -0,0 +1,143 @@
+/**
+ *   The MIT License
+ *
+ *  Copyright 2011 Andrew James <ephphatha@thelettereph.com>.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package au.edu.csu.bofsa;
+
+/**
+ * Fixed size log-linear histogram of nanosecond latencies. Values are kept
+ * to within about 3% (SUB_BUCKET_BITS significant bits) up to MAX_VALUE,
+ * anything larger is counted as MAX_VALUE. Recording never allocates.
+ * 
+ * Not thread safe, each thread is expected to record into its own and
+ * combine them with add() once they're done.
+ * 
+ * @author ephphatha
+ *
+ */
+public class LatencyHistogram {
+  protected static final int SUB_BUCKET_BITS = 5;
+  protected static final int SUB_BUCKETS = 1 << LatencyHistogram.SUB_BUCKET_BITS;
+  protected static final int MAX_BITS = 40; // ~18 minutes
+  public static final long MAX_VALUE = (1L << LatencyHistogram.MAX_BITS) - 1;
+  
+  protected static final int BUCKETS = LatencyHistogram.index(LatencyHistogram.MAX_VALUE) + 1;
+  
+  protected final long[] counts;
+  protected long count;
+  protected long max;
+  
+  public LatencyHistogram() {
+    this.counts = new long[LatencyHistogram.BUCKETS];
+  }
+  
+  /**
+   * Values below 2 * SUB_BUCKETS get a bucket each, above that each power of
+   * two range is split into SUB_BUCKETS equal buckets.
+   */
+  protected static int index(long value) {
+    if (value < 2 * LatencyHistogram.SUB_BUCKETS) {
+      return (int) value;
+    }
+    
+    int shift = 63 - Long.numberOfLeadingZeros(value) - LatencyHistogram.SUB_BUCKET_BITS;
+    
+    return (shift << LatencyHistogram.SUB_BUCKET_BITS) + (int) (value >> shift);
+  }
+  
+  /**
+   * @return the middle of the range of values counted in bucket i.
+   */
+  protected static long value(int i) {
+    if (i < 2 * LatencyHistogram.SUB_BUCKETS) {
+      return i;
+    }
+    
+    int shift = (i >> LatencyHistogram.SUB_BUCKET_BITS) - 1;
+    long sub = i - ((long) shift << LatencyHistogram.SUB_BUCKET_BITS);
+    
+    return (sub << shift) + ((1L << shift) >> 1);
+  }
+  
+  public void record(long value) {
+    long v = Math.max(0, Math.min(value, LatencyHistogram.MAX_VALUE));
+    
+    ++this.counts[LatencyHistogram.index(v)];
+    ++this.count;
+    
+    if (v > this.max) {
+      this.max = v;
+    }
+  }
+  
+  public void add(LatencyHistogram rhs) {
+    for (int i = 0; i < this.counts.length; ++i) {
+      this.counts[i] += rhs.counts[i];
+    }
+    
+    this.count += rhs.count;
+    this.max = Math.max(this.max, rhs.max);
+  }
+  
+  /**
+   * @param percentile from 0 to 100.
+   * @return the smallest recorded value that at least percentile percent of
+   *         values are less than or equal to, 0 if nothing was recorded.
+   */
+  public long getValueAtPercentile(double percentile) {
+    if (this.count == 0) {
+      return 0;
+    }
+    
+    long target = (long) Math.ceil(this.count * Math.min(100.0, Math.max(0.0, percentile)) / 100.0);
+    target = Math.max(1, target);
+    
+    long seen = 0;
+    
+    for (int i = 0; i < this.counts.length; ++i) {
+      seen += this.counts[i];
+      
+      if (seen >= target) {
+        return Math.min(LatencyHistogram.value(i), this.max);
+      }
+    }
+    
+    return this.max;
+  }
+  
+  public long getCount() {
+    return this.count;
+  }
+  
+  public long getMax() {
+    return this.max;
+  }
+  
+  public void reset() {
+    for (int i = 0; i < this.counts.length; ++i) {
+      this.counts[i] = 0;
+    }
+    
+    this.count = 0;
+    this.max = 0;
+  }
+}
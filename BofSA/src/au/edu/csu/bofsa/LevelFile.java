@@ -0,0 +1,306 @@
+/**
+ *   The MIT License
+ *
+ *  Copyright 2011 Andrew James <ephphatha@thelettereph.com>.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package au.edu.csu.bofsa;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * The parts of a Tiled .tmx level the game logic needs: its size, which
+ * tiles are set on each layer and the objects marking spawns, checkpoints
+ * and goals. Read straight from the XML so levels can be loaded without an
+ * OpenGL context, tile images still come from Slick's TiledMap.
+ * 
+ * @author ephphatha
+ *
+ */
+public class LevelFile {
+  
+  public static class MapObject {
+    public final String name;
+    public final String type;
+    public final int x;
+    public final int y;
+    public final Map<String, String> properties;
+    
+    public MapObject(String name, String type, int x, int y) {
+      this.name = name;
+      this.type = type;
+      this.x = x;
+      this.y = y;
+      this.properties = new HashMap<String, String>();
+    }
+  }
+  
+  protected int width;
+  protected int height;
+  protected int tileWidth;
+  protected int tileHeight;
+  
+  protected Map<String, int[]> layers;
+  protected List<List<MapObject>> objectGroups;
+  
+  /**
+   * @param levelName name of a file in levels/ without the extension, looked
+   *                  for on the classpath first.
+   */
+  public static LevelFile load(String levelName) throws IOException {
+    String path = "levels/" + levelName + ".tmx";
+    
+    InputStream in = LevelFile.class.getResourceAsStream("/" + path);
+    
+    if (in == null) {
+      in = new FileInputStream(path);
+    }
+    
+    try {
+      return new LevelFile(in);
+    } finally {
+      in.close();
+    }
+  }
+  
+  public LevelFile(InputStream in) throws IOException {
+    this.layers = new HashMap<String, int[]>();
+    this.objectGroups = new ArrayList<List<MapObject>>();
+    
+    Document doc;
+    
+    try {
+      doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(in);
+    } catch (SAXException e) {
+      throw new IOException("Couldn't parse level: " + e.getMessage());
+    } catch (ParserConfigurationException e) {
+      throw new IOException("Couldn't parse level: " + e.getMessage());
+    }
+    
+    Element map = doc.getDocumentElement();
+    
+    this.width = LevelFile.parseInt(map, "width", 0);
+    this.height = LevelFile.parseInt(map, "height", 0);
+    this.tileWidth = LevelFile.parseInt(map, "tilewidth", 1);
+    this.tileHeight = LevelFile.parseInt(map, "tileheight", 1);
+    
+    NodeList layerNodes = map.getElementsByTagName("layer");
+    
+    for (int i = 0; i < layerNodes.getLength(); ++i) {
+      Element layer = (Element) layerNodes.item(i);
+      NodeList data = layer.getElementsByTagName("data");
+      
+      if (data.getLength() > 0) {
+        this.layers.put(layer.getAttribute("name"), this.readLayer((Element) data.item(0)));
+      }
+    }
+    
+    NodeList groupNodes = map.getElementsByTagName("objectgroup");
+    
+    for (int i = 0; i < groupNodes.getLength(); ++i) {
+      NodeList objectNodes = ((Element) groupNodes.item(i)).getElementsByTagName("object");
+      List<MapObject> objects = new ArrayList<MapObject>();
+      
+      for (int j = 0; j < objectNodes.getLength(); ++j) {
+        Element e = (Element) objectNodes.item(j);
+        
+        MapObject o = new MapObject(
+            e.getAttribute("name"),
+            e.getAttribute("type"),
+            LevelFile.parseInt(e, "x", 0),
+            LevelFile.parseInt(e, "y", 0));
+        
+        NodeList propertyNodes = e.getElementsByTagName("property");
+        
+        for (int k = 0; k < propertyNodes.getLength(); ++k) {
+          Element p = (Element) propertyNodes.item(k);
+          o.properties.put(p.getAttribute("name"), p.getAttribute("value"));
+        }
+        
+        objects.add(o);
+      }
+      
+      this.objectGroups.add(objects);
+    }
+  }
+  
+  /**
+   * Handles base64 data, optionally gzip or zlib compressed, and csv.
+   */
+  protected int[] readLayer(Element data) throws IOException {
+    int[] tiles = new int[this.width * this.height];
+    String encoding = data.getAttribute("encoding");
+    String text = data.getTextContent().trim();
+    
+    if (encoding.equals("csv")) {
+      String[] values = text.split("\\s*,\\s*");
+      
+      for (int i = 0; i < tiles.length && i < values.length; ++i) {
+        tiles[i] = (int) Long.parseLong(values[i].trim());
+      }
+    } else if (encoding.equals("base64")) {
+      InputStream raw = new ByteArrayInputStream(LevelFile.decodeBase64(text));
+      String compression = data.getAttribute("compression");
+      
+      if (compression.equals("gzip")) {
+        raw = new GZIPInputStream(raw);
+      } else if (compression.equals("zlib")) {
+        raw = new InflaterInputStream(raw);
+      }
+      
+      DataInputStream in = new DataInputStream(raw);
+      
+      try {
+        for (int i = 0; i < tiles.length; ++i) {
+          // Global tile ids are stored little endian.
+          tiles[i] = Integer.reverseBytes(in.readInt());
+        }
+      } finally {
+        in.close();
+      }
+    } else {
+      NodeList tileNodes = data.getElementsByTagName("tile");
+      
+      for (int i = 0; i < tiles.length && i < tileNodes.getLength(); ++i) {
+        tiles[i] = LevelFile.parseInt((Element) tileNodes.item(i), "gid", 0);
+      }
+    }
+    
+    return tiles;
+  }
+  
+  private static byte[] decodeBase64(String text) {
+    byte[] out = new byte[text.length() * 3 / 4 + 3];
+    int length = 0;
+    int buffer = 0;
+    int bits = 0;
+    
+    for (int i = 0; i < text.length(); ++i) {
+      char c = text.charAt(i);
+      int value;
+      
+      if (c >= 'A' && c <= 'Z') {
+        value = c - 'A';
+      } else if (c >= 'a' && c <= 'z') {
+        value = c - 'a' + 26;
+      } else if (c >= '0' && c <= '9') {
+        value = c - '0' + 52;
+      } else if (c == '+') {
+        value = 62;
+      } else if (c == '/') {
+        value = 63;
+      } else {
+        // Whitespace and padding.
+        continue;
+      }
+      
+      buffer = (buffer << 6) | value;
+      bits += 6;
+      
+      if (bits >= 8) {
+        bits -= 8;
+        out[length++] = (byte) (buffer >> bits);
+      }
+    }
+    
+    byte[] result = new byte[length];
+    System.arraycopy(out, 0, result, 0, length);
+    
+    return result;
+  }
+  
+  public int getWidth() {
+    return this.width;
+  }
+  
+  public int getHeight() {
+    return this.height;
+  }
+  
+  public int getTileWidth() {
+    return this.tileWidth;
+  }
+  
+  public int getTileHeight() {
+    return this.tileHeight;
+  }
+  
+  public boolean hasLayer(String layer) {
+    return this.layers.containsKey(layer);
+  }
+  
+  /**
+   * @return true if the named layer has a tile at (x, y).
+   */
+  public boolean hasTile(String layer, int x, int y) {
+    int[] tiles = this.layers.get(layer);
+    
+    return tiles != null && tiles[y * this.width + x] != 0;
+  }
+  
+  public int getObjectGroupCount() {
+    return this.objectGroups.size();
+  }
+  
+  public List<MapObject> getObjects(int group) {
+    return this.objectGroups.get(group);
+  }
+  
+  /**
+   * @return the object's position in tiles.
+   */
+  public float getObjectTileX(MapObject o) {
+    return (float) o.x / (float) this.tileWidth;
+  }
+  
+  public float getObjectTileY(MapObject o) {
+    return (float) o.y / (float) this.tileHeight;
+  }
+  
+  public static String getProperty(MapObject o, String name, String fallback) {
+    String value = o.properties.get(name);
+    
+    return value != null ? value : fallback;
+  }
+  
+  private static int parseInt(Element e, String attribute, int fallback) {
+    String value = e.getAttribute(attribute);
+    
+    return value.length() > 0 ? (int) Double.parseDouble(value) : fallback;
+  }
+}
@@ -26,19 +26,25 @@ package au.edu.csu.bofsa;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.atomic.AtomicReference;
 
 /**
+ * Task statistics are only written by the thread owning the logger, each
+ * worker keeps its own and they're merged into the scheduler's once the
+ * workers have stopped.
+ * 
  * @author ephphatha
  *
  */
@@ -65,56 +71,139 @@ public class Logger implements Runnable {
     }
   }
   
+  /**
+   * Counts and runtimes for one type of task. Written by a single thread,
+   * loggers belonging to different threads are combined with merge().
+   * Every run is counted but only sampled runs contribute runtimes, queue
+   * delays are taken from every run.
+   */
   public static class TaskStats {
-    public final AtomicLong executionCount;
-    public final AtomicLong retryCount;
-    public final AtomicLong waitCount;
-    public final AtomicLong totalRuntime;
-    public final AtomicReference<Double> meanRuntime;
-    public final AtomicReference<Double> sumSquaresRuntime;
+    public long executionCount;
+    public long sampleCount;
+    public long retryCount;
+    public long waitCount;
+    public long totalRuntime;
+    public double meanRuntime;
+    public double sumSquaresRuntime;
+    public final LatencyHistogram runtimes;
+    public long queueCount;
+    public long totalQueueDelay;
+    public final LatencyHistogram queueDelays;
     
     public TaskStats() {
-      this.executionCount = new AtomicLong(0);
-      this.retryCount = new AtomicLong(0);
-      this.waitCount = new AtomicLong(0);
-      this.totalRuntime = new AtomicLong(0);
-      this.meanRuntime = new AtomicReference<Double>(new Double(0));
-      this.sumSquaresRuntime = new AtomicReference<Double>(new Double(0));
+      this.runtimes = new LatencyHistogram();
+      this.queueDelays = new LatencyHistogram();
+      
+      this.reset();
     }
     
     public void reset() {
-      this.executionCount.set(0);
-      this.retryCount.set(0);
-      this.waitCount.set(0);
-      this.totalRuntime.set(0);
+      this.executionCount = 0;
+      this.sampleCount = 0;
+      this.retryCount = 0;
+      this.waitCount = 0;
+      this.totalRuntime = 0;
+      this.meanRuntime = 0;
+      this.sumSquaresRuntime = 0;
+      this.runtimes.reset();
+      this.queueCount = 0;
+      this.totalQueueDelay = 0;
+      this.queueDelays.reset();
+    }
+    
+    public void sample(long duration) {
+      ++this.sampleCount;
+      this.totalRuntime += duration;
+      
+      double xbar_n1 = this.meanRuntime;
+      double xbar_n = xbar_n1 + (duration - xbar_n1) / this.sampleCount;
+      
+      this.meanRuntime = xbar_n;
+      this.sumSquaresRuntime += (duration - xbar_n) * (duration - xbar_n1);
+      
+      this.runtimes.record(duration);
     }
 
     public void merge(TaskStats rhs) {
-      double xbar_a = this.meanRuntime.get();
-      double xbar_b = rhs.meanRuntime.get();
+      double xbar_a = this.meanRuntime;
+      double xbar_b = rhs.meanRuntime;
       
-      long n_a = this.executionCount.get();
-      long n_b = rhs.executionCount.get();
+      long n_a = this.sampleCount;
+      long n_b = rhs.sampleCount;
       
       if (n_b == 0) {
         //use this values;
       } else if (n_a == 0) {
         //use rhs values;
-        this.meanRuntime.set(xbar_b);
-        this.sumSquaresRuntime.set(rhs.sumSquaresRuntime.get());
+        this.meanRuntime = xbar_b;
+        this.sumSquaresRuntime = rhs.sumSquaresRuntime;
       } else {
         double sigma = xbar_b - xbar_a;
         
         // \bar{x}_X = \frac{n_A\bar{x}_A + n_B\bar{x}_B}{n_A+n_B}
-        this.meanRuntime.set((n_a * xbar_a + n_b * xbar_b)/(n_a + n_b));
+        this.meanRuntime = (n_a * xbar_a + n_b * xbar_b)/(n_a + n_b);
         
-        this.sumSquaresRuntime.set(this.sumSquaresRuntime.get() + rhs.sumSquaresRuntime.get() + Math.pow(sigma, 2) * (n_a*n_b)/(n_a+n_b));
+        this.sumSquaresRuntime = this.sumSquaresRuntime + rhs.sumSquaresRuntime + Math.pow(sigma, 2) * (n_a*n_b)/(n_a+n_b);
       }
       
-      this.executionCount.set(n_a + n_b);
-      this.retryCount.addAndGet(rhs.retryCount.get());
-      this.waitCount.addAndGet(rhs.waitCount.get());
-      this.totalRuntime.addAndGet(rhs.totalRuntime.get());
+      this.sampleCount = n_a + n_b;
+      this.executionCount += rhs.executionCount;
+      this.retryCount += rhs.retryCount;
+      this.waitCount += rhs.waitCount;
+      this.totalRuntime += rhs.totalRuntime;
+      this.runtimes.add(rhs.runtimes);
+      this.queueCount += rhs.queueCount;
+      this.totalQueueDelay += rhs.totalQueueDelay;
+      this.queueDelays.add(rhs.queueDelays);
+    }
+    
+    /**
+     * @return the summed runtime of every run, scaled up from the samples
+     *         when not every run was sampled.
+     */
+    public long getTotalRuntime() {
+      if (this.sampleCount == 0 || this.sampleCount == this.executionCount) {
+        return this.totalRuntime;
+      }
+      
+      return Math.round(this.meanRuntime * this.executionCount);
+    }
+    
+    public double getStandardDeviation() {
+      return this.sampleCount > 0 ? Math.sqrt(this.sumSquaresRuntime / this.sampleCount) : 0;
+    }
+    
+    public double getMeanQueueDelay() {
+      return this.queueCount > 0 ? (double) this.totalQueueDelay / this.queueCount : 0;
+    }
+  }
+  
+  public static class PhaseStats {
+    public final AtomicLong runCount;
+    public final AtomicLong chunkCount;
+    public final AtomicLong itemCount;
+    public final AtomicLong busyTime;
+    public final AtomicLong idleTime;
+    /**
+     * Only written by the thread calling parallelFor(), read by anyone.
+     */
+    public volatile double itemCost;
+    
+    public PhaseStats() {
+      this.runCount = new AtomicLong(0);
+      this.chunkCount = new AtomicLong(0);
+      this.itemCount = new AtomicLong(0);
+      this.busyTime = new AtomicLong(0);
+      this.idleTime = new AtomicLong(0);
+      this.itemCost = 0;
+    }
+    
+    public void reset() {
+      this.runCount.set(0);
+      this.chunkCount.set(0);
+      this.itemCount.set(0);
+      this.busyTime.set(0);
+      this.idleTime.set(0);
     }
   }
   
@@ -124,24 +213,113 @@ public class Logger implements Runnable {
     BASIC
   }
   
+  private static final double ITEM_COST_WEIGHT = 0.25;
+  
+  private static final Map<String, Integer> typeIds = new HashMap<String, Integer>();
+  private static final List<String> typeNames = new ArrayList<String>();
+  
+  private static final double[] PERCENTILES = {50.0, 90.0, 99.0, 99.9};
+  
+  public static final int DEFAULT_SAMPLE_INTERVAL = 100;
+  
+  // Loggers are seeded in the order they're made so runs sample the same way.
+  private static final AtomicLong seeds = new AtomicLong(0x5DEECE66DL);
+  private static final long SEED_INCREMENT = 0x9E3779B97F4A7C15L;
+  
   private Mode mode;
+  private int sampleInterval;
+  private int sampleCountdown;
+  private Random sampleRandom;
   private FileWriter detailFile;
   private SimpleDateFormat df;
   private Date startDate;
   private String description;
   
   private Queue<Task> pendingMessages;
-  private Map<String, TaskStats> taskStats;
+  private TaskStats[] taskStats;
+  private Map<String, PhaseStats> phaseStats;
   private int numWorkers;
   private long startTime;
   
+  private String schedulingMode;
+  private long lockAcquisitions;
+  private long lockFailures;
+  private long totalLockHeld;
+  private final LatencyHistogram lockHeld;
+  
   public Logger() {
     this.pendingMessages = new ConcurrentLinkedQueue<Task>();
-    this.taskStats = new ConcurrentHashMap<String, TaskStats>();
+    this.taskStats = new TaskStats[0];
+    this.phaseStats = new ConcurrentHashMap<String, PhaseStats>();
+    this.lockHeld = new LatencyHistogram();
     
     this.df = new SimpleDateFormat("yyyyMMdd'T'HHmmss");
     
     this.mode = Mode.BASIC;
+    
+    this.sampleInterval = Logger.DEFAULT_SAMPLE_INTERVAL;
+    this.sampleRandom = new Random(Logger.seeds.getAndAdd(Logger.SEED_INCREMENT));
+    this.sampleCountdown = this.nextSampleGap();
+  }
+
+  /**
+   * Hands out a small integer per task name so the per run bookkeeping is an
+   * array index rather than a map lookup. Ids are shared by every logger.
+   */
+  public static int getTypeId(String name) {
+    synchronized (Logger.typeIds) {
+      Integer id = Logger.typeIds.get(name);
+      
+      if (id == null) {
+        id = Integer.valueOf(Logger.typeNames.size());
+        Logger.typeIds.put(name, id);
+        Logger.typeNames.add(name);
+      }
+      
+      return id.intValue();
+    }
+  }
+  
+  public static String getTypeName(int id) {
+    synchronized (Logger.typeIds) {
+      return Logger.typeNames.get(id);
+    }
+  }
+  
+  private TaskStats getTaskStats(int id) {
+    if (id >= this.taskStats.length) {
+      TaskStats[] temp = new TaskStats[Math.max(id + 1, this.taskStats.length * 2)];
+      System.arraycopy(this.taskStats, 0, temp, 0, this.taskStats.length);
+      this.taskStats = temp;
+    }
+    
+    TaskStats ms = this.taskStats[id];
+    
+    if (ms == null) {
+      ms = new TaskStats();
+      this.taskStats[id] = ms;
+    }
+    
+    return ms;
+  }
+
+  /**
+   * @return one more than the highest type id this logger has seen.
+   */
+  public int getTypeCapacity() {
+    return this.taskStats.length;
+  }
+  
+  /**
+   * For watching a logger owned by another thread, the stats returned may
+   * be a moment out of date.
+   * 
+   * @return null if no task of that type has been logged.
+   */
+  public TaskStats peekTaskStats(int id) {
+    TaskStats[] stats = this.taskStats;
+    
+    return id < stats.length ? stats[id] : null;
   }
 
   public void startLogging(String description) {
@@ -155,10 +333,18 @@ public class Logger implements Runnable {
     
     this.numWorkers = workerThreads;
     
-    for (TaskStats ms : this.taskStats.values()) {
-      ms.reset();
+    for (TaskStats ms : this.taskStats) {
+      if (ms != null) {
+        ms.reset();
+      }
     }
     
+    for (PhaseStats ps : this.phaseStats.values()) {
+      ps.reset();
+    }
+    
+    this.resetLockStats();
+    
     this.startDate = Calendar.getInstance().getTime();
     this.startTime = System.currentTimeMillis();
   }
@@ -167,6 +353,66 @@ public class Logger implements Runnable {
     this.mode = level;
   }
   
+  public Mode getLogMode() {
+    return this.mode;
+  }
+  
+  /**
+   * @param mode name of the scheduler mode in use, written alongside the
+   *             totals so runs in different modes can be told apart.
+   */
+  public void setSchedulingMode(String mode) {
+    this.schedulingMode = mode;
+  }
+  
+  /**
+   * @param interval in SAMPLE mode runtimes are taken from one in every
+   *                 interval runs on average, the other modes take every run.
+   */
+  public void setSampleInterval(int interval) {
+    this.sampleInterval = Math.max(1, interval);
+    this.sampleCountdown = this.nextSampleGap();
+  }
+  
+  public int getSampleInterval() {
+    return this.sampleInterval;
+  }
+  
+  /**
+   * Takes on rhs's mode and sampling rate, for loggers owned by workers.
+   */
+  public void copySettings(Logger rhs) {
+    this.mode = rhs.mode;
+    this.setSampleInterval(rhs.sampleInterval);
+  }
+  
+  /**
+   * Gaps between samples are drawn uniformly from 1 to 2 * interval - 1 so
+   * they average out to the interval without locking onto a task order that
+   * repeats every interval runs.
+   */
+  private int nextSampleGap() {
+    if (this.sampleInterval <= 1) {
+      return 1;
+    }
+    
+    return 1 + this.sampleRandom.nextInt(2 * this.sampleInterval - 1);
+  }
+  
+  private boolean shouldSample() {
+    if (this.mode != Mode.SAMPLE) {
+      return true;
+    }
+    
+    if (--this.sampleCountdown > 0) {
+      return false;
+    }
+    
+    this.sampleCountdown = this.nextSampleGap();
+    
+    return true;
+  }
+  
   public void merge(Logger rhs) {
     if (rhs == null) {
       return;
@@ -182,14 +428,18 @@ public class Logger implements Runnable {
       temp.add(rhs.pendingMessages.poll());
     }
     
-    for (Map.Entry<String, TaskStats> e : rhs.taskStats.entrySet()) {
-      if (this.taskStats.containsKey(e.getKey())) {
-        this.taskStats.get(e.getKey()).merge(e.getValue());
-      } else {
-        this.taskStats.put(e.getKey(), e.getValue());
+    for (int id = 0; id < rhs.taskStats.length; ++id) {
+      if (rhs.taskStats[id] != null) {
+        this.getTaskStats(id).merge(rhs.taskStats[id]);
+        rhs.taskStats[id].reset();
       }
     }
-    rhs.taskStats.clear();
+    
+    this.lockAcquisitions += rhs.lockAcquisitions;
+    this.lockFailures += rhs.lockFailures;
+    this.totalLockHeld += rhs.totalLockHeld;
+    this.lockHeld.add(rhs.lockHeld);
+    rhs.resetLockStats();
     
     Collections.sort(temp);
     
@@ -219,22 +469,85 @@ public class Logger implements Runnable {
                 "Times executed," +
                 "Times retried," +
                 "Times not ready," +
+                "Times sampled," +
                 "Total runtime (ns)," +
                 "Average runtime (ns)," +
-                "Standard Deviation (estimated)" +
+                "Standard Deviation (estimated)," +
+                "p50 (ns)," +
+                "p90 (ns)," +
+                "p99 (ns)," +
+                "p99.9 (ns)," +
+                "Max (ns)," +
+                "Average queue delay (ns)," +
+                "p99 queue delay (ns)" +
                 "\n");
 
-            for (Map.Entry<String, TaskStats> e : this.taskStats.entrySet()) {
-              TaskStats ms = e.getValue();
+            for (int id = 0; id < this.taskStats.length; ++id) {
+              TaskStats ms = this.taskStats[id];
+              
+              if (ms == null) {
+                continue;
+              }
+              
+              StringBuilder percentiles = new StringBuilder();
+              
+              for (double p : Logger.PERCENTILES) {
+                percentiles.append(ms.runtimes.getValueAtPercentile(p) + ",");
+              }
               
               file.write(
-                  e.getKey() + "," +
+                  Logger.getTypeName(id) + "," +
                   ms.executionCount + "," +
                   ms.retryCount + "," +
                   ms.waitCount + "," +
-                  ms.totalRuntime + "," +
+                  ms.sampleCount + "," +
+                  ms.getTotalRuntime() + "," +
                   ms.meanRuntime + "," +
-                  Double.toString(Math.sqrt(ms.sumSquaresRuntime.get() / ms.executionCount.get())) +
+                  Double.toString(ms.getStandardDeviation()) + "," +
+                  percentiles.toString() +
+                  ms.runtimes.getMax() + "," +
+                  ms.getMeanQueueDelay() + "," +
+                  ms.queueDelays.getValueAtPercentile(99.0) +
+                  "\n");
+            }
+          } finally {
+            file.flush();
+            file.close();
+          }
+        }
+      }
+
+      if (!this.phaseStats.isEmpty()) {
+        file = this.getFile("_PHASES.log");
+        
+        if (file != null) {
+          try {
+            file.write(
+                "Phase name," +
+                "Times run," +
+                "Total chunks," +
+                "Average chunks per run," +
+                "Average chunk runtime (ns)," +
+                "Total busy time (ns)," +
+                "Total idle time (ns)," +
+                "Average item runtime (ns)" +
+                "\n");
+            
+            for (Map.Entry<String, PhaseStats> e : this.phaseStats.entrySet()) {
+              PhaseStats ps = e.getValue();
+              
+              long runs = Math.max(ps.runCount.get(), 1);
+              long chunks = Math.max(ps.chunkCount.get(), 1);
+              
+              file.write(
+                  e.getKey() + "," +
+                  ps.runCount + "," +
+                  ps.chunkCount + "," +
+                  ((double) ps.chunkCount.get() / runs) + "," +
+                  (ps.busyTime.get() / chunks) + "," +
+                  ps.busyTime + "," +
+                  ps.idleTime + "," +
+                  ps.itemCost +
                   "\n");
             }
           } finally {
@@ -244,6 +557,23 @@ public class Logger implements Runnable {
         }
       }
 
+      if (this.mode == Mode.DETAILED) {
+        file = this.getFile("_TYPES.log");
+        
+        if (file != null) {
+          try {
+            for (int id = 0; id < this.taskStats.length; ++id) {
+              if (this.taskStats[id] != null) {
+                file.write(id + "," + Logger.getTypeName(id) + "\n");
+              }
+            }
+          } finally {
+            file.flush();
+            file.close();
+          }
+        }
+      }
+      
       file = this.getFile(".log");
       
       if (file != null) {
@@ -251,17 +581,29 @@ public class Logger implements Runnable {
 
           StringBuilder headings = new StringBuilder();
           StringBuilder totals = new StringBuilder();
+          
+          long numQueued = 0;
+          long totalQueueDelay = 0;
+          LatencyHistogram queueDelays = new LatencyHistogram();
 
-          for (Map.Entry<String, TaskStats> e : this.taskStats.entrySet()) {
-            TaskStats ms = e.getValue();
+          for (int id = 0; id < this.taskStats.length; ++id) {
+            TaskStats ms = this.taskStats[id];
+            
+            if (ms == null) {
+              continue;
+            }
             
-            headings.append(e.getKey() + ",");
+            headings.append(Logger.getTypeName(id) + ",");
             totals.append(ms.executionCount + ",");
             
-            numTasks += ms.executionCount.get();
-            totalRuntime += ms.totalRuntime.get();
-            numRetries += ms.retryCount.get();
-            numWaits += ms.waitCount.get();
+            numTasks += ms.executionCount;
+            totalRuntime += ms.getTotalRuntime();
+            numRetries += ms.retryCount;
+            numWaits += ms.waitCount;
+            
+            numQueued += ms.queueCount;
+            totalQueueDelay += ms.totalQueueDelay;
+            queueDelays.add(ms.queueDelays);
           }
           
           file.write(
@@ -271,6 +613,13 @@ public class Logger implements Runnable {
               "Tasks not ready when retrieved," +
               "Tasks not ready for immediate rerun," +
               "Combined runtime (ns)," +
+              "Scheduling mode," +
+              "Average queue delay (ns)," +
+              "p99 queue delay (ns)," +
+              "Lock acquisitions," +
+              "Lock contention failures," +
+              "Total lock hold time (ns)," +
+              "p99 lock hold time (ns)," +
               headings.toString() +
               "\n");
           
@@ -281,6 +630,13 @@ public class Logger implements Runnable {
               numRetries + "," +
               numWaits + "," +
               totalRuntime + "," +
+              this.schedulingMode + "," +
+              (numQueued > 0 ? (double) totalQueueDelay / numQueued : 0) + "," +
+              queueDelays.getValueAtPercentile(99.0) + "," +
+              this.lockAcquisitions + "," +
+              this.lockFailures + "," +
+              this.totalLockHeld + "," +
+              this.lockHeld.getValueAtPercentile(99.0) + "," +
               totals.toString() +
               "\n");
         } finally {
@@ -296,75 +652,143 @@ public class Logger implements Runnable {
   }
   
   public void taskRun(Task m) {
-    this.taskRun(m.name);
+    TaskStats ms = this.getTaskStats(Logger.getTypeId(m.name));
     
-    if (this.mode == Mode.DETAILED || (this.mode == Mode.SAMPLE && Math.random() >= 0.99)) {
-      this.pendingMessages.add(m);
-    }
-
-    if (this.mode == Mode.SAMPLE) {
-      TaskStats ms = this.taskStats.get(m.name);
+    ++ms.executionCount;
     
-      ms.totalRuntime.addAndGet(m.duration);
-      
-      double xbar_n1 = ms.meanRuntime.get();
+    if (this.shouldSample()) {
+      ms.sample(m.duration.longValue());
       
-      double xbar_n = xbar_n1 + (m.duration - xbar_n1) / ms.executionCount.get();
-      
-      ms.meanRuntime.set(xbar_n);
-      ms.sumSquaresRuntime.set(ms.sumSquaresRuntime.get() + (m.duration - xbar_n) * (m.duration - xbar_n1));
+      if (this.mode != Mode.BASIC) {
+        this.pendingMessages.add(m);
+      }
     }
   }
   
   public void taskRun(String m) {
-    TaskStats ms = this.taskStats.get(m);
+    this.getTaskStats(Logger.getTypeId(m)).executionCount++;
+  }
+  
+  /**
+   * @param id from getTypeId().
+   * @param duration runtime in nanoseconds.
+   */
+  public void taskRun(int id, long duration) {
+    TaskStats ms = this.getTaskStats(id);
     
-    if (ms == null) {
-      synchronized (this.taskStats) {
-        if (!this.taskStats.containsKey(m)) {
-          ms = new TaskStats();
-          this.taskStats.put(m, ms);
-        } else {
-          ms = this.taskStats.get(ms);
-        }
-      }
+    ++ms.executionCount;
+    
+    if (this.shouldSample()) {
+      ms.sample(duration);
     }
-  
-    ms.executionCount.incrementAndGet();
   }
 
-  public void taskWaited(String m) {
-    TaskStats ms = this.taskStats.get(m);
+  /**
+   * Records one run of a chunked phase.
+   * 
+   * @param busy summed runtime of every chunk in nanoseconds.
+   * @param idle time the participating threads spent not running a chunk
+   *             while the phase was in progress.
+   */
+  public void phaseRun(String m, int chunks, int items, long busy, long idle) {
+    PhaseStats ps = this.getPhaseStats(m);
     
-    if (ms == null) {
-      synchronized (this.taskStats) {
-        if (!this.taskStats.containsKey(m)) {
-          ms = new TaskStats();
-          this.taskStats.put(m, ms);
-        } else {
-          ms = this.taskStats.get(ms);
+    ps.runCount.incrementAndGet();
+    ps.chunkCount.addAndGet(chunks);
+    ps.itemCount.addAndGet(items);
+    ps.busyTime.addAndGet(busy);
+    ps.idleTime.addAndGet(idle);
+    
+    if (items > 0) {
+      double cost = (double) busy / items;
+      double previous = ps.itemCost;
+      
+      // Smoothed so the grain follows the workload without jumping around.
+      ps.itemCost = previous <= 0 ? cost : previous + (cost - previous) * Logger.ITEM_COST_WEIGHT;
+    }
+  }
+  
+  /**
+   * @return the smoothed runtime of a single item in the named phase, or 0
+   *         if it hasn't been run yet.
+   */
+  public double getItemCost(String m) {
+    PhaseStats ps = this.phaseStats.get(m);
+    
+    return ps != null ? ps.itemCost : 0;
+  }
+  
+  private PhaseStats getPhaseStats(String m) {
+    PhaseStats ps = this.phaseStats.get(m);
+    
+    if (ps == null) {
+      synchronized (this.phaseStats) {
+        ps = this.phaseStats.get(m);
+        
+        if (ps == null) {
+          ps = new PhaseStats();
+          this.phaseStats.put(m, ps);
         }
       }
     }
+    
+    return ps;
+  }
+
+  public void taskWaited(String m) {
+    this.taskWaited(Logger.getTypeId(m));
+  }
   
-    ms.waitCount.incrementAndGet();
+  public void taskWaited(int id) {
+    this.getTaskStats(id).waitCount++;
   }
 
   public void taskRetried(String m) {
-    TaskStats ms = this.taskStats.get(m);
-    
-    if (ms == null) {
-      synchronized (this.taskStats) {
-        if (!this.taskStats.containsKey(m)) {
-          ms = new TaskStats();
-          this.taskStats.put(m, ms);
-        } else {
-          ms = this.taskStats.get(ms);
-        }
-      }
+    this.taskRetried(Logger.getTypeId(m));
+  }
+  
+  public void taskRetried(int id) {
+    this.getTaskStats(id).retryCount++;
+  }
+  
+  /**
+   * @param delay nanoseconds between the task being queued and starting,
+   *              negative if it wasn't queued.
+   */
+  public void taskQueued(int id, long delay) {
+    if (delay < 0) {
+      return;
     }
+    
+    TaskStats ms = this.getTaskStats(id);
+    
+    ++ms.queueCount;
+    ms.totalQueueDelay += delay;
+    ms.queueDelays.record(delay);
+  }
+  
+  /**
+   * Records a scheduler lock being acquired and held for duration
+   * nanoseconds.
+   */
+  public void lockHeld(long duration) {
+    ++this.lockAcquisitions;
+    this.totalLockHeld += duration;
+    this.lockHeld.record(duration);
+  }
+  
+  /**
+   * Records a tryLock() on a scheduler lock that found it already held.
+   */
+  public void lockFailed() {
+    ++this.lockFailures;
+  }
   
-    ms.retryCount.incrementAndGet();
+  private void resetLockStats() {
+    this.lockAcquisitions = 0;
+    this.lockFailures = 0;
+    this.totalLockHeld = 0;
+    this.lockHeld.reset();
   }
   
   public void flush() {
@@ -402,17 +826,32 @@ public class Logger implements Runnable {
     }
   }
   
+  /**
+   * @return the name log files from the current run share, with extension
+   *         added.
+   */
+  public String getFileName(String extension) {
+    return this.df.format(this.startDate) +
+        (this.description != null ? ("_" + this.description) : "" ) +
+        extension;
+  }
+  
   private FileWriter getFile(String extension) {
     try {
-      return new FileWriter(
-          this.df.format(this.startDate) +
-          (this.description != null ? ("_" + this.description) : "" ) +
-          extension);
+      return new FileWriter(this.getFileName(extension));
     } catch (IOException e) {
       return null;
     }
   }
   
+  /**
+   * @return true while a DETAILED run is being logged, workers write their
+   *         task runs to trace files named after the run.
+   */
+  public boolean isTracing() {
+    return this.mode == Mode.DETAILED && this.startDate != null;
+  }
+  
   public void run() {
     while (!Thread.currentThread().isInterrupted()) {
       this.flush();
@@ -45,6 +45,7 @@ public class MainMenuState implements GameState {
   Button stButton,
          dpButton,
          tbButton,
+         ecsButton,
          exitButton;
   
   @SuppressWarnings("unused")
@@ -80,9 +81,10 @@ public class MainMenuState implements GameState {
     
     Image buttons = new Image("assets/menubuttons.png");
     
-    this.stButton = new Button(buttons.getSubImage(0, 0, 320, 64), new Rectangle(0.3f, 0.1f, 0.4f, 0.2f), Color.green);
-    this.dpButton = new Button(buttons.getSubImage(0, 128, 320, 64), new Rectangle(0.3f, 0.3f, 0.4f, 0.2f), Color.cyan);
-    this.tbButton = new Button(buttons.getSubImage(0, 64, 320, 64), new Rectangle(0.3f, 0.5f, 0.4f, 0.2f), Color.blue);
+    this.stButton = new Button(buttons.getSubImage(0, 0, 320, 64), new Rectangle(0.3f, 0.05f, 0.4f, 0.15f), Color.green);
+    this.dpButton = new Button(buttons.getSubImage(0, 128, 320, 64), new Rectangle(0.3f, 0.22f, 0.4f, 0.15f), Color.cyan);
+    this.tbButton = new Button(buttons.getSubImage(0, 64, 320, 64), new Rectangle(0.3f, 0.39f, 0.4f, 0.15f), Color.blue);
+    this.ecsButton = new Button("Entity System", new Rectangle(0.3f, 0.56f, 0.4f, 0.15f), Color.magenta);
     this.exitButton = new Button(buttons.getSubImage(0, 192, 320, 64), new Rectangle(0.3f, 0.8f, 0.4f, 0.2f), Color.red);
   }
 
@@ -101,6 +103,7 @@ public class MainMenuState implements GameState {
     this.stButton.render(container, g);
     this.dpButton.render(container, g);
     this.tbButton.render(container, g);
+    this.ecsButton.render(container, g);
     
     this.exitButton.render(container, g);
   }
@@ -128,6 +131,7 @@ public class MainMenuState implements GameState {
     this.stButton.mouseMove(p);
     this.dpButton.mouseMove(p);
     this.tbButton.mouseMove(p);
+    this.ecsButton.mouseMove(p);
     this.exitButton.mouseMove(p);
     
     if (input.isMousePressed(Input.MOUSE_LEFT_BUTTON)) {
@@ -137,6 +141,8 @@ public class MainMenuState implements GameState {
         game.enterState(BofSA.States.DATA_PARALLEL.ordinal());
       } else if (this.tbButton.mousePressed(p)) {
         game.enterState(BofSA.States.TASK_BASED.ordinal());
+      } else if (this.ecsButton.mousePressed(p)) {
+        game.enterState(BofSA.States.ENTITY_SYSTEM.ordinal());
       } else if (this.exitButton.mousePressed(p)) {
         container.exit();
       }
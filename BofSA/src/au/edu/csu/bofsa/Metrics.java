@@ -0,0 +1,75 @@
+/**
+ *   The MIT License
+ *
+ *  Copyright 2011 Andrew James <ephphatha@thelettereph.com>.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package au.edu.csu.bofsa;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registers live metrics beans with the platform MBean server so a running
+ * game can be watched from jconsole or jcmd.
+ * 
+ * @author ephphatha
+ *
+ */
+public class Metrics {
+  public static final String DOMAIN = "au.edu.csu.bofsa";
+  
+  /**
+   * @return the name the bean was registered under, or null if it couldn't
+   *         be registered.
+   */
+  public static ObjectName register(String type, String name, Object bean) {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName objectName = new ObjectName(Metrics.DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+      
+      if (server.isRegistered(objectName)) {
+        server.unregisterMBean(objectName);
+      }
+      
+      server.registerMBean(bean, objectName);
+      
+      return objectName;
+    } catch (JMException e) {
+      System.out.println("Unable to register " + type + " metrics for " + name + ": " + e.getMessage());
+      return null;
+    }
+  }
+  
+  public static void unregister(ObjectName objectName) {
+    if (objectName == null) {
+      return;
+    }
+    
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+    } catch (JMException e) {
+      //Goggles
+    }
+  }
+}
@@ -0,0 +1,148 @@
+/**
+ *   The MIT License
+ *
+ *  Copyright 2011 Andrew James <ephphatha@thelettereph.com>.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package au.edu.csu.bofsa;
+
+import au.edu.csu.bofsa.Events.Event;
+import au.edu.csu.bofsa.Events.EventSink;
+import au.edu.csu.bofsa.Events.EventSource;
+import au.edu.csu.bofsa.Events.PathModEvent;
+import au.edu.csu.bofsa.Events.Stream;
+
+/**
+ * Pathable/blocked state of every tile on the board. Changes are published to
+ * sinks as PathModEvents so the pathing structures built on top of the grid
+ * can update themselves incrementally.
+ * 
+ * @author ephphatha
+ *
+ */
+public class PathGrid implements EventSource, EventSink, Comparable<Object> {
+  protected final int width;
+  protected final int height;
+  
+  protected final boolean[] pathable;
+  
+  protected volatile int version;
+  
+  protected Stream sinks;
+  
+  public PathGrid(int width, int height) {
+    this.width = width;
+    this.height = height;
+    
+    this.pathable = new boolean[width * height];
+    
+    this.version = 0;
+    
+    this.sinks = new Stream();
+  }
+  
+  public int getWidth() {
+    return this.width;
+  }
+  
+  public int getHeight() {
+    return this.height;
+  }
+  
+  public boolean contains(int x, int y) {
+    return x >= 0 && x < this.width && y >= 0 && y < this.height;
+  }
+  
+  /**
+   * Incremented every time a tile changes state after the level is loaded.
+   */
+  public int getVersion() {
+    return this.version;
+  }
+  
+  public boolean isPathable(int x, int y) {
+    return this.contains(x, y) && this.pathable[y * this.width + x];
+  }
+  
+  /**
+   * Sets the initial state of a tile without notifying sinks. Only meant to be
+   * used while the level is being loaded.
+   */
+  public void initPathable(int x, int y, boolean pathable) {
+    this.pathable[y * this.width + x] = pathable;
+  }
+  
+  public boolean setPathable(int x, int y, boolean pathable) {
+    if (!this.contains(x, y)) {
+      return false;
+    }
+    
+    synchronized (this) {
+      int i = y * this.width + x;
+      
+      if (this.pathable[i] == pathable) {
+        return false;
+      }
+      
+      this.pathable[i] = pathable;
+      this.version++;
+      
+      this.notifySinks(
+          new PathModEvent(
+              this,
+              new PathModEvent.Data(
+                  pathable ? PathModEvent.Data.Type.UNBLOCKED : PathModEvent.Data.Type.BLOCKED,
+                  new CopyablePoint(x, y)),
+              Event.Type.BROADCAST,
+              SimClock.now()));
+    }
+    
+    return true;
+  }
+
+  @Override
+  public void handleEvent(Event event) {
+    if (event instanceof PathModEvent && event.getSource() != this) {
+      PathModEvent.Data d = (PathModEvent.Data) event.value;
+      
+      this.setPathable(d.position.x, d.position.y, d.type == PathModEvent.Data.Type.UNBLOCKED);
+    }
+  }
+
+  @Override
+  public void addSink(EventSink sink) {
+    this.sinks.addSink(sink);
+  }
+
+  @Override
+  public void removeSink(EventSink sink) {
+    this.sinks.removeSink(sink);
+  }
+
+  @Override
+  public void notifySinks(Event event) {
+    this.sinks.notifySinks(event);
+  }
+
+  @Override
+  public int compareTo(Object o) {
+    return this.hashCode() - o.hashCode();
+  }
+}
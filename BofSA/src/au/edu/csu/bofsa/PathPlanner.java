@@ -0,0 +1,53 @@
+/**
+ *   The MIT License
+ *
+ *  Copyright 2011 Andrew James <ephphatha@thelettereph.com>.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package au.edu.csu.bofsa;
+
+import org.newdawn.slick.geom.Vector2f;
+
+/**
+ * Something that can steer creeps across the board towards a goal.
+ * 
+ * @author ephphatha
+ *
+ */
+public interface PathPlanner {
+  
+  /**
+   * Steering towards a single goal, shared by every creep heading there and
+   * safe to query from any thread.
+   */
+  public static interface Steering {
+    /**
+     * Writes the next point to head for on the way to the goal into target.
+     * 
+     * @return false if the caller should head directly for the goal.
+     */
+    public boolean getSteeringTarget(float x, float y, Vector2f target);
+  }
+  
+  /**
+   * @return null if the goal isn't on the board.
+   */
+  public Steering getSteering(Vector2f goal);
+}
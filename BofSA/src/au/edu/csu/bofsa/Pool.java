@@ -0,0 +1,77 @@
+/**
+ *   The MIT License
+ *
+ *  Copyright 2011 Andrew James <ephphatha@thelettereph.com>.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package au.edu.csu.bofsa;
+
+import java.util.Arrays;
+
+/**
+ * Stack of spare instances waiting to be rearmed. Backed by an array so
+ * releasing doesn't allocate once the pool has grown to its working size.
+ * 
+ * @author ephphatha
+ *
+ */
+public class Pool<T> {
+  private static final int INITIAL_CAPACITY = 64;
+  
+  protected Object[] items;
+  protected int count;
+  
+  public Pool() {
+    this.items = new Object[Pool.INITIAL_CAPACITY];
+    this.count = 0;
+  }
+  
+  /**
+   * @return a spare instance, or null if the pool is empty.
+   */
+  @SuppressWarnings("unchecked")
+  public synchronized T take() {
+    if (this.count <= 0) {
+      return null;
+    }
+    
+    T t = (T) this.items[--this.count];
+    this.items[this.count] = null;
+    
+    return t;
+  }
+  
+  public synchronized void release(T t) {
+    if (this.count >= this.items.length) {
+      this.items = Arrays.copyOf(this.items, this.items.length * 2);
+    }
+    
+    this.items[this.count++] = t;
+  }
+  
+  public synchronized int size() {
+    return this.count;
+  }
+  
+  public synchronized void clear() {
+    Arrays.fill(this.items, 0, this.count, null);
+    this.count = 0;
+  }
+}
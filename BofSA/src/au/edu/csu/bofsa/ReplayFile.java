@@ -0,0 +1,284 @@
+/**
+ *   The MIT License
+ *
+ *  Copyright 2011 Andrew James <ephphatha@thelettereph.com>.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package au.edu.csu.bofsa;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A replay written by ReplayRecorder, mapped into memory so any point in it
+ * can be reached without reading what comes before.
+ * 
+ * Everything is big endian. The file starts with a header:
+ *   int MAGIC, short VERSION, UTF level, UTF description, long recorded at
+ *   (System.currentTimeMillis())
+ * followed by records, each starting with a tag byte:
+ *   INPUT:      long time, short x, short y
+ *   CHECKPOINT: long time, int inputs so far, int creeps, int towers,
+ *               short tiles, then short x, short y for each tower tile
+ *               clicked so far
+ * then the index, one entry per checkpoint in time order:
+ *   long time, int offset of the checkpoint record
+ * and finally a footer:
+ *   long length, int index offset, int checkpoints, int INDEX_MAGIC
+ * 
+ * Times are nanoseconds of simulation time since the recording started.
+ * 
+ * @author ephphatha
+ *
+ */
+public class ReplayFile {
+  public static final int MAGIC = 0x426f6652; // BofR
+  public static final int INDEX_MAGIC = 0x426f6649; // BofI
+  public static final short VERSION = 1;
+  
+  public static final byte INPUT = 1;
+  public static final byte CHECKPOINT = 2;
+  
+  public static final int INDEX_ENTRY_SIZE = 12;
+  public static final int FOOTER_SIZE = 20;
+  
+  /**
+   * A tower placement asked for by the player.
+   */
+  public static class Input {
+    public final long time;
+    public final CopyablePoint position;
+    
+    public Input(long time, CopyablePoint position) {
+      this.time = time;
+      this.position = position;
+    }
+  }
+  
+  /**
+   * The state of the world at a point in the recording. Creeps can't be
+   * carried from one game mode to another, so a checkpoint holds every tile
+   * clicked so far, enough to put the towers back, and the creep and tower
+   * counts to check a replay against.
+   */
+  public static class Checkpoint {
+    public final long time;
+    public final int offset;
+    public final int inputs;
+    public final int creeps;
+    public final int towers;
+    public final List<CopyablePoint> tiles;
+    
+    public Checkpoint(long time, int offset, int inputs, int creeps, int towers, List<CopyablePoint> tiles) {
+      this.time = time;
+      this.offset = offset;
+      this.inputs = inputs;
+      this.creeps = creeps;
+      this.towers = towers;
+      this.tiles = tiles;
+    }
+  }
+  
+  protected final ByteBuffer buffer;
+  protected final String level;
+  protected final String description;
+  protected final long recordedAt;
+  protected final long length;
+  protected final long[] checkpointTimes;
+  protected final int[] checkpointOffsets;
+  
+  public static ReplayFile open(String fileName) throws IOException {
+    RandomAccessFile file = new RandomAccessFile(fileName, "r");
+    
+    try {
+      FileChannel channel = file.getChannel();
+      
+      // The mapping stays valid after the file is closed.
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      
+      return new ReplayFile(buffer);
+    } finally {
+      file.close();
+    }
+  }
+  
+  public ReplayFile(ByteBuffer buffer) throws IOException {
+    this.buffer = buffer;
+    
+    try {
+      if (buffer.getInt(0) != ReplayFile.MAGIC || buffer.getShort(4) != ReplayFile.VERSION) {
+        throw new IOException("Not a replay file");
+      }
+      
+      int footer = buffer.limit() - ReplayFile.FOOTER_SIZE;
+      
+      if (footer < 0 || buffer.getInt(footer + 16) != ReplayFile.INDEX_MAGIC) {
+        throw new IOException("Replay file has no index, the recording didn't finish");
+      }
+      
+      ByteBuffer header = buffer.duplicate();
+      header.position(6);
+      
+      this.level = ReplayFile.readUTF(header);
+      this.description = ReplayFile.readUTF(header);
+      this.recordedAt = header.getLong();
+      
+      this.length = buffer.getLong(footer);
+      
+      int index = buffer.getInt(footer + 8);
+      int count = buffer.getInt(footer + 12);
+      
+      this.checkpointTimes = new long[count];
+      this.checkpointOffsets = new int[count];
+      
+      for (int i = 0; i < count; ++i) {
+        this.checkpointTimes[i] = buffer.getLong(index + i * ReplayFile.INDEX_ENTRY_SIZE);
+        this.checkpointOffsets[i] = buffer.getInt(index + i * ReplayFile.INDEX_ENTRY_SIZE + 8);
+      }
+    } catch (IndexOutOfBoundsException e) {
+      throw new IOException("Replay file is truncated");
+    }
+  }
+  
+  protected static String readUTF(ByteBuffer b) throws IOException {
+    int length = b.getShort() & 0xFFFF;
+    byte[] bytes = new byte[length];
+    
+    b.get(bytes);
+    
+    return new String(bytes, "UTF-8");
+  }
+  
+  public String getLevel() {
+    return this.level;
+  }
+  
+  /**
+   * @return the game mode the replay was recorded in.
+   */
+  public String getDescription() {
+    return this.description;
+  }
+  
+  public long getRecordedAt() {
+    return this.recordedAt;
+  }
+  
+  /**
+   * @return how much simulation time the recording covers, in nanoseconds.
+   */
+  public long getLength() {
+    return this.length;
+  }
+  
+  public int getCheckpointCount() {
+    return this.checkpointTimes.length;
+  }
+  
+  public Checkpoint getCheckpoint(int i) {
+    int offset = this.checkpointOffsets[i];
+    ByteBuffer b = this.buffer.duplicate();
+    
+    b.position(offset + 1);
+    
+    long time = b.getLong();
+    int inputs = b.getInt();
+    int creeps = b.getInt();
+    int towers = b.getInt();
+    int count = b.getShort() & 0xFFFF;
+    
+    List<CopyablePoint> tiles = new ArrayList<CopyablePoint>(count);
+    
+    for (int j = 0; j < count; ++j) {
+      tiles.add(new CopyablePoint(b.getShort(), b.getShort()));
+    }
+    
+    return new Checkpoint(time, offset, inputs, creeps, towers, tiles);
+  }
+  
+  /**
+   * @return the last checkpoint at or before time, the recording always
+   *         starts with one so there's always an answer.
+   */
+  public Checkpoint seek(long time) {
+    int low = 0;
+    int high = this.checkpointTimes.length - 1;
+    
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+      
+      if (this.checkpointTimes[mid] <= time) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    
+    return this.getCheckpoint(low);
+  }
+  
+  /**
+   * @return the inputs from time from up to but not including time to,
+   *         starting the scan from the nearest checkpoint.
+   */
+  public List<Input> getInputs(long from, long to) {
+    List<Input> inputs = new ArrayList<Input>();
+    
+    if (this.checkpointTimes.length == 0) {
+      return inputs;
+    }
+    
+    ByteBuffer b = this.buffer.duplicate();
+    b.position(this.seek(from).offset);
+    
+    int end = this.buffer.limit() - ReplayFile.FOOTER_SIZE - this.checkpointTimes.length * ReplayFile.INDEX_ENTRY_SIZE;
+    
+    while (b.position() < end) {
+      byte tag = b.get();
+      long time = b.getLong();
+      
+      if (time >= to) {
+        break;
+      }
+      
+      if (tag == ReplayFile.INPUT) {
+        CopyablePoint p = new CopyablePoint(b.getShort(), b.getShort());
+        
+        if (time >= from) {
+          inputs.add(new Input(time, p));
+        }
+      } else if (tag == ReplayFile.CHECKPOINT) {
+        b.position(b.position() + 12);
+        
+        int tiles = b.getShort() & 0xFFFF;
+        b.position(b.position() + tiles * 4);
+      } else {
+        break;
+      }
+    }
+    
+    return inputs;
+  }
+}
@@ -0,0 +1,234 @@
+/**
+ *   The MIT License
+ *
+ *  Copyright 2011 Andrew James <ephphatha@thelettereph.com>.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package au.edu.csu.bofsa;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Records the player's tower placements against simulation time so a
+ * session can be played back later, in any game mode and with any number of
+ * threads. A checkpoint is written every CHECKPOINT_INTERVAL of simulation
+ * time and indexed at the end of the file, see ReplayFile for the layout.
+ * 
+ * Recording is off unless enabled before a game starts, the game modes call
+ * begin() and end() around a level, record() for each click and tick() as
+ * the game runs.
+ * 
+ * @author ephphatha
+ *
+ */
+public class ReplayRecorder {
+  public static final long CHECKPOINT_INTERVAL = 1000000000L;
+  
+  private static boolean enabled = false;
+  private static volatile boolean recording = false;
+  private static volatile long nextCheckpoint;
+  
+  private static ByteArrayOutputStream bytes;
+  private static DataOutputStream out;
+  private static List<Long> indexTimes;
+  private static List<Integer> indexOffsets;
+  
+  private static String description;
+  private static SimClock clock;
+  private static long start;
+  private static GameStateMetrics.Source source;
+  private static int inputs;
+  private static Set<CopyablePoint> tiles;
+  
+  public static void setEnabled(boolean enabled) {
+    ReplayRecorder.enabled = enabled;
+  }
+  
+  public static boolean isEnabled() {
+    return ReplayRecorder.enabled;
+  }
+  
+  /**
+   * Starts a new recording, any unfinished one is thrown away.
+   * 
+   * @param description the game mode, goes in the file name.
+   * @param source where checkpoints get creep and tower counts from.
+   */
+  public static synchronized void begin(String description, String level, SimClock clock, GameStateMetrics.Source source) {
+    if (!ReplayRecorder.enabled) {
+      return;
+    }
+    
+    ReplayRecorder.bytes = new ByteArrayOutputStream();
+    ReplayRecorder.out = new DataOutputStream(ReplayRecorder.bytes);
+    ReplayRecorder.indexTimes = new ArrayList<Long>();
+    ReplayRecorder.indexOffsets = new ArrayList<Integer>();
+    
+    ReplayRecorder.description = description;
+    ReplayRecorder.clock = clock;
+    ReplayRecorder.start = clock.nanoTime();
+    ReplayRecorder.source = source;
+    ReplayRecorder.inputs = 0;
+    ReplayRecorder.tiles = new LinkedHashSet<CopyablePoint>();
+    
+    try {
+      ReplayRecorder.out.writeInt(ReplayFile.MAGIC);
+      ReplayRecorder.out.writeShort(ReplayFile.VERSION);
+      ReplayRecorder.out.writeUTF(level);
+      ReplayRecorder.out.writeUTF(description);
+      ReplayRecorder.out.writeLong(System.currentTimeMillis());
+      
+      ReplayRecorder.writeCheckpoint(0);
+    } catch (IOException e) {
+      //Goggles, writing to memory
+    }
+    
+    ReplayRecorder.recording = true;
+  }
+  
+  /**
+   * Records a click asking for a tower on the given tile, whether or not the
+   * tower could be built.
+   */
+  public static void record(CopyablePoint tile) {
+    if (ReplayRecorder.recording) {
+      ReplayRecorder.writeInput(tile);
+    }
+  }
+  
+  /**
+   * Writes a checkpoint if one is due, cheap enough to call every tick.
+   */
+  public static void tick() {
+    if (ReplayRecorder.recording && ReplayRecorder.clock.nanoTime() >= ReplayRecorder.nextCheckpoint) {
+      ReplayRecorder.checkpoint();
+    }
+  }
+  
+  private static synchronized void writeInput(CopyablePoint tile) {
+    if (!ReplayRecorder.recording) {
+      return;
+    }
+    
+    try {
+      ReplayRecorder.out.writeByte(ReplayFile.INPUT);
+      ReplayRecorder.out.writeLong(ReplayRecorder.clock.nanoTime() - ReplayRecorder.start);
+      ReplayRecorder.out.writeShort(tile.x);
+      ReplayRecorder.out.writeShort(tile.y);
+    } catch (IOException e) {
+      //Goggles
+    }
+    
+    ReplayRecorder.inputs++;
+    ReplayRecorder.tiles.add(tile.copy());
+  }
+  
+  private static synchronized void checkpoint() {
+    long now = ReplayRecorder.clock.nanoTime();
+    
+    if (!ReplayRecorder.recording || now < ReplayRecorder.nextCheckpoint) {
+      return;
+    }
+    
+    try {
+      ReplayRecorder.writeCheckpoint(now - ReplayRecorder.start);
+    } catch (IOException e) {
+      //Goggles
+    }
+  }
+  
+  private static void writeCheckpoint(long time) throws IOException {
+    ReplayRecorder.indexTimes.add(Long.valueOf(time));
+    ReplayRecorder.indexOffsets.add(Integer.valueOf(ReplayRecorder.out.size()));
+    
+    ReplayRecorder.out.writeByte(ReplayFile.CHECKPOINT);
+    ReplayRecorder.out.writeLong(time);
+    ReplayRecorder.out.writeInt(ReplayRecorder.inputs);
+    ReplayRecorder.out.writeInt(ReplayRecorder.source.getCreepCount());
+    ReplayRecorder.out.writeInt(ReplayRecorder.source.getTowerCount());
+    ReplayRecorder.out.writeShort(ReplayRecorder.tiles.size());
+    
+    for (CopyablePoint p : ReplayRecorder.tiles) {
+      ReplayRecorder.out.writeShort(p.x);
+      ReplayRecorder.out.writeShort(p.y);
+    }
+    
+    ReplayRecorder.nextCheckpoint = ReplayRecorder.start + (time / ReplayRecorder.CHECKPOINT_INTERVAL + 1) * ReplayRecorder.CHECKPOINT_INTERVAL;
+  }
+  
+  /**
+   * Finishes the recording with a last checkpoint and the index, and writes
+   * it to <timestamp>_<description>.replay. Call before the level is torn
+   * down so the counts are still right.
+   */
+  public static synchronized void end() {
+    if (!ReplayRecorder.recording) {
+      return;
+    }
+    
+    ReplayRecorder.recording = false;
+    
+    String name = new SimpleDateFormat("yyyyMMdd'T'HHmmss").format(Calendar.getInstance().getTime()) + "_" + ReplayRecorder.description + ".replay";
+    
+    try {
+      long length = ReplayRecorder.clock.nanoTime() - ReplayRecorder.start;
+      
+      ReplayRecorder.writeCheckpoint(length);
+      
+      int index = ReplayRecorder.out.size();
+      
+      for (int i = 0; i < ReplayRecorder.indexTimes.size(); ++i) {
+        ReplayRecorder.out.writeLong(ReplayRecorder.indexTimes.get(i).longValue());
+        ReplayRecorder.out.writeInt(ReplayRecorder.indexOffsets.get(i).intValue());
+      }
+      
+      ReplayRecorder.out.writeLong(length);
+      ReplayRecorder.out.writeInt(index);
+      ReplayRecorder.out.writeInt(ReplayRecorder.indexTimes.size());
+      ReplayRecorder.out.writeInt(ReplayFile.INDEX_MAGIC);
+      
+      FileOutputStream file = new FileOutputStream(name);
+      
+      try {
+        ReplayRecorder.bytes.writeTo(file);
+      } finally {
+        file.close();
+      }
+      
+      System.out.println("Recorded " + ReplayRecorder.inputs + " inputs to " + name);
+    } catch (IOException e) {
+      System.out.println("Unable to write " + name + ": " + e.getMessage());
+    } finally {
+      ReplayRecorder.bytes = null;
+      ReplayRecorder.out = null;
+      ReplayRecorder.source = null;
+      ReplayRecorder.tiles = null;
+    }
+  }
+}
@@ -0,0 +1,106 @@
+/**
+ *   The MIT License
+ *
+ *  Copyright 2011 Andrew James <ephphatha@thelettereph.com>.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package au.edu.csu.bofsa;
+
+import java.util.List;
+
+import org.newdawn.slick.geom.Vector2f;
+
+/**
+ * The waypoints for a spawn packed into arrays. Routes never change once
+ * built so every creep from the spawn shares the one instance and only keeps
+ * the index of the waypoint it's heading for.
+ * 
+ * @author ephphatha
+ *
+ */
+public class Route {
+  protected final float[] x;
+  protected final float[] y;
+  
+  /**
+   * Distance along the route from the first waypoint to each waypoint.
+   */
+  protected final float[] length;
+  
+  /**
+   * @param checkpoints in the order they're to be visited.
+   */
+  public Route(List<CheckPoint> checkpoints) {
+    if (checkpoints.isEmpty()) {
+      throw new IllegalArgumentException("Must be at least one waypoint.");
+    }
+    
+    int size = checkpoints.size();
+    
+    this.x = new float[size];
+    this.y = new float[size];
+    this.length = new float[size];
+    
+    for (int i = 0; i < size; ++i) {
+      Vector2f p = checkpoints.get(i).position;
+      
+      this.x[i] = p.x;
+      this.y[i] = p.y;
+      
+      if (i > 0) {
+        float dx = this.x[i] - this.x[i - 1];
+        float dy = this.y[i] - this.y[i - 1];
+        
+        this.length[i] = this.length[i - 1] + (float) Math.sqrt(dx * dx + dy * dy);
+      }
+    }
+  }
+  
+  public int size() {
+    return this.x.length;
+  }
+  
+  public boolean isLast(int i) {
+    return i >= this.x.length - 1;
+  }
+  
+  public float getX(int i) {
+    return this.x[i];
+  }
+  
+  public float getY(int i) {
+    return this.y[i];
+  }
+  
+  public float getLength(int i) {
+    return this.length[i];
+  }
+  
+  public float getTotalLength() {
+    return this.length[this.length.length - 1];
+  }
+  
+  public float distanceSquared(int i, float x, float y) {
+    float dx = this.x[i] - x;
+    float dy = this.y[i] - y;
+    
+    return dx * dx + dy * dy;
+  }
+}
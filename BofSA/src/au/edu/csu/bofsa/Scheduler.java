@@ -23,15 +23,19 @@
  */
 package au.edu.csu.bofsa;
 
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
+import javax.management.ObjectName;
+
 import au.edu.csu.bofsa.Behaviours.Behaviour;
 import au.edu.csu.bofsa.Events.Event;
 import au.edu.csu.bofsa.Events.EventSink;
@@ -43,7 +47,77 @@ import au.edu.csu.bofsa.Events.GenericEvent;
  */
 public class Scheduler implements Caller<Boolean>, EventSink, Comparable<Object> {
 
-  protected List<Thread> threads;
+  /**
+   * How long a parallelFor chunk should take once the per item cost of a
+   * phase is known.
+   */
+  public static final long TARGET_CHUNK_NANOS = 50000;
+  
+  /**
+   * Body of a parallelFor, called with a half open range of indices.
+   */
+  public static interface Range {
+    public void run(int from, int to);
+  }
+  
+  /**
+   * Shared by the caller and the helper tasks of a parallelFor, whoever gets
+   * there first claims the next chunk.
+   */
+  protected static class ParallelFor implements Callable<Boolean> {
+    protected final Range body;
+    protected final int span;
+    protected final int size;
+    protected final int grain;
+    protected final int chunks;
+    
+    protected final AtomicInteger next;
+    protected final AtomicInteger remaining;
+    protected final AtomicLong busyTime;
+    
+    public ParallelFor(Range body, int span, int size, int grain) {
+      this.body = body;
+      this.span = span;
+      this.size = size;
+      this.grain = grain;
+      this.chunks = (size + grain - 1) / grain;
+      
+      this.next = new AtomicInteger(0);
+      this.remaining = new AtomicInteger(this.chunks);
+      this.busyTime = new AtomicLong(0);
+    }
+    
+    @Override
+    public Boolean call() {
+      int chunk;
+      
+      while ((chunk = this.next.getAndIncrement()) < this.chunks) {
+        int from = chunk * this.grain;
+        int to = Math.min(from + this.grain, this.size);
+        
+        long start = System.nanoTime();
+        
+        SpanProfiler.enter(this.span);
+        
+        try {
+          this.body.run(from, to);
+        } finally {
+          SpanProfiler.exit();
+          
+          this.busyTime.addAndGet(System.nanoTime() - start);
+          this.remaining.decrementAndGet();
+        }
+      }
+      
+      return false;
+    }
+    
+    public boolean isDone() {
+      return this.remaining.get() <= 0;
+    }
+  }
+
+  protected List<WorkerThread> threads;
   protected Queue<WorkerThread> idleThreads;
   
   protected Queue<Callable<Boolean>> tasks;
@@ -51,8 +125,21 @@ public class Scheduler implements Caller<Boolean>, EventSink, Comparable<Object>
   protected Lock waitingLock;
   protected Queue<Callable<Boolean>> unsortedTasks;
   
+  protected SimClock clock;
+  protected TimerWheel<Callable<Boolean>> sleepingTasks;
+  protected Lock sleepingLock;
+  
   protected AtomicInteger numIdle;
   
+  protected volatile WorkerThread[] workers;
+  
+  protected ObjectName metricsName;
+  
+  protected Logger logger;
+  
+  protected ThreadLocal<Logger> callerLoggers;
+  protected List<Logger> externalLoggers;
+  
   protected static enum State {
     RUNNING,
     STOPPED
@@ -60,7 +147,7 @@ public class Scheduler implements Caller<Boolean>, EventSink, Comparable<Object>
   
   protected State state;
   
-  protected static enum Mode {
+  public static enum Mode {
     UNORDERED,
     ORDERED_RETRY,
     ORDERED_PRECOMPUTE
@@ -69,7 +156,7 @@ public class Scheduler implements Caller<Boolean>, EventSink, Comparable<Object>
   protected Mode mode;
   
   public Scheduler() {
-    this.threads = new LinkedList<Thread>();
+    this.threads = new LinkedList<WorkerThread>();
     this.idleThreads = new ConcurrentLinkedQueue<WorkerThread>();
     
     this.tasks = new ConcurrentLinkedQueue<Callable<Boolean>>();
@@ -77,25 +164,70 @@ public class Scheduler implements Caller<Boolean>, EventSink, Comparable<Object>
     this.waitingLock = new ReentrantLock();
     this.unsortedTasks = new ConcurrentLinkedQueue<Callable<Boolean>>();
     
+    this.clock = SimClock.getDefault();
+    this.sleepingTasks = new TimerWheel<Callable<Boolean>>(this.clock.nanoTime());
+    this.sleepingLock = new ReentrantLock();
+    
     this.numIdle = new AtomicInteger();
     
+    this.workers = new WorkerThread[0];
+    
+    this.logger = new Logger();
+    
+    this.externalLoggers = Collections.synchronizedList(new LinkedList<Logger>());
+    this.callerLoggers = new ThreadLocal<Logger>() {
+      @Override
+      protected Logger initialValue() {
+        Logger l = new Logger();
+        l.copySettings(Scheduler.this.logger);
+        Scheduler.this.externalLoggers.add(l);
+        return l;
+      }
+    };
+    
     this.state = State.STOPPED;
     
     this.mode = Mode.ORDERED_PRECOMPUTE;
   }
   
+  public SimClock getClock() {
+    return this.clock;
+  }
+  
+  /**
+   * Only takes effect while the scheduler is stopped, wake times are read
+   * from the clock behaviours were made with so the two should match.
+   */
+  public void setClock(SimClock clock) {
+    if (this.state != State.STOPPED) {
+      return;
+    }
+    
+    this.sleepingLock.lock();
+    try {
+      this.clock = clock;
+      this.sleepingTasks = new TimerWheel<Callable<Boolean>>(clock.nanoTime());
+    } finally {
+      this.sleepingLock.unlock();
+    }
+  }
+  
   public void start(Mode scheduleMode, int workers) {
     this.mode = scheduleMode;
+    this.logger.setSchedulingMode(scheduleMode.name());
     
     this.numIdle.set(0);
     
     int numWorkers = Math.max(workers, 1);
     
     for (int i = 0; i < numWorkers; ++i) {
-      WorkerThread w = new WorkerThread(this);
+      WorkerThread w = new WorkerThread(this, i);
+      w.getLogger().copySettings(this.logger);
       this.threads.add(w);
     }
     
+    this.workers = this.threads.toArray(new WorkerThread[0]);
+    
     for (Thread t : this.threads) {
       t.start();
     }
@@ -107,6 +239,34 @@ public class Scheduler implements Caller<Boolean>, EventSink, Comparable<Object>
     return this.threads.size();
   }
   
+  public Logger getLogger() {
+    return this.logger;
+  }
+  
+  /**
+   * Scheduling overhead is recorded by whichever thread incurs it. Workers
+   * use their own logger, any other thread gets one of its own that's merged
+   * into the scheduler's when it stops.
+   */
+  protected Logger getCallerLogger() {
+    Thread t = Thread.currentThread();
+    
+    if (t instanceof WorkerThread && ((WorkerThread) t).scheduler == this) {
+      return ((WorkerThread) t).getLogger();
+    }
+    
+    return this.callerLoggers.get();
+  }
+  
+  /**
+   * Publishes queue depths and task rates over JMX under name until the
+   * scheduler is stopped.
+   */
+  public void registerMetrics(String name) {
+    Metrics.unregister(this.metricsName);
+    this.metricsName = Metrics.register("Scheduler", name, new SchedulerMetrics(this));
+  }
+  
   public void stop() {
     this.state = State.STOPPED;
     
@@ -114,18 +274,51 @@ public class Scheduler implements Caller<Boolean>, EventSink, Comparable<Object>
       t.interrupt();
     }
 
+    // Workers finish the task they're on before they see the interrupt, wait
+    // for all of them so none are left writing to a logger or trace that has
+    // already been merged or closed.
     for (Thread t : this.threads) {
-      try {
-        t.join(25);
-      } catch (InterruptedException e) {
-        //Goggles
+      boolean interrupted = false;
+      
+      while (t.isAlive()) {
+        try {
+          t.join();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+      
+      if (t instanceof WorkerThread) {
+        this.logger.merge(((WorkerThread) t).getLogger());
+        ((WorkerThread) t).closeTrace();
       }
     }
 
+    synchronized (this.externalLoggers) {
+      for (Logger l : this.externalLoggers) {
+        this.logger.merge(l);
+      }
+    }
+    
     this.threads.clear();
+    this.workers = new WorkerThread[0];
+    
+    Metrics.unregister(this.metricsName);
+    this.metricsName = null;
     
     this.tasks.clear();
     
+    this.sleepingLock.lock();
+    try {
+      this.sleepingTasks.clear();
+    } finally {
+      this.sleepingLock.unlock();
+    }
+    
     this.numIdle.set(0);
   }
   
@@ -168,6 +361,8 @@ public class Scheduler implements Caller<Boolean>, EventSink, Comparable<Object>
   }
   
   protected Callable<Boolean> getNextTask() {
+    this.wakeSleepingTasks();
+    
     Callable<Boolean> t = this.tasks.poll();
     
     switch (this.mode) {
@@ -176,6 +371,7 @@ public class Scheduler implements Caller<Boolean>, EventSink, Comparable<Object>
       
     case ORDERED_RETRY:
       while (t != null && t instanceof Behaviour<?> && !((Behaviour<?>) t).isReady()) {
+        this.getCallerLogger().taskRetried(((Behaviour<?>) t).getTypeId());
         this.tasks.add(t);
         
         t = this.tasks.poll();
@@ -184,6 +380,8 @@ public class Scheduler implements Caller<Boolean>, EventSink, Comparable<Object>
       
     case ORDERED_PRECOMPUTE:
       if (this.waitingLock.tryLock()) {
+        long locked = System.nanoTime();
+        
         try {
           while (!this.unsortedTasks.isEmpty()) {
             Callable<Boolean> b = this.unsortedTasks.poll();
@@ -200,6 +398,8 @@ public class Scheduler implements Caller<Boolean>, EventSink, Comparable<Object>
               if (((Behaviour<?>) c).isReady()) {
                  this.waitingTasks.remove(i);
                  this.tasks.add(c);
+              } else {
+                this.getCallerLogger().taskRetried(((Behaviour<?>) c).getTypeId());
               }
             } else {
               this.tasks.add(c);
@@ -208,18 +408,83 @@ public class Scheduler implements Caller<Boolean>, EventSink, Comparable<Object>
         } finally {
           this.waitingLock.unlock();
           
+          this.getCallerLogger().lockHeld(System.nanoTime() - locked);
+          
           if (t == null) {
             t = this.tasks.poll();
           }
         }
+      } else {
+        this.getCallerLogger().lockFailed();
       }
     }
     
     return t;
   }
   
+  /**
+   * Moves any sleeping tasks that are due back onto the queue. Whoever gets
+   * the lock turns the wheel, everyone else carries on.
+   */
+  protected void wakeSleepingTasks() {
+    if (this.sleepingTasks.size() > 0 && this.sleepingLock.tryLock()) {
+      try {
+        List<Callable<Boolean>> woken = new LinkedList<Callable<Boolean>>();
+        
+        this.sleepingTasks.advance(this.clock.nanoTime(), woken);
+        
+        for (Callable<Boolean> c : woken) {
+          this.enqueue(c);
+        }
+      } finally {
+        this.sleepingLock.unlock();
+      }
+    }
+  }
+  
+  /**
+   * Queues c to run, or if it's a behaviour that asked to sleep until some
+   * time in the future, holds it in the timer wheel until then. Behaviours
+   * that only act on events and have none waiting are left dormant, their
+   * next event calls back in here.
+   */
   public void call(Callable<Boolean> c) {
     if (this.state == State.RUNNING) {
+      if (c instanceof Behaviour<?>) {
+        Behaviour<?> b = (Behaviour<?>) c;
+        
+        if (b.waitsForEvents() && b.sleepUntilEvent(this)) {
+          return;
+        }
+        
+        long wake = b.getWakeTime();
+        
+        if (wake != 0) {
+          boolean scheduled;
+          
+          this.sleepingLock.lock();
+          try {
+            scheduled = this.sleepingTasks.schedule(c, wake);
+          } finally {
+            this.sleepingLock.unlock();
+          }
+          
+          if (scheduled) {
+            return;
+          }
+        }
+      }
+      
+      this.enqueue(c);
+    }
+  }
+  
+  protected void enqueue(Callable<Boolean> c) {
+    if (this.state == State.RUNNING) {
+      if (c instanceof Behaviour<?>) {
+        ((Behaviour<?>) c).markQueued();
+      }
+      
       switch (this.mode) {
       case UNORDERED:
       case ORDERED_RETRY:
@@ -231,6 +496,7 @@ public class Scheduler implements Caller<Boolean>, EventSink, Comparable<Object>
           if (((Behaviour<?>) c).isReady()) {
             this.tasks.offer(c);
           } else {
+            this.getCallerLogger().taskWaited(((Behaviour<?>) c).getTypeId());
             this.unsortedTasks.offer(c);
           }
         } else {
@@ -240,6 +506,55 @@ public class Scheduler implements Caller<Boolean>, EventSink, Comparable<Object>
     }
   }
 
+  /**
+   * Runs body over [0, size) split into chunks, returning once every chunk
+   * has run. The calling thread works through chunks alongside the workers.
+   * Chunk sizes are picked so each chunk takes about TARGET_CHUNK_NANOS going
+   * by previous runs of the same named phase, chunk counts, runtimes and idle
+   * time are recorded against that name in this scheduler's logger.
+   */
+  public void parallelFor(String name, int size, Range body) {
+    if (size <= 0) {
+      return;
+    }
+    
+    ParallelFor job = new ParallelFor(body, Logger.getTypeId(name), size, this.getGrain(name, size));
+    
+    int helpers = 0;
+    
+    if (this.state == State.RUNNING) {
+      helpers = Math.min(job.chunks - 1, this.numThreads());
+    }
+    
+    long start = System.nanoTime();
+    
+    for (int i = 0; i < helpers; ++i) {
+      this.call(job);
+    }
+    
+    job.call();
+    
+    while (!job.isDone()) {
+      Thread.yield();
+    }
+    
+    long elapsed = System.nanoTime() - start;
+    long busy = job.busyTime.get();
+    
+    this.logger.phaseRun(name, job.chunks, size, busy, Math.max(0, elapsed * (helpers + 1) - busy));
+  }
+  
+  protected int getGrain(String name, int size) {
+    double cost = this.logger.getItemCost(name);
+    
+    if (cost <= 0) {
+      // Nothing to go on yet, a few chunks per thread.
+      return Math.max(1, size / ((this.numThreads() + 1) * 4));
+    }
+    
+    return (int) Math.max(1, Math.min(size, Math.ceil(Scheduler.TARGET_CHUNK_NANOS / cost)));
+  }
+
   @SuppressWarnings("unchecked")
   @Override
   public void handleEvent(Event event) {
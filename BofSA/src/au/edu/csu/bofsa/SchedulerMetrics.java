@@ -0,0 +1,180 @@
+/**
+ *   The MIT License
+ *
+ *  Copyright 2011 Andrew James <ephphatha@thelettereph.com>.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package au.edu.csu.bofsa;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reads a scheduler's queues and its workers' loggers on demand. The
+ * counters are read without synchronising with the workers, so values may
+ * be a moment stale but recording stays free of any extra cost.
+ * 
+ * @author ephphatha
+ *
+ */
+public class SchedulerMetrics implements SchedulerMetricsMXBean {
+  // Reads closer together than this reuse the last rates.
+  protected static final long MIN_SAMPLE_NANOS = 500000000L;
+  
+  protected final Scheduler scheduler;
+  
+  protected long lastSampleTime;
+  protected long lastDispatched;
+  protected long[] lastCounts;
+  
+  protected double dispatchRate;
+  protected Map<String, Double> executionRates;
+  protected Map<String, Double> meanRuntimes;
+  
+  public SchedulerMetrics(Scheduler scheduler) {
+    this.scheduler = scheduler;
+    
+    this.lastSampleTime = System.nanoTime();
+    this.lastDispatched = 0;
+    this.lastCounts = new long[0];
+    
+    this.dispatchRate = 0;
+    this.executionRates = new TreeMap<String, Double>();
+    this.meanRuntimes = new TreeMap<String, Double>();
+  }
+  
+  protected synchronized void sample() {
+    long now = System.nanoTime();
+    double elapsed = (now - this.lastSampleTime) / 1.0E9;
+    
+    if (now - this.lastSampleTime < SchedulerMetrics.MIN_SAMPLE_NANOS) {
+      return;
+    }
+    
+    WorkerThread[] workers = this.scheduler.workers;
+    
+    int types = 0;
+    
+    for (WorkerThread w : workers) {
+      types = Math.max(types, w.getLogger().getTypeCapacity());
+    }
+    
+    long[] counts = new long[types];
+    long[] samples = new long[types];
+    double[] runtime = new double[types];
+    
+    for (WorkerThread w : workers) {
+      Logger l = w.getLogger();
+      
+      for (int id = 0; id < types; ++id) {
+        Logger.TaskStats ts = l.peekTaskStats(id);
+        
+        if (ts != null) {
+          counts[id] += ts.executionCount;
+          samples[id] += ts.sampleCount;
+          runtime[id] += ts.meanRuntime * ts.sampleCount;
+        }
+      }
+    }
+    
+    Map<String, Double> rates = new TreeMap<String, Double>();
+    Map<String, Double> means = new TreeMap<String, Double>();
+    long dispatched = 0;
+    
+    for (int id = 0; id < types; ++id) {
+      dispatched += counts[id];
+      
+      if (counts[id] > 0) {
+        long previous = id < this.lastCounts.length ? this.lastCounts[id] : 0;
+        String name = Logger.getTypeName(id);
+        
+        // Counts go back to zero when the workers are replaced.
+        rates.put(name, Math.max(0, counts[id] - previous) / elapsed);
+        means.put(name, samples[id] > 0 ? runtime[id] / samples[id] : 0.0);
+      }
+    }
+    
+    this.dispatchRate = Math.max(0, dispatched - this.lastDispatched) / elapsed;
+    this.executionRates = rates;
+    this.meanRuntimes = means;
+    
+    this.lastDispatched = dispatched;
+    this.lastCounts = counts;
+    this.lastSampleTime = now;
+  }
+
+  @Override
+  public int getQueuedTasks() {
+    return this.scheduler.tasks.size();
+  }
+
+  @Override
+  public int getWaitingTasks() {
+    return this.scheduler.waitingTasks.size();
+  }
+
+  @Override
+  public int getUnsortedTasks() {
+    return this.scheduler.unsortedTasks.size();
+  }
+
+  @Override
+  public int getSleepingTasks() {
+    return this.scheduler.sleepingTasks.size();
+  }
+
+  @Override
+  public int getWorkers() {
+    return this.scheduler.workers.length;
+  }
+
+  @Override
+  public int getIdleWorkers() {
+    return this.scheduler.numIdle.get();
+  }
+
+  @Override
+  public synchronized long getTasksDispatched() {
+    this.sample();
+    
+    return this.lastDispatched;
+  }
+
+  @Override
+  public synchronized double getDispatchRate() {
+    this.sample();
+    
+    return this.dispatchRate;
+  }
+
+  @Override
+  public synchronized Map<String, Double> getExecutionRates() {
+    this.sample();
+    
+    return this.executionRates;
+  }
+
+  @Override
+  public synchronized Map<String, Double> getMeanRuntimes() {
+    this.sample();
+    
+    return this.meanRuntimes;
+  }
+}
@@ -24,6 +24,7 @@
 package au.edu.csu.bofsa.Signals;
 
 import au.edu.csu.bofsa.Copyable;
+import au.edu.csu.bofsa.SimClock;
 
 
 /**
@@ -35,7 +36,7 @@ public class Signal<T extends Copyable<T>> implements InputSignal<T> {
   protected Long timeStamp;
   
   public Signal(final T value) {
-    this(value, System.nanoTime());
+    this(value, SimClock.now());
   }
   
   public Signal(final T value, long timeStamp) {
@@ -43,7 +44,7 @@ public class Signal<T extends Copyable<T>> implements InputSignal<T> {
   }
   
   public void write(final T newValue) {
-    write(newValue, System.nanoTime());
+    write(newValue, SimClock.now());
   }
   
   public void write(final T newValue, long timeStamp) {
@@ -0,0 +1,176 @@
+/**
+ *   The MIT License
+ *
+ *  Copyright 2011 Andrew James <ephphatha@thelettereph.com>.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package au.edu.csu.bofsa;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Where the simulation gets the time from. Signal and event timestamps,
+ * movement, spawn and reload timing and sleeping behaviours all read the
+ * clock, profiling still reads System.nanoTime() directly. Values are in
+ * nanoseconds like System.nanoTime(), only differences are meaningful.
+ * 
+ * The default clock is picked up by behaviours, states and schedulers as
+ * they're made, so it has to be set before the game starts.
+ * 
+ * @author ephphatha
+ *
+ */
+public abstract class SimClock {
+  
+  private static SimClock defaultClock = new Real();
+  
+  public static SimClock getDefault() {
+    return SimClock.defaultClock;
+  }
+  
+  public static void setDefault(SimClock clock) {
+    SimClock.defaultClock = clock;
+  }
+  
+  /**
+   * @return the default clock's current time, for code with no clock of its
+   *         own.
+   */
+  public static long now() {
+    return SimClock.defaultClock.nanoTime();
+  }
+  
+  public abstract long nanoTime();
+  
+  /**
+   * Blocks until the clock reads at least time, or the thread is
+   * interrupted. Virtual clocks move straight there instead.
+   */
+  public abstract void waitUntil(long time);
+  
+  /**
+   * Wall clock time.
+   */
+  public static class Real extends SimClock {
+    @Override
+    public long nanoTime() {
+      return System.nanoTime();
+    }
+
+    @Override
+    public void waitUntil(long time) {
+      long remaining = time - System.nanoTime();
+      
+      if (remaining > 0) {
+        LockSupport.parkNanos(remaining);
+      }
+    }
+    
+    public String toString() {
+      return "Real";
+    }
+  }
+  
+  /**
+   * Virtual time that only moves when told to, either a step at a time by
+   * whatever drives the simulation or by someone waiting on it. Runs driven
+   * a step at a time see exactly the same times every run.
+   */
+  public static class FixedStep extends SimClock {
+    /**
+     * Behaviours treat a time of 0 as unset, so virtual time starts here.
+     */
+    public static final long ORIGIN = 1000000000L;
+    
+    protected final AtomicLong time;
+    protected final long step;
+    
+    /**
+     * @param step how far advance() moves the clock, in nanoseconds.
+     */
+    public FixedStep(long step) {
+      this.time = new AtomicLong(FixedStep.ORIGIN);
+      this.step = Math.max(step, 1);
+    }
+    
+    public long getStep() {
+      return this.step;
+    }
+    
+    public void advance() {
+      this.time.addAndGet(this.step);
+    }
+    
+    @Override
+    public long nanoTime() {
+      return this.time.get();
+    }
+
+    @Override
+    public void waitUntil(long time) {
+      long current;
+      
+      while ((current = this.time.get()) < time && !this.time.compareAndSet(current, time)) {
+        // Someone else moved the clock, check again.
+      }
+    }
+    
+    public String toString() {
+      return "Fixed";
+    }
+  }
+  
+  /**
+   * Wall clock time sped up by a constant factor, starting from the wall
+   * clock time the clock was made.
+   */
+  public static class Accelerated extends SimClock {
+    protected final double factor;
+    protected final long origin;
+    
+    public Accelerated(double factor) {
+      this.factor = factor > 0 ? factor : 1.0;
+      this.origin = System.nanoTime();
+    }
+    
+    public double getFactor() {
+      return this.factor;
+    }
+    
+    @Override
+    public long nanoTime() {
+      return this.origin + (long) ((System.nanoTime() - this.origin) * this.factor);
+    }
+
+    @Override
+    public void waitUntil(long time) {
+      long remaining = (long) ((time - this.nanoTime()) / this.factor);
+      
+      if (remaining > 0) {
+        LockSupport.parkNanos(remaining);
+      }
+    }
+    
+    public String toString() {
+      return this.factor + "x";
+    }
+  }
+}
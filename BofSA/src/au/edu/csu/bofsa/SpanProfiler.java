@@ -0,0 +1,254 @@
+/**
+ *   The MIT License
+ *
+ *  Copyright 2011 Andrew James <ephphatha@thelettereph.com>.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package au.edu.csu.bofsa;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+/**
+ * Nested timing spans, phase to entity to behaviour to the steps inside a
+ * behaviour. Each thread builds its own call tree so entering and leaving a
+ * span touches nothing shared, the trees are merged when written out.
+ * 
+ * Spans are named with Logger type ids. When profiling is off enter() and
+ * exit() return straight away.
+ * 
+ * Written out as folded stacks, one line per path with the nanoseconds spent
+ * in that span itself (not its children) per tick, which flamegraph.pl and
+ * speedscope both read. Every state counts its update steps as ticks, the
+ * task based state counts frames.
+ * 
+ * @author ephphatha
+ *
+ */
+public class SpanProfiler {
+  
+  protected static class Node {
+    public final int id;
+    public final Node parent;
+    
+    public Node[] children;
+    public int childCount;
+    
+    public long count;
+    public long total;
+    public long start;
+    
+    public Node(int id, Node parent) {
+      this.id = id;
+      this.parent = parent;
+      this.children = new Node[4];
+      this.childCount = 0;
+    }
+    
+    public Node getChild(int id) {
+      for (int i = 0; i < this.childCount; ++i) {
+        if (this.children[i].id == id) {
+          return this.children[i];
+        }
+      }
+      
+      if (this.childCount == this.children.length) {
+        Node[] temp = new Node[this.children.length * 2];
+        System.arraycopy(this.children, 0, temp, 0, this.childCount);
+        this.children = temp;
+      }
+      
+      Node n = new Node(id, this);
+      this.children[this.childCount++] = n;
+      
+      return n;
+    }
+    
+    public void add(Node rhs) {
+      this.count += rhs.count;
+      this.total += rhs.total;
+      
+      for (int i = 0; i < rhs.childCount; ++i) {
+        this.getChild(rhs.children[i].id).add(rhs.children[i]);
+      }
+    }
+  }
+  
+  protected static class Tree {
+    public final int generation;
+    public final Node root;
+    public Node current;
+    
+    public Tree(int generation) {
+      this.generation = generation;
+      this.root = new Node(-1, null);
+      this.current = this.root;
+    }
+  }
+  
+  // Only changed before the game starts so the checks can be hoisted.
+  private static boolean enabled = false;
+  
+  private static volatile int generation = 0;
+  private static volatile long ticks = 0;
+  private static final List<Tree> trees = new ArrayList<Tree>();
+  
+  private static final ThreadLocal<Tree> local = new ThreadLocal<Tree>();
+  
+  public static void setEnabled(boolean enabled) {
+    SpanProfiler.enabled = enabled;
+  }
+  
+  public static boolean isEnabled() {
+    return SpanProfiler.enabled;
+  }
+  
+  protected static Tree getTree() {
+    Tree t = SpanProfiler.local.get();
+    
+    if (t == null || t.generation != SpanProfiler.generation) {
+      t = new Tree(SpanProfiler.generation);
+      SpanProfiler.local.set(t);
+      
+      synchronized (SpanProfiler.trees) {
+        SpanProfiler.trees.add(t);
+      }
+    }
+    
+    return t;
+  }
+  
+  /**
+   * Must be matched by a call to exit() on the same thread, use try/finally.
+   */
+  public static void enter(int id) {
+    if (!SpanProfiler.enabled) {
+      return;
+    }
+    
+    Tree t = SpanProfiler.getTree();
+    Node n = t.current.getChild(id);
+    
+    t.current = n;
+    n.start = System.nanoTime();
+  }
+  
+  public static void exit() {
+    if (!SpanProfiler.enabled) {
+      return;
+    }
+    
+    long end = System.nanoTime();
+    
+    Tree t = SpanProfiler.getTree();
+    Node n = t.current;
+    
+    if (n.parent == null) {
+      return;
+    }
+    
+    n.total += end - n.start;
+    ++n.count;
+    
+    t.current = n.parent;
+  }
+  
+  /**
+   * Called by the thread driving the game once per update.
+   */
+  public static void tick() {
+    if (SpanProfiler.enabled) {
+      ++SpanProfiler.ticks;
+    }
+  }
+  
+  /**
+   * Throws away everything recorded so far, threads start new trees the next
+   * time they enter a span. Only call while no spans are open.
+   */
+  public static void reset() {
+    synchronized (SpanProfiler.trees) {
+      SpanProfiler.trees.clear();
+      ++SpanProfiler.generation;
+      SpanProfiler.ticks = 0;
+    }
+  }
+  
+  /**
+   * Merges every thread's spans and writes them as folded stacks to
+   * <timestamp>_<description>_SPANS.log, then resets. Only call once the
+   * threads recording spans have stopped.
+   */
+  public static void write(String description) {
+    if (!SpanProfiler.enabled) {
+      return;
+    }
+    
+    Node merged = new Node(-1, null);
+    long tickCount;
+    
+    synchronized (SpanProfiler.trees) {
+      for (Tree t : SpanProfiler.trees) {
+        merged.add(t.root);
+      }
+      
+      tickCount = Math.max(1, SpanProfiler.ticks);
+    }
+    
+    SpanProfiler.reset();
+    
+    String name = new SimpleDateFormat("yyyyMMdd'T'HHmmss").format(Calendar.getInstance().getTime()) + "_" + description + "_SPANS.log";
+    
+    try {
+      FileWriter file = new FileWriter(name);
+      
+      try {
+        for (int i = 0; i < merged.childCount; ++i) {
+          SpanProfiler.write(file, merged.children[i], "", tickCount);
+        }
+      } finally {
+        file.flush();
+        file.close();
+      }
+    } catch (IOException e) {
+      System.out.println("Unable to write " + name + ": " + e.getMessage());
+    }
+  }
+  
+  protected static void write(FileWriter file, Node n, String prefix, long ticks) throws IOException {
+    String path = prefix + Logger.getTypeName(n.id);
+    
+    long self = n.total;
+    
+    for (int i = 0; i < n.childCount; ++i) {
+      self -= n.children[i].total;
+    }
+    
+    file.write(path + " " + Math.max(0, self / ticks) + "\n");
+    
+    for (int i = 0; i < n.childCount; ++i) {
+      SpanProfiler.write(file, n.children[i], path + ";", ticks);
+    }
+  }
+}
@@ -0,0 +1,349 @@
+/**
+ *   The MIT License
+ *
+ *  Copyright 2011 Andrew James <ephphatha@thelettereph.com>.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package au.edu.csu.bofsa;
+
+import java.util.List;
+
+import org.newdawn.slick.geom.Vector2f;
+
+/**
+ * Uniform grid broadphase over creep positions. Cells are hashed into a table
+ * sized by the number of creeps rather than the size of the board, and items
+ * are stored in cell order so building the grid is a single counting sort.
+ * 
+ * A grid is an immutable value once built (other than filling in the
+ * separation results) and is shared by reference, copy() hands out the same
+ * instance and copying into one is an error.
+ * 
+ * @author ephphatha
+ *
+ */
+public class SpatialGrid implements Copyable<SpatialGrid> {
+  protected final float radius;
+  protected final int mask;
+  
+  protected final int size;
+  protected final int[] bucketStart;
+  protected final float[] x;
+  protected final float[] y;
+  protected final Object[] owners;
+  
+  /**
+   * Position of each item in the list the grid was built from.
+   */
+  protected final int[] ids;
+  
+  protected final float[] separationX;
+  protected final float[] separationY;
+  protected volatile boolean resolved;
+  
+  protected SpatialGrid(float radius, int size) {
+    this.radius = radius;
+    this.size = size;
+    
+    int buckets = 16;
+    while (buckets < size * 2) {
+      buckets <<= 1;
+    }
+    
+    this.mask = buckets - 1;
+    this.bucketStart = new int[buckets + 1];
+    
+    this.x = new float[size];
+    this.y = new float[size];
+    this.owners = new Object[size];
+    this.ids = new int[size];
+    
+    this.separationX = new float[size];
+    this.separationY = new float[size];
+    this.resolved = false;
+  }
+  
+  /**
+   * @param radius the distance creeps try to keep between each other, also
+   *               used as the cell size.
+   */
+  public static SpatialGrid build(List<Pipe<CopyableVector2f>> creeps, float radius) {
+    int size = creeps.size();
+    
+    SpatialGrid grid = new SpatialGrid(radius, size);
+    
+    float[] px = new float[size];
+    float[] py = new float[size];
+    Object[] po = new Object[size];
+    int[] bucket = new int[size];
+    
+    int i = 0;
+    for (Pipe<CopyableVector2f> p : creeps) {
+      if (i >= size) {
+        break;
+      }
+      
+      CopyableVector2f pos = p.signal.read();
+      
+      px[i] = pos.x;
+      py[i] = pos.y;
+      po[i] = p.signal;
+      bucket[i] = grid.bucket(grid.cell(pos.x), grid.cell(pos.y));
+      
+      grid.bucketStart[bucket[i] + 1]++;
+      i++;
+    }
+    
+    for (int b = 0; b < grid.mask + 1; ++b) {
+      grid.bucketStart[b + 1] += grid.bucketStart[b];
+    }
+    
+    int[] fill = new int[grid.mask + 1];
+    
+    for (int j = 0; j < i; ++j) {
+      int k = grid.bucketStart[bucket[j]] + fill[bucket[j]]++;
+      
+      grid.x[k] = px[j];
+      grid.y[k] = py[j];
+      grid.owners[k] = po[j];
+      grid.ids[k] = j;
+    }
+    
+    return grid;
+  }
+  
+  /**
+   * Builds a grid straight from position arrays, items have no owner and can
+   * only be told apart by their id.
+   */
+  public static SpatialGrid build(float[] x, float[] y, int count, float radius) {
+    SpatialGrid grid = new SpatialGrid(radius, count);
+    
+    int[] bucket = new int[count];
+    
+    for (int j = 0; j < count; ++j) {
+      bucket[j] = grid.bucket(grid.cell(x[j]), grid.cell(y[j]));
+      grid.bucketStart[bucket[j] + 1]++;
+    }
+    
+    for (int b = 0; b < grid.mask + 1; ++b) {
+      grid.bucketStart[b + 1] += grid.bucketStart[b];
+    }
+    
+    int[] fill = new int[grid.mask + 1];
+    
+    for (int j = 0; j < count; ++j) {
+      int k = grid.bucketStart[bucket[j]] + fill[bucket[j]]++;
+      
+      grid.x[k] = x[j];
+      grid.y[k] = y[j];
+      grid.ids[k] = j;
+    }
+    
+    return grid;
+  }
+  
+  public int size() {
+    return this.size;
+  }
+  
+  public float getRadius() {
+    return this.radius;
+  }
+  
+  /**
+   * Finds the item belonging to owner, which is expected to be within a cell
+   * of the given position.
+   * 
+   * @return -1 if the owner isn't in the grid.
+   */
+  public int indexOf(Object owner, float x, float y) {
+    int cx = this.cell(x);
+    int cy = this.cell(y);
+    
+    for (int k = 0; k < 9; ++k) {
+      int b = this.neighbourBucket(cx, cy, k);
+      
+      if (b < 0) {
+        continue;
+      }
+      
+      for (int i = this.bucketStart[b]; i < this.bucketStart[b + 1]; ++i) {
+        if (this.owners[i] == owner) {
+          return i;
+        }
+      }
+    }
+    
+    return -1;
+  }
+  
+  /**
+   * Sum of the pushes away from every other item within the radius of the
+   * given position, each falling off linearly with distance. The result is
+   * clamped to unit length.
+   */
+  public void getSeparation(float px, float py, Object self, Vector2f out) {
+    this.getSeparation(px, py, self, -1, out);
+  }
+  
+  protected void getSeparation(float px, float py, Object self, int selfIndex, Vector2f out) {
+    int cx = this.cell(px);
+    int cy = this.cell(py);
+    
+    float r2 = this.radius * this.radius;
+    float sx = 0;
+    float sy = 0;
+    
+    for (int k = 0; k < 9; ++k) {
+      int b = this.neighbourBucket(cx, cy, k);
+      
+      if (b < 0) {
+        continue;
+      }
+      
+      for (int i = this.bucketStart[b]; i < this.bucketStart[b + 1]; ++i) {
+        if (i == selfIndex || (self != null && this.owners[i] == self)) {
+          continue;
+        }
+        
+        float dx = px - this.x[i];
+        float dy = py - this.y[i];
+        float d2 = dx * dx + dy * dy;
+        
+        if (d2 >= r2) {
+          continue;
+        }
+        
+        if (d2 > 1.0E-8f) {
+          float d = (float) Math.sqrt(d2);
+          float w = (this.radius - d) / (this.radius * d);
+          
+          sx += dx * w;
+          sy += dy * w;
+        } else {
+          // Exactly on top of each other (creeps all spawn on the same point),
+          // split them along a direction both can agree on.
+          int h1 = selfIndex >= 0 ? this.key(selfIndex) : System.identityHashCode(self);
+          int h2 = this.key(i);
+          
+          if (h1 != h2) {
+            double angle = ((h1 ^ h2) & 0xFFFF) * (2 * Math.PI / 65536.0);
+            float sign = h1 < h2 ? 1.0f : -1.0f;
+            
+            sx += sign * (float) Math.cos(angle);
+            sy += sign * (float) Math.sin(angle);
+          }
+        }
+      }
+    }
+    
+    float l2 = sx * sx + sy * sy;
+    
+    if (l2 > 1.0f) {
+      float l = (float) Math.sqrt(l2);
+      sx /= l;
+      sy /= l;
+    }
+    
+    out.set(sx, sy);
+  }
+  
+  /**
+   * Works out the separation for items [from, to). Items are in cell order so
+   * each range covers a run of neighbouring cells, separate ranges can be done
+   * in parallel.
+   */
+  public void computeSeparation(int from, int to) {
+    Vector2f temp = new Vector2f();
+    
+    for (int i = from; i < to; ++i) {
+      this.getSeparation(this.x[i], this.y[i], this.owners[i], i, temp);
+      
+      this.separationX[i] = temp.x;
+      this.separationY[i] = temp.y;
+    }
+  }
+  
+  /**
+   * Marks the separation results as complete, should only be called once
+   * every item has been through computeSeparation.
+   */
+  public void setResolved() {
+    this.resolved = true;
+  }
+  
+  public boolean isResolved() {
+    return this.resolved;
+  }
+  
+  public float getSeparationX(int i) {
+    return this.separationX[i];
+  }
+  
+  public float getSeparationY(int i) {
+    return this.separationY[i];
+  }
+  
+  public int getId(int i) {
+    return this.ids[i];
+  }
+  
+  protected int key(int i) {
+    return this.owners[i] != null ? System.identityHashCode(this.owners[i]) : this.ids[i];
+  }
+  
+  protected int cell(float v) {
+    return (int) Math.floor(v / this.radius);
+  }
+  
+  protected int bucket(int cx, int cy) {
+    return ((cx * 73856093) ^ (cy * 19349663)) & this.mask;
+  }
+  
+  /**
+   * Bucket for the k'th cell of the 3x3 block around (cx, cy), or -1 if an
+   * earlier cell of the block hashed to the same bucket.
+   */
+  protected int neighbourBucket(int cx, int cy, int k) {
+    int b = this.bucket(cx + k % 3 - 1, cy + k / 3 - 1);
+    
+    for (int j = 0; j < k; ++j) {
+      if (this.bucket(cx + j % 3 - 1, cy + j / 3 - 1) == b) {
+        return -1;
+      }
+    }
+    
+    return b;
+  }
+
+  @Override
+  public SpatialGrid copy() {
+    return this;
+  }
+
+  /**
+   * @throws IllegalStateException always, grids can't be changed once built.
+   */
+  @Override
+  public void copy(SpatialGrid rhs) {
+    throw new IllegalStateException("SpatialGrid is immutable, share it by reference.");
+  }
+}
@@ -23,8 +23,6 @@
  */
 package au.edu.csu.bofsa;
 
-import java.util.Queue;
-
 import org.newdawn.slick.geom.Vector2f;
 
 /**
@@ -33,8 +31,8 @@ import org.newdawn.slick.geom.Vector2f;
  */
 public class SpawnPoint {
   public final Vector2f position;
-  protected Queue<CheckPoint> checkpoints;
-  protected Vector2f goal;
+  protected Route route;
+  protected final int archetype;
   
   protected final float spawnDuration,
                         spawnInterval,
@@ -50,14 +48,21 @@ public class SpawnPoint {
   }
 
   public SpawnPoint(final Vector2f position, float spawnDuration, float spawnInterval, float lullDuration) {
+    this(position, 0, spawnDuration, spawnInterval, lullDuration);
+  }
+
+  /**
+   * @param archetype id of the creep type to spawn in the ArchetypeRegistry.
+   */
+  public SpawnPoint(final Vector2f position, int archetype, float spawnDuration, float spawnInterval, float lullDuration) {
     this.position = position;
+    this.archetype = archetype;
     
     this.spawnDuration = spawnDuration;
     this.spawnInterval = spawnInterval;
     this.lullDuration = lullDuration;
     
-    this.checkpoints = null;
-    this.goal = null;
+    this.route = null;
     
     this.state = State.SPAWNING;
     
@@ -65,24 +70,9 @@ public class SpawnPoint {
     this.lastSpawnTime = 0;
   }
 
-  public boolean setCheckPoints(Queue<CheckPoint> checkpoints) {
-    if (this.checkpoints == null) {
-      this.checkpoints = checkpoints;
-      if (this.goal != null) {
-        this.checkpoints.offer(new CheckPoint(this.checkpoints.size(), this.goal));
-      }
-      return true;
-    } else {
-      return false;
-    }
-  }
-  
-  public boolean setGoal(Vector2f goal) {
-    if (this.goal == null) {
-      this.goal = goal;
-      if (this.checkpoints != null) {
-        this.checkpoints.offer(new CheckPoint(this.checkpoints.size(), this.goal));
-      }
+  public boolean setRoute(Route route) {
+    if (this.route == null) {
+      this.route = route;
       return true;
     } else {
       return false;
@@ -111,7 +101,7 @@ public class SpawnPoint {
       case SPAWNING:
         while (this.elapsedTime - this.lastSpawnTime >= this.spawnInterval) {
           this.lastSpawnTime += this.spawnInterval;
-          cm.spawnCreep(new CopyableVector2f(this.position), this.checkpoints);
+          cm.spawnCreep(this.archetype, new CopyableVector2f(this.position), this.route);
           
           if (this.lastSpawnTime > this.spawnDuration) {
             break;
@@ -33,6 +33,8 @@ import org.newdawn.slick.geom.Rectangle;
  *
  */
 public class Sprite extends SpriteSheet {
+  private static boolean headless = false;
+  
   protected SequencePoint[] sequence;
   protected boolean isCustomSequence;
   
@@ -58,6 +60,18 @@ public class Sprite extends SpriteSheet {
     }
   }
   
+  /**
+   * Without a display there's no OpenGL context to load images into, the
+   * factories hand out null sprites instead and nothing is drawn.
+   */
+  public static void setHeadless(boolean headless) {
+    Sprite.headless = headless;
+  }
+  
+  public static boolean isHeadless() {
+    return Sprite.headless;
+  }
+  
   public Sprite(Sprite s) {
     this((SpriteSheet) s);
     
@@ -0,0 +1,105 @@
+/**
+ *   The MIT License
+ *
+ *  Copyright 2011 Andrew James <ephphatha@thelettereph.com>.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package au.edu.csu.bofsa;
+
+/**
+ * Timing of a fixed step update loop. Written by the update thread only,
+ * anything else may read it at any time.
+ * 
+ * @author ephphatha
+ *
+ */
+public class TickStats {
+  private volatile long ticks;
+  private volatile long overruns;
+  private volatile long dropped;
+  private volatile long totalTickTime;
+  private volatile long maxTickTime;
+  
+  public TickStats() {
+    this.reset();
+  }
+  
+  public void reset() {
+    this.ticks = 0;
+    this.overruns = 0;
+    this.dropped = 0;
+    this.totalTickTime = 0;
+    this.maxTickTime = 0;
+  }
+  
+  /**
+   * @param duration how long the tick took in nanoseconds.
+   * @param period how long it was allowed to take.
+   */
+  public void tickRun(long duration, long period) {
+    this.ticks++;
+    this.totalTickTime += duration;
+    
+    if (duration > period) {
+      this.overruns++;
+    }
+    
+    if (duration > this.maxTickTime) {
+      this.maxTickTime = duration;
+    }
+  }
+  
+  /**
+   * @param count ticks skipped because the loop fell too far behind.
+   */
+  public void ticksDropped(long count) {
+    this.dropped += count;
+  }
+  
+  public long getTicks() {
+    return this.ticks;
+  }
+  
+  public long getOverruns() {
+    return this.overruns;
+  }
+  
+  public long getDropped() {
+    return this.dropped;
+  }
+  
+  public long getMaxTickTime() {
+    return this.maxTickTime;
+  }
+  
+  public double getMeanTickTime() {
+    long n = this.ticks;
+    return n > 0 ? (double) this.totalTickTime / n : 0;
+  }
+  
+  public String toString() {
+    return String.format("Ticks: %d, overran: %d, dropped: %d, mean: %.2fms, max: %.2fms",
+        this.ticks,
+        this.overruns,
+        this.dropped,
+        this.getMeanTickTime() / 1.0E6,
+        this.maxTickTime / 1.0E6);
+  }
+}
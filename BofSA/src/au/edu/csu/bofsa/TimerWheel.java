@@ -0,0 +1,207 @@
+/**
+ *   The MIT License
+ *
+ *  Copyright 2011 Andrew James <ephphatha@thelettereph.com>.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package au.edu.csu.bofsa;
+
+import java.util.Collection;
+
+/**
+ * Hierarchical timer wheel holding items until a deadline given in
+ * SimClock terms. Each level has SLOTS slots, a slot on level n spans
+ * SLOTS^n ticks of TICK_NANOS. Items far from their deadline sit in the
+ * coarser levels and are cascaded down as the wheel turns, so scheduling and
+ * expiring are both constant time however many items are waiting.
+ *
+ * Not thread safe, callers are expected to hold a lock around it.
+ * 
+ * @author ephphatha
+ *
+ */
+public class TimerWheel<T> {
+  public static final int TICK_SHIFT = 20; // ~1ms ticks
+  public static final long TICK_NANOS = 1L << TimerWheel.TICK_SHIFT;
+  
+  protected static final int SLOT_BITS = 6;
+  protected static final int SLOTS = 1 << TimerWheel.SLOT_BITS;
+  protected static final int SLOT_MASK = TimerWheel.SLOTS - 1;
+  protected static final int LEVELS = 4;
+  
+  protected static class Entry<T> {
+    public final T item;
+    public final long tick;
+    public Entry<T> next;
+    
+    public Entry(T item, long tick) {
+      this.item = item;
+      this.tick = tick;
+    }
+  }
+  
+  protected Entry<T>[][] slots;
+  protected long currentTick;
+  protected volatile int size; // polled without the lock to skip empty wheels
+  
+  public TimerWheel() {
+    this(System.nanoTime());
+  }
+  
+  /**
+   * @param now the current time on whichever clock deadlines will be given in.
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public TimerWheel(long now) {
+    this.slots = new Entry[TimerWheel.LEVELS][TimerWheel.SLOTS];
+    this.currentTick = TimerWheel.toTick(now);
+    this.size = 0;
+  }
+  
+  /**
+   * Deadlines are rounded up to the next tick so items never come out early.
+   */
+  protected static long toTick(long nanos) {
+    return (nanos + TimerWheel.TICK_NANOS - 1) >> TimerWheel.TICK_SHIFT;
+  }
+  
+  /**
+   * @return false if the deadline has already passed, in which case the item
+   *         was not added.
+   */
+  public boolean schedule(T item, long deadline) {
+    long tick = TimerWheel.toTick(deadline);
+    
+    if (tick <= this.currentTick) {
+      return false;
+    }
+    
+    this.insert(new Entry<T>(item, tick));
+    ++this.size;
+    
+    return true;
+  }
+  
+  protected void insert(Entry<T> e) {
+    long delta = e.tick - this.currentTick;
+    
+    int level = 0;
+    
+    while (level < TimerWheel.LEVELS - 1 && delta >= (1L << (TimerWheel.SLOT_BITS * (level + 1)))) {
+      ++level;
+    }
+    
+    long tick = e.tick;
+    long span = 1L << (TimerWheel.SLOT_BITS * TimerWheel.LEVELS);
+    
+    if (delta >= span) {
+      // Beyond the top level, park it in the furthest slot and it'll be
+      // placed properly once it cascades down.
+      tick = this.currentTick + span - 1;
+    }
+    
+    int slot = (int) (tick >> (TimerWheel.SLOT_BITS * level)) & TimerWheel.SLOT_MASK;
+    
+    e.next = this.slots[level][slot];
+    this.slots[level][slot] = e;
+  }
+  
+  /**
+   * Turns the wheel up to now, adding every item whose deadline has passed
+   * to expired.
+   * 
+   * @return the number of items added.
+   */
+  public int advance(long now, Collection<? super T> expired) {
+    long target = now >> TimerWheel.TICK_SHIFT;
+    int count = 0;
+    
+    if (this.size == 0) {
+      this.currentTick = Math.max(this.currentTick, target);
+      return 0;
+    }
+    
+    while (this.currentTick < target && this.size > 0) {
+      ++this.currentTick;
+      
+      for (int level = 1; level < TimerWheel.LEVELS; ++level) {
+        if ((this.currentTick & ((1L << (TimerWheel.SLOT_BITS * level)) - 1)) != 0) {
+          break;
+        }
+        
+        count += this.cascade(level, expired);
+      }
+      
+      int slot = (int) this.currentTick & TimerWheel.SLOT_MASK;
+      Entry<T> e = this.slots[0][slot];
+      this.slots[0][slot] = null;
+      
+      while (e != null) {
+        expired.add(e.item);
+        ++count;
+        --this.size;
+        
+        e = e.next;
+      }
+    }
+    
+    this.currentTick = Math.max(this.currentTick, target);
+    
+    return count;
+  }
+  
+  protected int cascade(int level, Collection<? super T> expired) {
+    int slot = (int) (this.currentTick >> (TimerWheel.SLOT_BITS * level)) & TimerWheel.SLOT_MASK;
+    int count = 0;
+    
+    Entry<T> e = this.slots[level][slot];
+    this.slots[level][slot] = null;
+    
+    while (e != null) {
+      Entry<T> next = e.next;
+      
+      if (e.tick < this.currentTick) {
+        expired.add(e.item);
+        ++count;
+        --this.size;
+      } else {
+        this.insert(e);
+      }
+      
+      e = next;
+    }
+    
+    return count;
+  }
+  
+  public int size() {
+    return this.size;
+  }
+  
+  public void clear() {
+    for (Entry<T>[] level : this.slots) {
+      for (int i = 0; i < level.length; ++i) {
+        level[i] = null;
+      }
+    }
+    
+    this.size = 0;
+  }
+}
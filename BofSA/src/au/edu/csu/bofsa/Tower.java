@@ -32,25 +32,47 @@ import au.edu.csu.bofsa.Behaviours.RenderBehaviour;
 import au.edu.csu.bofsa.Events.Event;
 import au.edu.csu.bofsa.Events.EventSink;
 import au.edu.csu.bofsa.Events.GenericEvent;
+import au.edu.csu.bofsa.Signals.Signal;
 
 /**
  * @author ephphatha
  *
  */
 public class Tower implements Callable<Boolean>, EventSink{
+  private static final int SPAN = Logger.getTypeId("Tower");
+  
   private AttackBehaviour a;
   private RenderBehaviour r;
   
   private CopyablePoint position;
+  private Signal<CopyableVector2f> positionSignal;
   
   protected Tower(CopyablePoint position) {
     this.position = position;
+    this.positionSignal = new Signal<CopyableVector2f>(new CopyableVector2f(position.x, position.y));
+  }
+  
+  /**
+   * Moves a spare tower to a new tile, reusing its behaviours.
+   */
+  public void reset(CopyablePoint position) {
+    this.position = position;
+    this.positionSignal.write(new CopyableVector2f(position.x, position.y));
+    
+    this.a.reset();
+    this.r.reset();
   }
   
   public Boolean call() {
-    this.a.call();
+    SpanProfiler.enter(Tower.SPAN);
     
-    this.r.call();
+    try {
+      this.a.call();
+      
+      this.r.call();
+    } finally {
+      SpanProfiler.exit();
+    }
     
     return false;
   }
@@ -74,4 +96,8 @@ public class Tower implements Callable<Boolean>, EventSink{
   public CopyablePoint getPosition() {
     return this.position;
   }
+  
+  public Signal<CopyableVector2f> getPositionSignal() {
+    return this.positionSignal;
+  }
 }
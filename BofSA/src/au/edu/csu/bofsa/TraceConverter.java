@@ -0,0 +1,197 @@
+/**
+ *   The MIT License
+ *
+ *  Copyright 2011 Andrew James <ephphatha@thelettereph.com>.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package au.edu.csu.bofsa;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Turns the ring files written by TraceRecorder into Chrome trace event JSON
+ * for chrome://tracing or Perfetto, one track per worker.
+ * 
+ * Usage: TraceConverter types.log output.json trace0.bin [trace1.bin ...]
+ * 
+ * The types file is the _TYPES.log the logger writes alongside the traces.
+ * 
+ * @author ephphatha
+ *
+ */
+public class TraceConverter {
+  
+  public static void main(String[] args) {
+    if (args.length < 3) {
+      System.out.println("Usage: TraceConverter types.log output.json trace.bin...");
+      return;
+    }
+    
+    try {
+      Map<Integer, String> types = TraceConverter.readTypes(new File(args[0]));
+      
+      File[] traces = new File[args.length - 2];
+      
+      for (int i = 2; i < args.length; ++i) {
+        traces[i - 2] = new File(args[i]);
+      }
+      
+      long events = TraceConverter.convert(types, traces, new File(args[1]));
+      
+      System.out.println("Wrote " + events + " events to " + args[1]);
+    } catch (IOException e) {
+      System.out.println("Conversion failed: " + e.getMessage());
+    }
+  }
+  
+  protected static Map<Integer, String> readTypes(File f) throws IOException {
+    Map<Integer, String> types = new HashMap<Integer, String>();
+    
+    BufferedReader in = new BufferedReader(new FileReader(f));
+    
+    try {
+      String line;
+      
+      while ((line = in.readLine()) != null) {
+        int comma = line.indexOf(',');
+        
+        if (comma > 0) {
+          try {
+            types.put(Integer.valueOf(line.substring(0, comma)), line.substring(comma + 1));
+          } catch (NumberFormatException e) {
+            //Goggles
+          }
+        }
+      }
+    } finally {
+      in.close();
+    }
+    
+    return types;
+  }
+  
+  protected static ByteBuffer map(File f) throws IOException {
+    FileInputStream in = new FileInputStream(f);
+    
+    try {
+      FileChannel c = in.getChannel();
+      ByteBuffer b = c.map(FileChannel.MapMode.READ_ONLY, 0, c.size());
+      b.order(ByteOrder.LITTLE_ENDIAN);
+      
+      if (b.getInt(0) != TraceRecorder.MAGIC || b.getInt(4) != TraceRecorder.VERSION) {
+        throw new IOException(f + " is not a trace file");
+      }
+      
+      return b;
+    } finally {
+      in.close();
+    }
+  }
+  
+  public static long convert(Map<Integer, String> types, File[] traces, File output) throws IOException {
+    ByteBuffer[] buffers = new ByteBuffer[traces.length];
+    long origin = Long.MAX_VALUE;
+    
+    for (int i = 0; i < traces.length; ++i) {
+      buffers[i] = TraceConverter.map(traces[i]);
+      
+      long first = TraceConverter.firstRecord(buffers[i]);
+      
+      if (first < TraceConverter.recordCount(buffers[i])) {
+        origin = Math.min(origin, buffers[i].getLong(TraceConverter.offset(buffers[i], first) + 8));
+      }
+    }
+    
+    Writer out = new BufferedWriter(new FileWriter(output));
+    long events = 0;
+    
+    try {
+      out.write("{\"traceEvents\":[\n");
+      
+      boolean firstEvent = true;
+      
+      for (ByteBuffer b : buffers) {
+        int worker = b.getInt(24);
+        
+        if (!firstEvent) {
+          out.write(",\n");
+        }
+        firstEvent = false;
+        
+        out.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + worker + ",\"args\":{\"name\":\"Worker " + worker + "\"}}");
+        
+        for (long r = TraceConverter.firstRecord(b); r < TraceConverter.recordCount(b); ++r) {
+          int offset = TraceConverter.offset(b, r);
+          
+          int type = b.getInt(offset);
+          long start = b.getLong(offset + 8);
+          long duration = b.getLong(offset + 16);
+          int entity = b.getInt(offset + 24);
+          
+          String name = types.get(Integer.valueOf(type));
+          
+          if (name == null) {
+            name = "Type " + type;
+          }
+          
+          out.write(",\n{\"name\":\"" + name + "\",\"ph\":\"X\",\"pid\":1,\"tid\":" + b.getInt(offset + 4) +
+              ",\"ts\":" + ((start - origin) / 1000.0) +
+              ",\"dur\":" + (duration / 1000.0) +
+              ",\"args\":{\"entity\":" + entity + "}}");
+          
+          ++events;
+        }
+      }
+      
+      out.write("\n],\"displayTimeUnit\":\"ns\"}\n");
+    } finally {
+      out.close();
+    }
+    
+    return events;
+  }
+  
+  protected static long recordCount(ByteBuffer b) {
+    return b.getLong(TraceRecorder.COUNT_OFFSET);
+  }
+  
+  /**
+   * @return the oldest record still in the ring.
+   */
+  protected static long firstRecord(ByteBuffer b) {
+    return Math.max(0, TraceConverter.recordCount(b) - b.getInt(12));
+  }
+  
+  protected static int offset(ByteBuffer b, long record) {
+    return TraceRecorder.HEADER_SIZE + (int) (record % b.getInt(12)) * b.getInt(8);
+  }
+}
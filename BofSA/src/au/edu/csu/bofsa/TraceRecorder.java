@@ -0,0 +1,121 @@
+/**
+ *   The MIT License
+ *
+ *  Copyright 2011 Andrew James <ephphatha@thelettereph.com>.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package au.edu.csu.bofsa;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Records task runs as fixed size binary records into a memory mapped ring
+ * file, one recorder per thread so recording is a handful of stores. Once
+ * the ring is full the oldest records are overwritten, the header keeps the
+ * total written so a reader knows where the ring starts.
+ * 
+ * Header: magic, version, record size, capacity (ints), records written
+ * (long), worker (int), padding. Records: type id, worker (ints), start,
+ * duration (longs, nanoseconds), entity (int), padding.
+ * 
+ * @author ephphatha
+ *
+ */
+public class TraceRecorder {
+  public static final int MAGIC = 0x42545243; // "BTRC"
+  public static final int VERSION = 1;
+  public static final int HEADER_SIZE = 32;
+  public static final int RECORD_SIZE = 32;
+  public static final int DEFAULT_CAPACITY = 1 << 20;
+  
+  protected static final int COUNT_OFFSET = 16;
+  
+  protected final RandomAccessFile file;
+  protected final MappedByteBuffer buffer;
+  protected final int worker;
+  protected final int capacity;
+  protected long count;
+  
+  public TraceRecorder(File path, int worker, int capacity) throws IOException {
+    this.worker = worker;
+    this.capacity = capacity;
+    this.count = 0;
+    
+    this.file = new RandomAccessFile(path, "rw");
+    
+    long size = TraceRecorder.HEADER_SIZE + (long) capacity * TraceRecorder.RECORD_SIZE;
+    
+    this.file.setLength(size);
+    this.buffer = this.file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+    this.buffer.order(ByteOrder.LITTLE_ENDIAN);
+    
+    this.buffer.putInt(0, TraceRecorder.MAGIC);
+    this.buffer.putInt(4, TraceRecorder.VERSION);
+    this.buffer.putInt(8, TraceRecorder.RECORD_SIZE);
+    this.buffer.putInt(12, capacity);
+    this.buffer.putLong(TraceRecorder.COUNT_OFFSET, 0);
+    this.buffer.putInt(24, worker);
+  }
+  
+  /**
+   * @return a recorder for the given worker, or null if the file couldn't be
+   *         mapped, in which case nothing gets traced.
+   */
+  public static TraceRecorder open(String fileName, int worker) {
+    try {
+      return new TraceRecorder(new File(fileName), worker, TraceRecorder.DEFAULT_CAPACITY);
+    } catch (IOException e) {
+      System.out.println("Unable to open trace file " + fileName + ": " + e.getMessage());
+      return null;
+    }
+  }
+  
+  public void record(int type, long start, long duration, int entity) {
+    int offset = TraceRecorder.HEADER_SIZE + (int) (this.count % this.capacity) * TraceRecorder.RECORD_SIZE;
+    
+    this.buffer.putInt(offset, type);
+    this.buffer.putInt(offset + 4, this.worker);
+    this.buffer.putLong(offset + 8, start);
+    this.buffer.putLong(offset + 16, duration);
+    this.buffer.putInt(offset + 24, entity);
+    
+    ++this.count;
+    this.buffer.putLong(TraceRecorder.COUNT_OFFSET, this.count);
+  }
+  
+  public long getCount() {
+    return this.count;
+  }
+  
+  public void close() {
+    this.buffer.force();
+    
+    try {
+      this.file.close();
+    } catch (IOException e) {
+      //Goggles
+    }
+  }
+}
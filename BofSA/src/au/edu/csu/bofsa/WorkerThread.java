@@ -41,11 +41,17 @@ public class WorkerThread extends Thread implements Caller<Boolean> {
   
   private Logger logger;
   
+  protected final int index;
+  
+  private TraceRecorder trace;
+  private boolean traceOpened;
+  
   /**
-   * 
+   * @param index identifies the worker in trace files.
    */
-  public WorkerThread(Scheduler s) {
+  public WorkerThread(Scheduler s, int index) {
     this.scheduler = s;
+    this.index = index;
     
     this.tasks = new ConcurrentLinkedQueue<Callable<Boolean>>();
     
@@ -55,20 +61,49 @@ public class WorkerThread extends Thread implements Caller<Boolean> {
   public void run() {
     while (!Thread.interrupted()) {
       if (!this.tasks.isEmpty()) {
+        // Logging starts after the workers do, so check before each batch
+        // rather than once up front. Opening it before running anything means
+        // the first task gets recorded too.
+        if (!this.traceOpened && this.scheduler.getLogger().isTracing()) {
+          this.traceOpened = true;
+          this.trace = TraceRecorder.open(this.scheduler.getLogger().getFileName("_trace" + this.index + ".bin"), this.index);
+        }
+        
         do {
           Callable<Boolean> c = this.tasks.poll();
 
           try {
-            if (c.call()) {
+            boolean again = c.call();
+            
+            Behaviour<?> b = c instanceof Behaviour<?> ? (Behaviour<?>) c : null;
+            long startTime = 0;
+            long runTime = 0;
+            long queueDelay = -1;
+            
+            // Once it's handed back another worker can run it straight away
+            // and overwrite these, so read them first.
+            if (b != null) {
+              startTime = b.getLastStartTime();
+              runTime = b.getLastRunTime();
+              queueDelay = b.getLastQueueDelay();
+            }
+            
+            if (again) {
               this.scheduler.call(c);
             }
 
-            if (c instanceof Behaviour<?>) {
-              Behaviour<?> b = (Behaviour<?>) c;
+            if (b != null) {
               //this.logger.taskRun(new Logger.Task(b.getClass().getSimpleName(), b.getLastStartTime(), b.getLastRunTime()));
-              this.logger.taskRun(b.getName());
+              this.logger.taskRun(b.getTypeId(), runTime);
+              this.logger.taskQueued(b.getTypeId(), queueDelay);
+              
+              if (this.trace != null) {
+                this.trace.record(b.getTypeId(), startTime, runTime, System.identityHashCode(b));
+              }
             }
           } catch (InterruptedException e) {
+            // Catching it cleared the flag, put it back so the loop ends.
+            Thread.currentThread().interrupt();
             break;
           } catch (Exception e) {
             e.printStackTrace();
@@ -89,4 +124,16 @@ public class WorkerThread extends Thread implements Caller<Boolean> {
   public Logger getLogger() {
     return this.logger;
   }
+  
+  /**
+   * Only to be called once the thread has stopped.
+   */
+  public void closeTrace() {
+    if (this.trace != null) {
+      this.trace.close();
+      this.trace = null;
+    }
+    
+    this.traceOpened = false;
+  }
 }